@@ -0,0 +1,142 @@
+package com.industrial.eventanalytics.cluster;
+
+import com.industrial.eventanalytics.dto.EventRequest;
+import jakarta.annotation.PostConstruct;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Static cluster membership, configured as {@code cluster.nodes.<id>=<base url>}
+ * with this node's id in {@code cluster.node-id}. Every node must be given
+ * the same node list; ownership is derived from node ids only, so a node can
+ * move to another address without moving its keys.
+ * <p>
+ * Nodes also share {@code cluster.secret}, which a node sends with every
+ * slice it forwards so that the owner can tell a peer from a client.
+ */
+@Component
+@ConfigurationProperties(prefix = "cluster")
+public class ClusterMembership {
+    
+    public enum ShardKey { EVENT_ID, MACHINE_ID }
+    
+    private boolean enabled;
+    
+    private String nodeId = "local";
+    
+    private Map<String, String> nodes = new LinkedHashMap<>();
+    
+    private int virtualNodes = 128;
+    
+    private ShardKey shardKey = ShardKey.EVENT_ID;
+    
+    private Duration forwardTimeout = Duration.ofSeconds(30);
+    
+    private String secret;
+    
+    private ConsistentHashRing ring;
+    
+    @PostConstruct
+    void init() {
+        if (!enabled) {
+            return;
+        }
+        if (!nodes.containsKey(nodeId)) {
+            throw new IllegalStateException("cluster.node-id '" + nodeId + "' is not one of cluster.nodes " + nodes.keySet());
+        }
+        if (secret == null || secret.isBlank()) {
+            throw new IllegalStateException("cluster.secret must be set when cluster.enabled=true");
+        }
+        ring = new ConsistentHashRing(nodes.keySet(), virtualNodes);
+    }
+    
+    /**
+     * Node that owns the event. Records without a shard key stay local and
+     * are rejected by validation there.
+     */
+    public String ownerOf(EventRequest event) {
+        String key = shardKey == ShardKey.MACHINE_ID && event.getMachineId() != null
+                ? event.getMachineId() : event.getEventId();
+        return key != null ? ring.nodeFor(key) : nodeId;
+    }
+    
+    /**
+     * Node holding all of a machine's events, or {@code null} when events are
+     * sharded by eventId and any node may hold some.
+     */
+    public String ownerOfMachine(String machineId) {
+        return shardKey == ShardKey.MACHINE_ID ? ring.nodeFor(machineId) : null;
+    }
+    
+    /** Whether {@code token} is the cluster secret, compared in constant time. */
+    public boolean isPeerToken(String token) {
+        return enabled && token != null && MessageDigest.isEqual(
+                token.getBytes(StandardCharsets.UTF_8), secret.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    public String urlOf(String node) {
+        return nodes.get(node);
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    public String getNodeId() {
+        return nodeId;
+    }
+    
+    public void setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
+    
+    public Map<String, String> getNodes() {
+        return nodes;
+    }
+    
+    public void setNodes(Map<String, String> nodes) {
+        this.nodes = nodes;
+    }
+    
+    public int getVirtualNodes() {
+        return virtualNodes;
+    }
+    
+    public void setVirtualNodes(int virtualNodes) {
+        this.virtualNodes = virtualNodes;
+    }
+    
+    public ShardKey getShardKey() {
+        return shardKey;
+    }
+    
+    public void setShardKey(ShardKey shardKey) {
+        this.shardKey = shardKey;
+    }
+    
+    public Duration getForwardTimeout() {
+        return forwardTimeout;
+    }
+    
+    public void setForwardTimeout(Duration forwardTimeout) {
+        this.forwardTimeout = forwardTimeout;
+    }
+    
+    public String getSecret() {
+        return secret;
+    }
+    
+    public void setSecret(String secret) {
+        this.secret = secret;
+    }
+}
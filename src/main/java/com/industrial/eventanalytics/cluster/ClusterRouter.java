@@ -0,0 +1,191 @@
+package com.industrial.eventanalytics.cluster;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.industrial.eventanalytics.dto.BatchResponse;
+import com.industrial.eventanalytics.dto.EventRequest;
+import com.industrial.eventanalytics.service.GroupCommitService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Entry point for ingest in cluster mode. Each eventId (or machineId) is
+ * owned by one node, so its dedup and update decisions are always made
+ * against the same database. Any node accepts a batch: it splits the batch
+ * by owner, processes its own slice, forwards every other slice to its owner
+ * in one request (in parallel with the local work) and merges the partial
+ * responses into one, with rejections back in request order.
+ * 
+ * Forwarded requests carry {@code cluster.secret} in {@link #FORWARDED_HEADER}
+ * and are always processed locally, so a peer with a different node list
+ * cannot bounce a slice around. The header is refused with any other value,
+ * so a client cannot use it to store events on a node that does not own
+ * them. Records for an unreachable peer are rejected with
+ * {@code PEER_UNAVAILABLE} and are safe to resend.
+ */
+@Service
+public class ClusterRouter {
+    
+    private static final Logger log = LoggerFactory.getLogger(ClusterRouter.class);
+    
+    public static final String FORWARDED_HEADER = "X-Cluster-Forwarded";
+    public static final String PEER_UNAVAILABLE = "PEER_UNAVAILABLE";
+    
+    @Autowired
+    private ClusterMembership membership;
+    
+    @Autowired
+    private GroupCommitService groupCommitService;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .build();
+    
+    /**
+     * @param forwardedBy value of {@link #FORWARDED_HEADER}, or null when the
+     *                    batch came from a client
+     */
+    public BatchResponse process(List<EventRequest> events, String forwardedBy) {
+        if (!membership.isEnabled()) {
+            return groupCommitService.process(events);
+        }
+        if (forwardedBy != null) {
+            if (!membership.isPeerToken(forwardedBy)) {
+                throw new ResponseStatusException(HttpStatus.FORBIDDEN,
+                        FORWARDED_HEADER + " is only accepted from cluster peers");
+            }
+            return groupCommitService.process(events);
+        }
+        
+        // positions in the batch of each owner's events
+        Map<String, List<Integer>> slices = new LinkedHashMap<>();
+        for (int i = 0; i < events.size(); i++) {
+            slices.computeIfAbsent(membership.ownerOf(events.get(i)), owner -> new ArrayList<>()).add(i);
+        }
+        List<Integer> local = slices.remove(membership.getNodeId());
+        if (slices.isEmpty()) {
+            return groupCommitService.process(events);
+        }
+        
+        Map<String, CompletableFuture<BatchResponse>> remote = new LinkedHashMap<>();
+        slices.forEach((peer, positions) -> remote.put(peer, forward(peer, slice(events, positions))));
+        
+        List<BatchResponse> parts = new ArrayList<>();
+        List<List<Integer>> partPositions = new ArrayList<>();
+        if (local != null) {
+            parts.add(groupCommitService.process(slice(events, local)));
+            partPositions.add(local);
+        }
+        remote.forEach((peer, part) -> {
+            parts.add(part.join());
+            partPositions.add(slices.get(peer));
+        });
+        return merge(events, parts, partPositions);
+    }
+    
+    private static List<EventRequest> slice(List<EventRequest> events, List<Integer> positions) {
+        List<EventRequest> slice = new ArrayList<>(positions.size());
+        for (int position : positions) {
+            slice.add(events.get(position));
+        }
+        return slice;
+    }
+    
+    private CompletableFuture<BatchResponse> forward(String peer, List<EventRequest> slice) {
+        meterRegistry.counter("cluster.forwarded.events", "peer", peer).increment(slice.size());
+        HttpRequest request;
+        try {
+            request = HttpRequest.newBuilder(URI.create(membership.urlOf(peer) + "/api/v1/events/batch"))
+                    .timeout(membership.getForwardTimeout())
+                    .header("Content-Type", "application/json")
+                    .header(FORWARDED_HEADER, membership.getSecret())
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(slice)))
+                    .build();
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> {
+                    if (response.statusCode() != 200) {
+                        throw new IllegalStateException("HTTP " + response.statusCode());
+                    }
+                    try {
+                        return objectMapper.readValue(response.body(), BatchResponse.class);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                })
+                .exceptionally(failure -> {
+                    log.warn("Forwarding {} events to cluster node {} failed: {}", slice.size(), peer, failure.getMessage());
+                    meterRegistry.counter("cluster.forward.failures", "peer", peer).increment();
+                    return unavailable(slice);
+                });
+    }
+    
+    private static BatchResponse unavailable(List<EventRequest> slice) {
+        List<BatchResponse.RejectionDetail> rejections = new ArrayList<>(slice.size());
+        for (EventRequest event : slice) {
+            rejections.add(new BatchResponse.RejectionDetail(event.getEventId(), PEER_UNAVAILABLE));
+        }
+        return new BatchResponse(0, 0, 0, slice.size(), rejections);
+    }
+    
+    /**
+     * Sums the partial responses. Each part lists its rejections in the
+     * order of its slice, so they are matched to the slice's events in turn
+     * and merged back into the order of the whole batch.
+     */
+    static BatchResponse merge(List<EventRequest> events, List<BatchResponse> parts, List<List<Integer>> partPositions) {
+        int accepted = 0;
+        int deduped = 0;
+        int updated = 0;
+        int rejected = 0;
+        Map<Integer, BatchResponse.RejectionDetail> rejections = new TreeMap<>();
+        for (int p = 0; p < parts.size(); p++) {
+            BatchResponse part = parts.get(p);
+            accepted += part.getAccepted();
+            deduped += part.getDeduped();
+            updated += part.getUpdated();
+            rejected += part.getRejected();
+            if (part.getRejections() == null) {
+                continue;
+            }
+            List<Integer> positions = partPositions.get(p);
+            int next = 0;
+            for (BatchResponse.RejectionDetail rejection : part.getRejections()) {
+                while (next < positions.size()
+                        && !Objects.equals(events.get(positions.get(next)).getEventId(), rejection.getEventId())) {
+                    next++;
+                }
+                // one that matches no remaining event goes last rather than being lost
+                rejections.put(next < positions.size() ? positions.get(next++) : events.size() + rejections.size(), rejection);
+            }
+        }
+        return new BatchResponse(accepted, deduped, updated, rejected, new ArrayList<>(rejections.values()));
+    }
+}
@@ -0,0 +1,324 @@
+package com.industrial.eventanalytics.cluster;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.industrial.eventanalytics.dto.StatsResponse;
+import com.industrial.eventanalytics.dto.TopDefectLineResponse;
+import com.industrial.eventanalytics.service.StatsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Scatter-gather stats across the cluster. The receiving node queries every
+ * peer in parallel (each request bounded by {@code cluster.federation.timeout})
+ * while it answers its own part, then merges the partials. Nodes that fail
+ * or time out are left out and reported, so the caller can flag the result
+ * as partial.
+ * 
+ * Machine stats add up per-node counts and sums. The top-K ranking uses the
+ * three-phase uniform threshold algorithm (TPUT), which returns the exact
+ * global top K while each node only sends its local top K, the machines
+ * above a threshold, and the totals of a few candidates:
+ * <ol>
+ * <li>every node sends its local top K; the K-th best partial sum
+ * {@code t1} bounds the true K-th total from below</li>
+ * <li>every node sends each machine with at least {@code ceil(t1 / n)}
+ * defects, since a machine in the global top K must reach that on some node;
+ * machines whose upper bound stays below the new K-th partial sum are
+ * dropped</li>
+ * <li>the remaining candidates' totals are fetched from the nodes that have
+ * not reported them yet</li>
+ * </ol>
+ * When events are sharded by machineId, every machine lives on one node and
+ * the first phase is already exact.
+ */
+@Service
+public class StatsFederation {
+    
+    private static final Logger log = LoggerFactory.getLogger(StatsFederation.class);
+    
+    @Autowired
+    private ClusterMembership membership;
+    
+    @Autowired
+    private StatsService statsService;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Value("${cluster.federation.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${cluster.federation.timeout:PT2S}")
+    private Duration timeout;
+    
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .build();
+    
+    /** A merged value and the nodes whose part is missing from it. */
+    public static class Result<T> {
+        private final T value;
+        private final Set<String> missingNodes;
+        
+        Result(T value, Set<String> missingNodes) {
+            this.value = value;
+            this.missingNodes = missingNodes;
+        }
+        
+        public T getValue() {
+            return value;
+        }
+        
+        public Set<String> getMissingNodes() {
+            return missingNodes;
+        }
+        
+        public boolean isPartial() {
+            return !missingNodes.isEmpty();
+        }
+    }
+    
+    /** One node's part of a top-K round: its local top K, lines above a threshold, or given lines. */
+    private static class Ask {
+        final Integer limit;
+        final Long minDefects;
+        final Collection<String> lineIds;
+        
+        private Ask(Integer limit, Long minDefects, Collection<String> lineIds) {
+            this.limit = limit;
+            this.minDefects = minDefects;
+            this.lineIds = lineIds;
+        }
+    }
+    
+    public boolean isActive() {
+        return enabled && membership.isEnabled();
+    }
+    
+    public Result<StatsResponse> getMachineStats(String machineId, Instant start, Instant end) {
+        String owner = membership.ownerOfMachine(machineId);
+        Collection<String> nodes = owner != null ? List.of(owner) : membership.getNodes().keySet();
+        String query = "/api/v1/stats?scope=local&machineId=" + encode(machineId)
+                + "&start=" + encode(start.toString()) + "&end=" + encode(end.toString());
+        
+        Map<String, CompletableFuture<StatsResponse>> remote = new LinkedHashMap<>();
+        for (String node : nodes) {
+            if (!node.equals(membership.getNodeId())) {
+                remote.put(node, fetch(node, query, new TypeReference<StatsResponse>() {}));
+            }
+        }
+        long eventsCount = 0;
+        long defectsCount = 0;
+        if (nodes.contains(membership.getNodeId())) {
+            StatsResponse local = statsService.getMachineStats(machineId, start, end);
+            eventsCount += local.getEventsCount();
+            defectsCount += local.getDefectsCount();
+        }
+        Set<String> missing = new TreeSet<>();
+        for (Map.Entry<String, CompletableFuture<StatsResponse>> part : remote.entrySet()) {
+            StatsResponse response = part.getValue().join();
+            if (response == null) {
+                missing.add(part.getKey());
+            } else {
+                eventsCount += response.getEventsCount();
+                defectsCount += response.getDefectsCount();
+            }
+        }
+        
+        StatsResponse merged = statsService.toMachineStats(machineId, start, end, eventsCount, defectsCount);
+        if (!missing.isEmpty()) {
+            merged.setComplete(false);
+        }
+        return new Result<>(merged, missing);
+    }
+    
+    public Result<List<TopDefectLineResponse>> getTopDefectLines(String factoryId, Instant from, Instant to, int limit) {
+        List<String> nodes = new ArrayList<>(membership.getNodes().keySet());
+        Set<String> missing = new TreeSet<>();
+        Map<String, Map<String, TopDefectLineResponse>> known = new HashMap<>();
+        
+        Map<String, Ask> phase1 = new LinkedHashMap<>();
+        nodes.forEach(node -> phase1.put(node, new Ask(limit, null, null)));
+        gather(phase1, factoryId, from, to, known, missing);
+        if (membership.getShardKey() == ClusterMembership.ShardKey.MACHINE_ID || limit <= 0) {
+            return new Result<>(rank(known, null, limit), missing);
+        }
+        
+        long threshold = (kthLargest(partialSums(known), limit) + nodes.size() - 1) / nodes.size();
+        Map<String, Ask> phase2 = new LinkedHashMap<>();
+        live(nodes, missing).forEach(node -> phase2.put(node, new Ask(null, threshold, null)));
+        gather(phase2, factoryId, from, to, known, missing);
+        
+        // A line a node did not report has fewer than `threshold` defects there
+        Map<String, Long> sums = partialSums(known);
+        long kth = kthLargest(sums, limit);
+        List<String> live = live(nodes, missing);
+        Set<String> candidates = new HashSet<>();
+        for (Map.Entry<String, Long> line : sums.entrySet()) {
+            long unreported = live.stream().filter(node -> !known.get(node).containsKey(line.getKey())).count();
+            if (line.getValue() + unreported * Math.max(0, threshold - 1) >= kth) {
+                candidates.add(line.getKey());
+            }
+        }
+        
+        Map<String, Ask> phase3 = new LinkedHashMap<>();
+        for (String node : live) {
+            List<String> unknown = candidates.stream().filter(line -> !known.get(node).containsKey(line)).sorted().toList();
+            if (!unknown.isEmpty()) {
+                phase3.put(node, new Ask(null, null, unknown));
+            }
+        }
+        gather(phase3, factoryId, from, to, known, missing);
+        return new Result<>(rank(known, candidates, limit), missing);
+    }
+    
+    /**
+     * Runs one round: remote asks in parallel, the local one on this thread.
+     * Answers are added to {@code known}; nodes that fail are added to
+     * {@code missing} and skipped from then on.
+     */
+    private void gather(Map<String, Ask> asks, String factoryId, Instant from, Instant to,
+                        Map<String, Map<String, TopDefectLineResponse>> known, Set<String> missing) {
+        Map<String, CompletableFuture<List<TopDefectLineResponse>>> remote = new LinkedHashMap<>();
+        asks.forEach((node, ask) -> {
+            if (!node.equals(membership.getNodeId())) {
+                remote.put(node, fetch(node, partialQuery(ask, factoryId, from, to),
+                        new TypeReference<List<TopDefectLineResponse>>() {}));
+            }
+        });
+        Ask localAsk = asks.get(membership.getNodeId());
+        if (localAsk != null) {
+            List<TopDefectLineResponse> lines;
+            if (localAsk.lineIds != null) {
+                lines = statsService.getDefectLines(factoryId, from, to, localAsk.lineIds);
+            } else if (localAsk.minDefects != null) {
+                lines = statsService.getDefectLinesAtLeast(factoryId, from, to, localAsk.minDefects);
+            } else {
+                lines = statsService.getTopDefectLines(factoryId, from, to, localAsk.limit);
+            }
+            record(known, membership.getNodeId(), lines);
+        }
+        remote.forEach((node, part) -> {
+            List<TopDefectLineResponse> lines = part.join();
+            if (lines == null) {
+                missing.add(node);
+            } else {
+                record(known, node, lines);
+            }
+        });
+    }
+    
+    private static void record(Map<String, Map<String, TopDefectLineResponse>> known, String node,
+                               List<TopDefectLineResponse> lines) {
+        Map<String, TopDefectLineResponse> byLine = known.computeIfAbsent(node, n -> new HashMap<>());
+        lines.forEach(line -> byLine.put(line.getLineId(), line));
+    }
+    
+    private static List<String> live(List<String> nodes, Set<String> missing) {
+        return nodes.stream().filter(node -> !missing.contains(node)).toList();
+    }
+    
+    private static Map<String, Long> partialSums(Map<String, Map<String, TopDefectLineResponse>> known) {
+        Map<String, Long> sums = new HashMap<>();
+        known.values().forEach(lines -> lines.values().forEach(line ->
+                sums.merge(line.getLineId(), line.getTotalDefects(), Long::sum)));
+        return sums;
+    }
+    
+    private static long kthLargest(Map<String, Long> sums, int k) {
+        if (sums.size() < k) {
+            return 0;
+        }
+        return sums.values().stream().sorted(Comparator.reverseOrder()).skip(k - 1).findFirst().orElse(0L);
+    }
+    
+    /** Adds up what every node reported per line and ranks the (candidate) lines. */
+    private static List<TopDefectLineResponse> rank(Map<String, Map<String, TopDefectLineResponse>> known,
+                                                    Set<String> candidates, int limit) {
+        Map<String, long[]> totals = new HashMap<>();
+        for (Map<String, TopDefectLineResponse> lines : known.values()) {
+            for (TopDefectLineResponse line : lines.values()) {
+                if (candidates == null || candidates.contains(line.getLineId())) {
+                    long[] total = totals.computeIfAbsent(line.getLineId(), id -> new long[2]);
+                    total[0] += line.getTotalDefects();
+                    total[1] += line.getEventCount();
+                }
+            }
+        }
+        return totals.entrySet().stream()
+                .map(entry -> new TopDefectLineResponse(entry.getKey(), entry.getValue()[0], entry.getValue()[1]))
+                .sorted(Comparator.comparingLong(TopDefectLineResponse::getTotalDefects).reversed()
+                        .thenComparing(TopDefectLineResponse::getLineId))
+                .limit(Math.max(0, limit))
+                .toList();
+    }
+    
+    private static String partialQuery(Ask ask, String factoryId, Instant from, Instant to) {
+        StringBuilder query = new StringBuilder("/api/v1/stats/partial/top-defect-lines?from=")
+                .append(encode(from.toString())).append("&to=").append(encode(to.toString()));
+        if (factoryId != null) {
+            query.append("&factoryId=").append(encode(factoryId));
+        }
+        if (ask.lineIds != null) {
+            ask.lineIds.forEach(line -> query.append("&lineId=").append(encode(line)));
+        } else if (ask.minDefects != null) {
+            query.append("&minDefects=").append(ask.minDefects);
+        } else {
+            query.append("&limit=").append(ask.limit);
+        }
+        return query.toString();
+    }
+    
+    /** Completes with {@code null} when the node fails, answers with an error or is too slow. */
+    private <T> CompletableFuture<T> fetch(String node, String pathAndQuery, TypeReference<T> type) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(membership.urlOf(node) + pathAndQuery))
+                .timeout(timeout)
+                .GET()
+                .build();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> {
+                    if (response.statusCode() != 200) {
+                        throw new IllegalStateException("HTTP " + response.statusCode());
+                    }
+                    try {
+                        return objectMapper.readValue(response.body(), type);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                })
+                .exceptionally(failure -> {
+                    log.warn("Stats query to cluster node {} failed: {}", node, failure.getMessage());
+                    return null;
+                });
+    }
+    
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
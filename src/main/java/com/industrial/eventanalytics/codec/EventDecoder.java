@@ -0,0 +1,175 @@
+package com.industrial.eventanalytics.codec;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.industrial.eventanalytics.dto.EventRequest;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes ingest payloads (a JSON array of events, or one event per line)
+ * on Jackson's streaming parser instead of data binding. Field values are
+ * read from the parser's buffer: timestamps through
+ * {@link FixedIsoInstantParser}, numbers into primitive fields, and
+ * machine and factory ids through a {@link StringInterner}.
+ * 
+ * Only payloads that are plainly well-formed take this path. Anything else
+ * (another timestamp layout, numbers as strings, null array elements,
+ * syntax errors...) is decoded again by the data-binding reader, so every
+ * payload yields the same events, or the same error, as before.
+ */
+@Component
+public class EventDecoder {
+    
+    private static final TypeReference<List<EventRequest>> BATCH_TYPE = new TypeReference<>() {};
+    
+    /** Thrown by the fast path to hand a payload to the data-binding reader. */
+    private static final class Unsupported extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        
+        Unsupported() {
+            super(null, null, false, false);
+        }
+    }
+    
+    private static final Unsupported UNSUPPORTED = new Unsupported();
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Value("${ingest.decoder.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${ingest.decoder.intern-capacity:4096}")
+    private int internCapacity;
+    
+    private ObjectReader batchReader;
+    private ObjectReader eventReader;
+    private StringInterner machineIds;
+    private StringInterner factoryIds;
+    
+    @PostConstruct
+    void init() {
+        batchReader = objectMapper.readerFor(BATCH_TYPE);
+        eventReader = objectMapper.readerFor(EventRequest.class);
+        machineIds = new StringInterner(internCapacity);
+        factoryIds = new StringInterner(256);
+    }
+    
+    public List<EventRequest> decodeBatch(byte[] data, int offset, int length) throws IOException {
+        if (enabled) {
+            try (JsonParser parser = objectMapper.getFactory().createParser(data, offset, length)) {
+                if (parser.nextToken() == JsonToken.START_ARRAY) {
+                    List<EventRequest> events = new ArrayList<>();
+                    JsonToken token;
+                    while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+                        events.add(readEvent(parser));
+                    }
+                    if (token == JsonToken.END_ARRAY) {
+                        return events;
+                    }
+                }
+            } catch (Unsupported | IOException e) {
+                // decoded again below
+            }
+        }
+        return batchReader.readValue(data, offset, length);
+    }
+    
+    /** One event object; {@code null} for a JSON {@code null}, like the data-binding reader. */
+    public EventRequest decodeEvent(byte[] data, int offset, int length) throws IOException {
+        if (enabled) {
+            try (JsonParser parser = objectMapper.getFactory().createParser(data, offset, length)) {
+                if (parser.nextToken() == JsonToken.START_OBJECT) {
+                    return readEvent(parser);
+                }
+            } catch (Unsupported | IOException e) {
+                // decoded again below
+            }
+        }
+        return eventReader.readValue(data, offset, length);
+    }
+    
+    private EventRequest readEvent(JsonParser parser) throws IOException {
+        EventRequest event = new EventRequest();
+        JsonToken token;
+        while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (name) {
+                case "eventId" -> event.setEventId(value == JsonToken.VALUE_NULL ? null : text(parser, value));
+                case "eventTime" -> event.setEventTime(instant(parser, value));
+                case "receivedTime" -> event.setReceivedTime(instant(parser, value));
+                case "machineId" -> event.setMachineId(interned(parser, value, machineIds));
+                case "factoryId" -> event.setFactoryId(interned(parser, value, factoryIds));
+                case "durationMs" -> {
+                    if (value == JsonToken.VALUE_NULL) {
+                        event.setDurationMs(null);
+                    } else if (value == JsonToken.VALUE_NUMBER_INT
+                            && parser.getNumberType() != JsonParser.NumberType.BIG_INTEGER) {
+                        event.setDurationMsValue(parser.getLongValue());
+                    } else {
+                        throw UNSUPPORTED;
+                    }
+                }
+                case "defectCount" -> {
+                    if (value == JsonToken.VALUE_NULL) {
+                        event.setDefectCount(null);
+                    } else if (value == JsonToken.VALUE_NUMBER_INT
+                            && parser.getNumberType() == JsonParser.NumberType.INT) {
+                        event.setDefectCountValue(parser.getIntValue());
+                    } else {
+                        throw UNSUPPORTED;
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+        if (token != JsonToken.END_OBJECT) {
+            throw UNSUPPORTED;
+        }
+        return event;
+    }
+    
+    private static String text(JsonParser parser, JsonToken value) throws IOException {
+        if (value != JsonToken.VALUE_STRING) {
+            throw UNSUPPORTED;
+        }
+        return parser.getText();
+    }
+    
+    private static String interned(JsonParser parser, JsonToken value, StringInterner interner) throws IOException {
+        if (value == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (value != JsonToken.VALUE_STRING) {
+            throw UNSUPPORTED;
+        }
+        return interner.intern(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+    }
+    
+    private static Instant instant(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (value != JsonToken.VALUE_STRING) {
+            throw UNSUPPORTED;
+        }
+        long millis = FixedIsoInstantParser.parseEpochMillis(
+                parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+        if (millis == FixedIsoInstantParser.UNSUPPORTED) {
+            throw UNSUPPORTED;
+        }
+        return Instant.ofEpochMilli(millis);
+    }
+}
@@ -0,0 +1,72 @@
+package com.industrial.eventanalytics.codec;
+
+/**
+ * Parses timestamps in the one format the API uses,
+ * {@code yyyy-MM-dd'T'HH:mm:ss.SSS'Z'}, straight from a character buffer
+ * into epoch milliseconds, without a {@code DateTimeFormatter} or any
+ * intermediate objects.
+ */
+public final class FixedIsoInstantParser {
+    
+    /** Returned for anything that is not exactly the fixed format with in-range fields. */
+    public static final long UNSUPPORTED = Long.MIN_VALUE;
+    
+    public static final int LENGTH = 24;
+    
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+    
+    private FixedIsoInstantParser() {}
+    
+    public static long parseEpochMillis(char[] text, int offset, int length) {
+        if (length != LENGTH
+                || text[offset + 4] != '-' || text[offset + 7] != '-' || text[offset + 10] != 'T'
+                || text[offset + 13] != ':' || text[offset + 16] != ':' || text[offset + 19] != '.'
+                || text[offset + 23] != 'Z') {
+            return UNSUPPORTED;
+        }
+        int year = digits(text, offset, 4);
+        int month = digits(text, offset + 5, 2);
+        int day = digits(text, offset + 8, 2);
+        int hour = digits(text, offset + 11, 2);
+        int minute = digits(text, offset + 14, 2);
+        int second = digits(text, offset + 17, 2);
+        int millis = digits(text, offset + 20, 3);
+        if (year < 1 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)
+                || hour > 23 || minute > 59 || second > 59 || millis < 0) {
+            // also covers non-digits, which come back negative
+            return UNSUPPORTED;
+        }
+        return epochDay(year, month, day) * MILLIS_PER_DAY
+                + hour * 3_600_000L + minute * 60_000L + second * 1000L + millis;
+    }
+    
+    private static int digits(char[] text, int offset, int count) {
+        int value = 0;
+        for (int i = 0; i < count; i++) {
+            int digit = text[offset + i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+    
+    private static int lengthOfMonth(int year, int month) {
+        if (month == 2) {
+            boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+            return leap ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+    
+    /** Days since 1970-01-01 in the proleptic Gregorian calendar. */
+    private static long epochDay(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = y / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146_097L + dayOfEra - 719_468;
+    }
+}
@@ -0,0 +1,52 @@
+package com.industrial.eventanalytics.codec;
+
+/**
+ * Returns one shared String per distinct short value, looked up straight
+ * from the parser's character buffer so a repeated value allocates nothing.
+ * A fixed-size direct-mapped table: a colliding value replaces the old one,
+ * which only costs a fresh String next time. Races between threads are
+ * harmless for the same reason.
+ */
+public class StringInterner {
+    
+    private static final int MAX_LENGTH = 64;
+    
+    private final String[] table;
+    private final int mask;
+    
+    public StringInterner(int capacity) {
+        int size = Integer.highestOneBit(Math.max(16, capacity - 1)) << 1;
+        this.table = new String[size];
+        this.mask = size - 1;
+    }
+    
+    public String intern(char[] text, int offset, int length) {
+        if (length > MAX_LENGTH) {
+            return new String(text, offset, length);
+        }
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + text[offset + i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        String cached = table[slot];
+        if (cached != null && matches(cached, text, offset, length)) {
+            return cached;
+        }
+        String value = new String(text, offset, length);
+        table[slot] = value;
+        return value;
+    }
+    
+    private static boolean matches(String cached, char[] text, int offset, int length) {
+        if (cached.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (cached.charAt(i) != text[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,91 @@
+package com.industrial.eventanalytics.config;
+
+import com.industrial.eventanalytics.service.ReadRouting;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Two connection pools behind one routing data source: writes and ordinary
+ * transactions use the primary pool, read-only transactions (stats queries
+ * and exports) use a separately sized, read-only analytics pool. The
+ * analytics pool points at the primary database unless
+ * {@code analytics.datasource.url} names a replica, so a burst of heavy
+ * reports cannot hold the connections ingest needs, and the reverse.
+ */
+@Configuration
+public class DataSourceConfig {
+    
+    @Value("${analytics.datasource.url:}")
+    private String analyticsUrl;
+    
+    @Value("${analytics.datasource.username:}")
+    private String analyticsUsername;
+    
+    @Value("${analytics.datasource.password:}")
+    private String analyticsPassword;
+    
+    @Value("${analytics.datasource.maximum-pool-size:4}")
+    private int analyticsPoolSize;
+    
+    @Value("${analytics.datasource.connection-timeout:PT5S}")
+    private Duration analyticsConnectionTimeout;
+    
+    @Value("${analytics.replica.enabled:false}")
+    private boolean localReplica;
+    
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName(ReadRoutingDataSource.PRIMARY);
+        return dataSource;
+    }
+    
+    @Bean
+    public HikariDataSource analyticsDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setPoolName(ReadRoutingDataSource.ANALYTICS);
+        dataSource.setJdbcUrl(getAnalyticsUrl(properties));
+        dataSource.setUsername(analyticsUsername.isEmpty() ? properties.determineUsername() : analyticsUsername);
+        dataSource.setPassword(analyticsUsername.isEmpty() ? properties.determinePassword() : analyticsPassword);
+        dataSource.setMaximumPoolSize(analyticsPoolSize);
+        dataSource.setConnectionTimeout(analyticsConnectionTimeout.toMillis());
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+    
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary,
+                                 @Qualifier("analyticsDataSource") DataSource analytics,
+                                 ObjectProvider<ReadRouting> readRouting) {
+        ReadRoutingDataSource routing = new ReadRoutingDataSource(() -> readRouting.getObject().currentSource());
+        routing.setTargetDataSources(Map.of(ReadRoutingDataSource.PRIMARY, primary, ReadRoutingDataSource.ANALYTICS, analytics));
+        routing.setDefaultTargetDataSource(primary);
+        routing.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+    
+    /**
+     * The analytics database: the configured replica, the local stand-in
+     * replica, or the primary itself.
+     */
+    private String getAnalyticsUrl(DataSourceProperties properties) {
+        if (!analyticsUrl.isEmpty()) {
+            return analyticsUrl;
+        }
+        return localReplica ? "jdbc:h2:mem:analyticsdb;DB_CLOSE_DELAY=-1" : properties.determineUrl();
+    }
+}
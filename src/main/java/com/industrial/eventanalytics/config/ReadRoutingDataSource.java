@@ -0,0 +1,33 @@
+package com.industrial.eventanalytics.config;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.function.Supplier;
+
+/**
+ * Sends read-only transactions to the analytics pool (or to the primary when
+ * the analytics copy is too stale for the caller) and everything else to the
+ * primary. Must sit behind a {@code LazyConnectionDataSourceProxy}: the
+ * read-only flag is only bound after the transaction manager asked for its
+ * connection, so the target is picked on the first statement.
+ */
+public class ReadRoutingDataSource extends AbstractRoutingDataSource {
+    
+    public static final String PRIMARY = "primary";
+    public static final String ANALYTICS = "analytics";
+    
+    private final Supplier<String> readSource;
+    
+    public ReadRoutingDataSource(Supplier<String> readSource) {
+        this.readSource = readSource;
+    }
+    
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return PRIMARY;
+        }
+        return readSource.get();
+    }
+}
@@ -0,0 +1,66 @@
+package com.industrial.eventanalytics.controller;
+
+import com.industrial.eventanalytics.service.AdaptiveConcurrencyLimiter;
+import com.industrial.eventanalytics.service.ConcurrencyLimiters;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Sheds load in front of the ingest and stats endpoints. Requests over the
+ * current adaptive limit of their pool fail fast with 503 and a Retry-After
+ * header instead of queueing for a database connection.
+ */
+@Component
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+    
+    @Autowired
+    private ConcurrencyLimiters limiters;
+    
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !limiters.isEnabled() || limiterFor(request) == null;
+    }
+    
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        AdaptiveConcurrencyLimiter limiter = limiterFor(request);
+        if (!limiter.tryAcquire()) {
+            limiters.recordRejected(limiter);
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader("Retry-After", String.valueOf(Math.max(1, limiters.getRetryAfter().toSeconds())));
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.getWriter().write("{\"error\":\"" + limiter.getName() + " concurrency limit reached\"}");
+            return;
+        }
+        
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            chain.doFilter(request, response);
+            failed = response.getStatus() >= 500;
+        } finally {
+            limiter.release(System.nanoTime() - start, failed);
+        }
+    }
+    
+    private AdaptiveConcurrencyLimiter limiterFor(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (path.startsWith("/api/v1/events")) {
+            return limiters.ingest();
+        }
+        if (path.startsWith("/api/v1/stats")) {
+            return limiters.stats();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,65 @@
+package com.industrial.eventanalytics.controller;
+
+import com.industrial.eventanalytics.diagnostics.JfrRecordingService;
+import jdk.jfr.RecordingState;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * On-demand JFR recordings: POST starts one and answers 202 with its
+ * location, GET on that location answers 202 while it runs and downloads
+ * the file once it has stopped.
+ */
+@RestController
+@RequestMapping("/api/v1/admin")
+@ConditionalOnProperty(name = "diagnostics.jfr.enabled", havingValue = "true")
+public class DiagnosticsController {
+    
+    @Autowired
+    private JfrRecordingService jfrRecordingService;
+    
+    @PostMapping("/jfr/recordings")
+    public ResponseEntity<Map<String, Object>> startJfr(
+            @RequestParam(defaultValue = "PT30S") Duration duration,
+            @RequestParam(defaultValue = "default") String settings) {
+        
+        long id = jfrRecordingService.start(duration, settings);
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/v1/admin/jfr/recordings/" + id))
+                .body(Map.of("id", id, "state", RecordingState.RUNNING.name()));
+    }
+    
+    @GetMapping("/jfr/recordings/{id}")
+    public ResponseEntity<?> getJfr(@PathVariable long id) throws IOException {
+        RecordingState state = jfrRecordingService.getState(id);
+        if (state == RecordingState.RUNNING) {
+            return ResponseEntity.accepted().body(Map.of("id", id, "state", state.name()));
+        }
+        
+        Path file = jfrRecordingService.dump(id);
+        StreamingResponseBody body = out -> {
+            try {
+                Files.copy(file, out);
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .contentLength(Files.size(file))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + file.getFileName() + "\"")
+                .body(body);
+    }
+}
@@ -0,0 +1,91 @@
+package com.industrial.eventanalytics.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.industrial.eventanalytics.codec.EventDecoder;
+import com.industrial.eventanalytics.dto.EventRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.util.List;
+
+/**
+ * Reads {@code List<EventRequest>} request bodies with {@link EventDecoder};
+ * every other type, and all responses, stay with the Jackson converter.
+ * Registered ahead of it because it is a bean.
+ */
+@Component
+public class EventBatchMessageConverter extends AbstractGenericHttpMessageConverter<List<EventRequest>> {
+    
+    private static final ResolvableType BATCH_TYPE = ResolvableType.forClassWithGenerics(List.class, EventRequest.class);
+    
+    @Autowired
+    private EventDecoder eventDecoder;
+    
+    public EventBatchMessageConverter() {
+        super(MediaType.APPLICATION_JSON, new MediaType("application", "*+json"));
+    }
+    
+    @Override
+    public boolean canRead(Type type, @Nullable Class<?> contextClass, @Nullable MediaType mediaType) {
+        return BATCH_TYPE.isAssignableFrom(ResolvableType.forType(type)) && canRead(mediaType);
+    }
+    
+    @Override
+    public boolean canWrite(@Nullable Type type, Class<?> clazz, @Nullable MediaType mediaType) {
+        return false;
+    }
+    
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return List.class.isAssignableFrom(clazz);
+    }
+    
+    @Override
+    public List<EventRequest> read(Type type, @Nullable Class<?> contextClass, HttpInputMessage inputMessage)
+            throws IOException {
+        return decode(inputMessage);
+    }
+    
+    @Override
+    protected List<EventRequest> readInternal(Class<? extends List<EventRequest>> clazz, HttpInputMessage inputMessage)
+            throws IOException {
+        return decode(inputMessage);
+    }
+    
+    private List<EventRequest> decode(HttpInputMessage inputMessage) throws IOException {
+        byte[] body = readBody(inputMessage);
+        try {
+            return eventDecoder.decodeBatch(body, 0, body.length);
+        } catch (JsonProcessingException e) {
+            throw new HttpMessageNotReadableException("JSON parse error: " + e.getOriginalMessage(), e, inputMessage);
+        }
+    }
+    
+    /** The whole body in one array, sized from Content-Length when the client sent it. */
+    private static byte[] readBody(HttpInputMessage inputMessage) throws IOException {
+        long contentLength = inputMessage.getHeaders().getContentLength();
+        try (InputStream in = inputMessage.getBody()) {
+            return contentLength >= 0 && contentLength <= Integer.MAX_VALUE - 8
+                    ? in.readNBytes((int) contentLength) : in.readAllBytes();
+        }
+    }
+    
+    /**
+     * Never called: {@link #canWrite} is false for every type, so Spring
+     * never selects this converter for a response.
+     */
+    @Override
+    protected void writeInternal(List<EventRequest> events, @Nullable Type type, HttpOutputMessage outputMessage) {
+        throw new UnsupportedOperationException("EventBatchMessageConverter only reads");
+    }
+}
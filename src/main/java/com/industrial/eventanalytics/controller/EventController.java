@@ -1,16 +1,23 @@
 package com.industrial.eventanalytics.controller;
 
+import com.industrial.eventanalytics.cluster.ClusterRouter;
+import com.industrial.eventanalytics.cluster.StatsFederation;
 import com.industrial.eventanalytics.dto.BatchResponse;
 import com.industrial.eventanalytics.dto.EventRequest;
 import com.industrial.eventanalytics.dto.StatsResponse;
+import com.industrial.eventanalytics.dto.TimeSeriesResponse;
 import com.industrial.eventanalytics.dto.TopDefectLineResponse;
-import com.industrial.eventanalytics.service.EventService;
+import com.industrial.eventanalytics.service.IdempotencyService;
+import com.industrial.eventanalytics.service.ReadRouting;
 import com.industrial.eventanalytics.service.StatsService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
 
@@ -19,37 +26,141 @@ import java.util.List;
 public class EventController {
     
     @Autowired
-    private EventService eventService;
+    private ClusterRouter clusterRouter;
     
     @Autowired
     private StatsService statsService;
     
+    @Autowired
+    private StatsFederation statsFederation;
+    
+    @Autowired
+    private IdempotencyService idempotencyService;
+    
+    @Autowired
+    private ReadRouting readRouting;
+    
     @PostMapping("/events/batch")
-    public ResponseEntity<BatchResponse> ingestBatchEvents(@RequestBody List<EventRequest> events) {
-        BatchResponse response = eventService.processBatchEvents(events);
-        return ResponseEntity.ok(response);
+    public ResponseEntity<BatchResponse> ingestBatchEvents(
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            @RequestHeader(value = ClusterRouter.FORWARDED_HEADER, required = false) String forwardedBy,
+            @RequestBody List<EventRequest> events) {
+        
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            BatchResponse response = clusterRouter.process(events, forwardedBy);
+            return withConsistencyToken(ResponseEntity.ok()).body(response);
+        }
+        
+        IdempotencyService.Outcome outcome = idempotencyService.execute(idempotencyKey, events,
+                () -> clusterRouter.process(events, forwardedBy));
+        return withConsistencyToken(ResponseEntity.ok())
+                .header("Idempotent-Replayed", String.valueOf(outcome.isReplayed()))
+                .body(outcome.getResponse());
+    }
+    
+    /**
+     * Hands out a token covering the batch just committed; stats requests
+     * sending it back read those writes even from a lagging replica.
+     */
+    private ResponseEntity.BodyBuilder withConsistencyToken(ResponseEntity.BodyBuilder builder) {
+        Long token = readRouting.currentToken();
+        return token == null ? builder : builder.header(ReadConsistencyFilter.CONSISTENCY_TOKEN, token.toString());
     }
     
     @GetMapping("/stats")
     public ResponseEntity<StatsResponse> getStats(
             @RequestParam String machineId,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant start,
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant end) {
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant end,
+            @RequestParam(defaultValue = "cluster") String scope) {
         
+        if (federate(scope)) {
+            StatsFederation.Result<StatsResponse> result = statsFederation.getMachineStats(machineId, start, end);
+            return withMissingNodes(ResponseEntity.ok(), result).body(result.getValue());
+        }
         StatsResponse response = statsService.getMachineStats(machineId, start, end);
         return ResponseEntity.ok(response);
     }
     
+    @GetMapping("/stats/timeseries")
+    public ResponseEntity<TimeSeriesResponse> getTimeSeries(
+            @RequestParam String machineId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant start,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant end,
+            @RequestParam Duration interval) {
+        
+        TimeSeriesResponse response = statsService.getMachineTimeSeries(machineId, start, end, interval);
+        return ResponseEntity.ok(response);
+    }
+    
     @GetMapping("/stats/top-defect-lines")
     public ResponseEntity<List<TopDefectLineResponse>> getTopDefectLines(
-            @RequestParam String factoryId,
+            @RequestParam(required = false) String factoryId,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
-            @RequestParam(defaultValue = "10") int limit) {
+            @RequestParam(defaultValue = "10") int limit,
+            @RequestParam(defaultValue = "cluster") String scope,
+            @RequestParam(defaultValue = "false") boolean approximate) {
         
-        // Note: factoryId parameter is included for API compatibility but not used in current implementation
-        // as machineId serves as the line identifier in this simplified version
-        List<TopDefectLineResponse> response = statsService.getTopDefectLines(from, to, limit);
-        return ResponseEntity.ok(response);
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+        List<TopDefectLineResponse> response;
+        if (approximate) {
+            if (federate(scope)) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "Approximate mode only covers this node's events, use scope=local");
+            }
+            builder.header("X-Approximate", "true");
+            response = statsService.getApproximateTopDefectLines(factoryId, from, to, limit);
+        } else if (federate(scope)) {
+            StatsFederation.Result<List<TopDefectLineResponse>> result =
+                    statsFederation.getTopDefectLines(factoryId, from, to, limit);
+            withMissingNodes(builder, result);
+            response = result.getValue();
+        } else {
+            // Without factoryId the ranking covers the whole fleet
+            response = statsService.getTopDefectLines(factoryId, from, to, limit);
+        }
+        
+        Instant horizon = statsService.getRetentionHorizonIfTruncated(from);
+        if (horizon != null) {
+            builder.header("X-Data-Complete", "false")
+                    .header("X-Retention-Horizon", horizon.toString());
+        }
+        return builder.body(response);
+    }
+    
+    /**
+     * This node's part of a federated top-K query: its own top {@code limit}
+     * lines, the lines with at least {@code minDefects}, or the given lines.
+     */
+    @GetMapping("/stats/partial/top-defect-lines")
+    public ResponseEntity<List<TopDefectLineResponse>> getPartialTopDefectLines(
+            @RequestParam(required = false) String factoryId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) Long minDefects,
+            @RequestParam(required = false) List<String> lineId) {
+        
+        if (lineId != null) {
+            return ResponseEntity.ok(statsService.getDefectLines(factoryId, from, to, lineId));
+        }
+        if (minDefects != null) {
+            return ResponseEntity.ok(statsService.getDefectLinesAtLeast(factoryId, from, to, minDefects));
+        }
+        return ResponseEntity.ok(statsService.getTopDefectLines(factoryId, from, to, limit != null ? limit : 10));
+    }
+    
+    private boolean federate(String scope) {
+        return !"local".equalsIgnoreCase(scope) && statsFederation.isActive();
+    }
+    
+    private static ResponseEntity.BodyBuilder withMissingNodes(ResponseEntity.BodyBuilder builder,
+                                                               StatsFederation.Result<?> result) {
+        if (result.isPartial()) {
+            builder.header("X-Partial-Result", "true")
+                    .header("X-Missing-Nodes", String.join(",", result.getMissingNodes()));
+        }
+        return builder;
     }
 }
@@ -0,0 +1,70 @@
+package com.industrial.eventanalytics.controller;
+
+import com.industrial.eventanalytics.service.ExportService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.Instant;
+import java.util.zip.GZIPOutputStream;
+
+@RestController
+@RequestMapping("/api/v1/export")
+public class ExportController {
+    
+    @Autowired
+    private ExportService exportService;
+    
+    @GetMapping("/events")
+    public ResponseEntity<StreamingResponseBody> exportEvents(
+            @RequestParam(required = false) String machineId,
+            @RequestParam(required = false) String factoryId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant start,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant end,
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        
+        ExportService.Format exportFormat = ExportService.Format.parse(format);
+        exportService.checkWindow(start, end);
+        return stream("events", exportFormat, acceptEncoding, out ->
+                exportService.exportEvents(out, exportFormat, machineId, factoryId, start, end));
+    }
+    
+    @GetMapping("/aggregates")
+    public ResponseEntity<StreamingResponseBody> exportAggregates(
+            @RequestParam(required = false) String factoryId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant start,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant end,
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        
+        ExportService.Format exportFormat = ExportService.Format.parse(format);
+        exportService.checkWindow(start, end);
+        return stream("aggregates", exportFormat, acceptEncoding, out ->
+                exportService.exportAggregates(out, exportFormat, factoryId, start, end));
+    }
+    
+    private static ResponseEntity<StreamingResponseBody> stream(String name, ExportService.Format format,
+                                                                String acceptEncoding, StreamingResponseBody export) {
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        StreamingResponseBody body = !gzip ? export : out -> {
+            GZIPOutputStream compressed = new GZIPOutputStream(out, 64 * 1024);
+            export.writeTo(compressed);
+            compressed.finish();
+        };
+        
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(format.getContentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"" + name + "." + format.getExtension() + "\"")
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
+    }
+}
@@ -0,0 +1,59 @@
+package com.industrial.eventanalytics.controller;
+
+import com.industrial.eventanalytics.service.ReadRouting;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Picks the read source for a stats request and reports it. A request
+ * carrying the {@code X-Consistency-Token} returned by an earlier ingest
+ * call is served by a source that already has those writes.
+ */
+@Component
+public class ReadConsistencyFilter extends OncePerRequestFilter {
+    
+    public static final String CONSISTENCY_TOKEN = "X-Consistency-Token";
+    
+    @Autowired
+    private ReadRouting readRouting;
+    
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().substring(request.getContextPath().length()).startsWith("/api/v1/stats");
+    }
+    
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Long token = null;
+        String header = request.getHeader(CONSISTENCY_TOKEN);
+        if (header != null && !header.isBlank()) {
+            try {
+                token = Long.parseLong(header.trim());
+            } catch (NumberFormatException e) {
+                response.setStatus(HttpStatus.BAD_REQUEST.value());
+                response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+                response.getWriter().write("{\"error\":\"" + CONSISTENCY_TOKEN + " must be a number\"}");
+                return;
+            }
+        }
+        
+        String source = readRouting.pin(token);
+        try {
+            response.setHeader("X-Read-Source", source);
+            response.setHeader("X-Data-Staleness-Ms", String.valueOf(readRouting.getStaleness(source).toMillis()));
+            chain.doFilter(request, response);
+        } finally {
+            readRouting.unpin();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.industrial.eventanalytics.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+@Name("com.industrial.eventanalytics.BatchIngest")
+@Label("Batch Ingest")
+@Description("One call of EventService.processBatchEvents with its outcome counts")
+@Category({"Event Analytics", "Ingest"})
+@Threshold("20 ms")
+@StackTrace(false)
+public class BatchIngestEvent extends Event {
+    
+    @Label("Batch Size")
+    public int batchSize;
+    
+    @Label("Accepted")
+    public int accepted;
+    
+    @Label("Deduped")
+    public int deduped;
+    
+    @Label("Updated")
+    public int updated;
+    
+    @Label("Rejected")
+    public int rejected;
+}
@@ -0,0 +1,42 @@
+package com.industrial.eventanalytics.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+@Name("com.industrial.eventanalytics.IngestStage")
+@Label("Ingest Stage")
+@Description("Validation of a single event, or the lookup or persist step of a whole batch")
+@Category({"Event Analytics", "Ingest"})
+@Threshold("5 ms")
+@StackTrace(false)
+public class IngestStageEvent extends Event {
+    
+    public static final String VALIDATION = "validation";
+    public static final String LOOKUP = "lookup";
+    public static final String PERSIST = "persist";
+    
+    @Label("Stage")
+    public String stage;
+    
+    @Label("Event Id")
+    @Description("Event being validated; empty for batch-wide stages")
+    public String eventId;
+    
+    /**
+     * Ends a stage started with {@link #begin()} and commits it if it was
+     * slow enough to pass the threshold.
+     */
+    public static void end(IngestStageEvent event, String stage, String eventId) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.stage = stage;
+            event.eventId = eventId;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.industrial.eventanalytics.diagnostics;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ResponseStatusException;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+
+/**
+ * Takes bounded, on-demand Flight Recorder recordings. Only one recording
+ * runs at a time, its length and size are capped, and the custom ingest and
+ * stats events keep their annotated thresholds so steady-state overhead stays
+ * negligible. Recordings run in the background and stop on their own once
+ * the duration has passed; the last one is kept until it is downloaded or
+ * the next one starts. Only present with {@code diagnostics.jfr.enabled=true}.
+ */
+@Service
+@ConditionalOnProperty(name = "diagnostics.jfr.enabled", havingValue = "true")
+public class JfrRecordingService {
+    
+    @Value("${diagnostics.jfr.max-duration:PT5M}")
+    private Duration maxDuration;
+    
+    @Value("${diagnostics.jfr.max-size:64MB}")
+    private DataSize maxSize;
+    
+    private Recording current;
+    
+    /**
+     * Starts recording for {@code duration} using the named JDK settings
+     * ("default" or "profile") and returns the recording's id.
+     */
+    public synchronized long start(Duration duration, String settings) {
+        if (duration.isNegative() || duration.isZero() || duration.compareTo(maxDuration) > 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "duration must be positive and at most " + maxDuration);
+        }
+        Configuration configuration;
+        try {
+            configuration = Configuration.getConfiguration(settings);
+        } catch (ParseException | IOException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown JFR settings: " + settings);
+        }
+        if (current != null && current.getState() == RecordingState.RUNNING) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "A recording is already in progress");
+        }
+        close();
+        
+        Recording jfr = new Recording(configuration);
+        jfr.setName("event-analytics-on-demand");
+        jfr.setToDisk(true);
+        jfr.setMaxSize(maxSize.toBytes());
+        jfr.setDuration(duration);
+        jfr.start();
+        current = jfr;
+        return jfr.getId();
+    }
+    
+    public synchronized RecordingState getState(long id) {
+        return find(id).getState();
+    }
+    
+    /**
+     * Dumps a finished recording to a file, which the caller must delete,
+     * and releases the recording.
+     */
+    public synchronized Path dump(long id) throws IOException {
+        Recording jfr = find(id);
+        if (jfr.getState() == RecordingState.RUNNING) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Recording " + id + " is still running");
+        }
+        Path file = Files.createTempFile("event-analytics-", ".jfr");
+        try {
+            jfr.dump(file);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        close();
+        return file;
+    }
+    
+    private Recording find(long id) {
+        if (current == null || current.getId() != id) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No recording " + id);
+        }
+        return current;
+    }
+    
+    @PreDestroy
+    synchronized void close() {
+        if (current != null) {
+            current.close();
+            current = null;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.industrial.eventanalytics.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+@Name("com.industrial.eventanalytics.StatsQuery")
+@Label("Stats Query")
+@Description("A StatsService query with the window it covered")
+@Category({"Event Analytics", "Stats"})
+@Threshold("20 ms")
+@StackTrace(false)
+public class StatsQueryEvent extends Event {
+    
+    @Label("Query")
+    public String query;
+    
+    @Label("Machine Id")
+    public String machineId;
+    
+    @Label("Factory Id")
+    public String factoryId;
+    
+    @Label("Window Length")
+    @Timespan(Timespan.SECONDS)
+    public long windowSeconds;
+}
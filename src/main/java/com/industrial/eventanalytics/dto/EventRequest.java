@@ -1,6 +1,7 @@
 package com.industrial.eventanalytics.dto;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 import java.time.Instant;
@@ -18,9 +19,14 @@ public class EventRequest {
     
     private String machineId;
     
-    private Long durationMs;
+    private String factoryId;
     
-    private Integer defectCount;
+    // Primitive fields with presence flags; the boxed accessors keep the JSON shape (null when absent)
+    private long durationMs;
+    private boolean hasDurationMs;
+    
+    private int defectCount;
+    private boolean hasDefectCount;
     
     public EventRequest() {}
     
@@ -30,8 +36,8 @@ public class EventRequest {
         this.eventTime = eventTime;
         this.receivedTime = receivedTime;
         this.machineId = machineId;
-        this.durationMs = durationMs;
-        this.defectCount = defectCount;
+        setDurationMs(durationMs);
+        setDefectCount(defectCount);
     }
     
     public String getEventId() {
@@ -66,19 +72,61 @@ public class EventRequest {
         this.machineId = machineId;
     }
     
+    public String getFactoryId() {
+        return factoryId;
+    }
+    
+    public void setFactoryId(String factoryId) {
+        this.factoryId = factoryId;
+    }
+    
     public Long getDurationMs() {
-        return durationMs;
+        return hasDurationMs ? durationMs : null;
     }
     
     public void setDurationMs(Long durationMs) {
+        this.hasDurationMs = durationMs != null;
+        this.durationMs = hasDurationMs ? durationMs : 0;
+    }
+    
+    public boolean hasDurationMs() {
+        return hasDurationMs;
+    }
+    
+    /** The duration without boxing; 0 when {@link #hasDurationMs()} is false. */
+    @JsonIgnore
+    public long getDurationMsValue() {
+        return durationMs;
+    }
+    
+    @JsonIgnore
+    public void setDurationMsValue(long durationMs) {
         this.durationMs = durationMs;
+        this.hasDurationMs = true;
     }
     
     public Integer getDefectCount() {
-        return defectCount;
+        return hasDefectCount ? defectCount : null;
     }
     
     public void setDefectCount(Integer defectCount) {
+        this.hasDefectCount = defectCount != null;
+        this.defectCount = hasDefectCount ? defectCount : 0;
+    }
+    
+    public boolean hasDefectCount() {
+        return hasDefectCount;
+    }
+    
+    /** The defect count without boxing; 0 when {@link #hasDefectCount()} is false. */
+    @JsonIgnore
+    public int getDefectCountValue() {
+        return defectCount;
+    }
+    
+    @JsonIgnore
+    public void setDefectCountValue(int defectCount) {
         this.defectCount = defectCount;
+        this.hasDefectCount = true;
     }
 }
@@ -1,6 +1,7 @@
 package com.industrial.eventanalytics.dto;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonInclude;
 
 import java.time.Instant;
 
@@ -16,6 +17,11 @@ public class StatsResponse {
     private long defectsCount;
     private double avgDefectRate;
     private String status;
+    private boolean complete = true;
+    
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss'Z'", timezone = "UTC")
+    private Instant retentionHorizon;
     
     public StatsResponse() {}
     
@@ -85,4 +91,24 @@ public class StatsResponse {
     public void setStatus(String status) {
         this.status = status;
     }
+    
+    /**
+     * False when part of the requested window is older than the raw event
+     * retention horizon, i.e. the counts cover only the retained part.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+    
+    public void setComplete(boolean complete) {
+        this.complete = complete;
+    }
+    
+    public Instant getRetentionHorizon() {
+        return retentionHorizon;
+    }
+    
+    public void setRetentionHorizon(Instant retentionHorizon) {
+        this.retentionHorizon = retentionHorizon;
+    }
 }
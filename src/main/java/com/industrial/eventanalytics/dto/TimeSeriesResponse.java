@@ -0,0 +1,149 @@
+package com.industrial.eventanalytics.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.Instant;
+import java.util.List;
+
+public class TimeSeriesResponse {
+    private String machineId;
+    
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss'Z'", timezone = "UTC")
+    private Instant start;
+    
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss'Z'", timezone = "UTC")
+    private Instant end;
+    private long intervalSeconds;
+    private List<Point> points;
+    private boolean complete = true;
+    
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss'Z'", timezone = "UTC")
+    private Instant retentionHorizon;
+    
+    public TimeSeriesResponse() {}
+    
+    public TimeSeriesResponse(String machineId, Instant start, Instant end, long intervalSeconds, List<Point> points) {
+        this.machineId = machineId;
+        this.start = start;
+        this.end = end;
+        this.intervalSeconds = intervalSeconds;
+        this.points = points;
+    }
+    
+    public String getMachineId() {
+        return machineId;
+    }
+    
+    public void setMachineId(String machineId) {
+        this.machineId = machineId;
+    }
+    
+    public Instant getStart() {
+        return start;
+    }
+    
+    public void setStart(Instant start) {
+        this.start = start;
+    }
+    
+    public Instant getEnd() {
+        return end;
+    }
+    
+    public void setEnd(Instant end) {
+        this.end = end;
+    }
+    
+    public long getIntervalSeconds() {
+        return intervalSeconds;
+    }
+    
+    public void setIntervalSeconds(long intervalSeconds) {
+        this.intervalSeconds = intervalSeconds;
+    }
+    
+    public List<Point> getPoints() {
+        return points;
+    }
+    
+    public void setPoints(List<Point> points) {
+        this.points = points;
+    }
+    
+    public boolean isComplete() {
+        return complete;
+    }
+    
+    public void setComplete(boolean complete) {
+        this.complete = complete;
+    }
+    
+    public Instant getRetentionHorizon() {
+        return retentionHorizon;
+    }
+    
+    public void setRetentionHorizon(Instant retentionHorizon) {
+        this.retentionHorizon = retentionHorizon;
+    }
+    
+    public static class Point {
+        @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss'Z'", timezone = "UTC")
+        private Instant bucketStart;
+        private long eventsCount;
+        private long defectsCount;
+        private double avgDefectRate;
+        private String status;
+        
+        public Point() {}
+        
+        public Point(Instant bucketStart, long eventsCount, long defectsCount, double avgDefectRate, String status) {
+            this.bucketStart = bucketStart;
+            this.eventsCount = eventsCount;
+            this.defectsCount = defectsCount;
+            this.avgDefectRate = avgDefectRate;
+            this.status = status;
+        }
+        
+        public Instant getBucketStart() {
+            return bucketStart;
+        }
+        
+        public void setBucketStart(Instant bucketStart) {
+            this.bucketStart = bucketStart;
+        }
+        
+        public long getEventsCount() {
+            return eventsCount;
+        }
+        
+        public void setEventsCount(long eventsCount) {
+            this.eventsCount = eventsCount;
+        }
+        
+        public long getDefectsCount() {
+            return defectsCount;
+        }
+        
+        public void setDefectsCount(long defectsCount) {
+            this.defectsCount = defectsCount;
+        }
+        
+        public double getAvgDefectRate() {
+            return avgDefectRate;
+        }
+        
+        public void setAvgDefectRate(double avgDefectRate) {
+            this.avgDefectRate = avgDefectRate;
+        }
+        
+        public String getStatus() {
+            return status;
+        }
+        
+        public void setStatus(String status) {
+            this.status = status;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.industrial.eventanalytics.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 
@@ -9,6 +11,12 @@ public class TopDefectLineResponse {
     private long eventCount;
     private double defectsPercent;
     
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long totalDefectsLowerBound;
+    
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long totalDefectsUpperBound;
+    
     public TopDefectLineResponse() {}
     
     public TopDefectLineResponse(String lineId, long totalDefects, long eventCount) {
@@ -61,4 +69,20 @@ public class TopDefectLineResponse {
     public void setDefectsPercent(double defectsPercent) {
         this.defectsPercent = defectsPercent;
     }
+    
+    public Long getTotalDefectsLowerBound() {
+        return totalDefectsLowerBound;
+    }
+    
+    public void setTotalDefectsLowerBound(Long totalDefectsLowerBound) {
+        this.totalDefectsLowerBound = totalDefectsLowerBound;
+    }
+    
+    public Long getTotalDefectsUpperBound() {
+        return totalDefectsUpperBound;
+    }
+    
+    public void setTotalDefectsUpperBound(Long totalDefectsUpperBound) {
+        this.totalDefectsUpperBound = totalDefectsUpperBound;
+    }
 }
@@ -0,0 +1,80 @@
+package com.industrial.eventanalytics.model;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * Raw event moved out of the hot {@code events} table by the retention job
+ * when it runs in archive mode.
+ */
+@Entity
+@Table(name = "events_archive",
+       indexes = @Index(name = "idx_events_archive_event_time", columnList = "event_time"))
+public class ArchivedEvent {
+    
+    @Id
+    private Long id;
+    
+    @Column(name = "event_id", nullable = false)
+    private String eventId;
+    
+    @Column(name = "event_time", nullable = false)
+    private Instant eventTime;
+    
+    @Column(name = "received_time", nullable = false)
+    private Instant receivedTime;
+    
+    @Column(name = "machine_id", nullable = false)
+    private String machineId;
+    
+    @Column(name = "factory_id", nullable = false)
+    private String factoryId;
+    
+    @Column(name = "duration_ms", nullable = false)
+    private Long durationMs;
+    
+    @Column(name = "defect_count", nullable = false)
+    private Integer defectCount;
+    
+    @Column(name = "archived_at", nullable = false)
+    private Instant archivedAt;
+    
+    public ArchivedEvent() {}
+    
+    public Long getId() {
+        return id;
+    }
+    
+    public String getEventId() {
+        return eventId;
+    }
+    
+    public Instant getEventTime() {
+        return eventTime;
+    }
+    
+    public Instant getReceivedTime() {
+        return receivedTime;
+    }
+    
+    public String getMachineId() {
+        return machineId;
+    }
+    
+    public String getFactoryId() {
+        return factoryId;
+    }
+    
+    public Long getDurationMs() {
+        return durationMs;
+    }
+    
+    public Integer getDefectCount() {
+        return defectCount;
+    }
+    
+    public Instant getArchivedAt() {
+        return archivedAt;
+    }
+}
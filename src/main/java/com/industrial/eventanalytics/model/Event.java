@@ -4,13 +4,27 @@ import jakarta.persistence.*;
 import jakarta.validation.constraints.*;
 import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.industrial.eventanalytics.service.EventRemovalListener;
 
 import java.time.Instant;
 
 @Entity
-@Table(name = "events", uniqueConstraints = @UniqueConstraint(columnNames = "event_id"))
+@EntityListeners(EventRemovalListener.class)
+@Table(name = "events",
+       uniqueConstraints = @UniqueConstraint(columnNames = "event_id"),
+       indexes = {
+           @Index(name = "idx_events_event_time", columnList = "event_time"),
+           @Index(name = "idx_events_machine_time", columnList = "machine_id, event_time"),
+           @Index(name = "idx_events_factory_time", columnList = "factory_id, event_time")
+       })
 public class Event {
     
+    /**
+     * Factory recorded for events whose machine is not in the factory registry
+     * and whose request did not name a factory.
+     */
+    public static final String UNASSIGNED_FACTORY = "UNASSIGNED";
+    
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -29,6 +43,9 @@ public class Event {
     @Column(name = "machine_id", nullable = false)
     private String machineId;
     
+    @Column(name = "factory_id", nullable = false)
+    private String factoryId;
+    
     @Column(name = "duration_ms", nullable = false)
     @Min(value = 0, message = "Duration must be non-negative")
     @Max(value = 21600000, message = "Duration must not exceed 6 hours")
@@ -40,10 +57,16 @@ public class Event {
     public Event() {}
     
     public Event(String eventId, Instant eventTime, Instant receivedTime, String machineId, Long durationMs, Integer defectCount) {
+        this(eventId, eventTime, receivedTime, machineId, UNASSIGNED_FACTORY, durationMs, defectCount);
+    }
+    
+    public Event(String eventId, Instant eventTime, Instant receivedTime, String machineId, String factoryId,
+                 Long durationMs, Integer defectCount) {
         this.eventId = eventId;
         this.eventTime = eventTime;
         this.receivedTime = receivedTime;
         this.machineId = machineId;
+        this.factoryId = factoryId;
         this.durationMs = durationMs;
         this.defectCount = defectCount;
     }
@@ -88,6 +111,14 @@ public class Event {
         this.machineId = machineId;
     }
     
+    public String getFactoryId() {
+        return factoryId;
+    }
+    
+    public void setFactoryId(String factoryId) {
+        this.factoryId = factoryId;
+    }
+    
     public Long getDurationMs() {
         return durationMs;
     }
@@ -123,6 +154,21 @@ public class Event {
         return this.receivedTime.isAfter(other.getReceivedTime());
     }
     
+    /**
+     * Check if two versions of an event carry the same payload, ignoring
+     * receivedTime
+     * @param other the stored version to compare against
+     * @return true if eventTime, machine, factory, duration and defects match
+     */
+    @JsonIgnore
+    public boolean hasSamePayloadAs(Event other) {
+        return eventTime.equals(other.getEventTime()) &&
+               machineId.equals(other.getMachineId()) &&
+               factoryId.equals(other.getFactoryId()) &&
+               durationMs.equals(other.getDurationMs()) &&
+               defectCount.equals(other.getDefectCount());
+    }
+    
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -144,6 +190,7 @@ public class Event {
                 ", eventTime=" + eventTime +
                 ", receivedTime=" + receivedTime +
                 ", machineId='" + machineId + '\'' +
+                ", factoryId='" + factoryId + '\'' +
                 ", durationMs=" + durationMs +
                 ", defectCount=" + defectCount +
                 '}';
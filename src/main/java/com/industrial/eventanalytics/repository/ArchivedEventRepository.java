@@ -0,0 +1,23 @@
+package com.industrial.eventanalytics.repository;
+
+import com.industrial.eventanalytics.model.ArchivedEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface ArchivedEventRepository extends JpaRepository<ArchivedEvent, Long> {
+    
+    @Modifying
+    @Query(value = "INSERT INTO events_archive (id, event_id, event_time, received_time, machine_id, " +
+                   "factory_id, duration_ms, defect_count, archived_at) " +
+                   "SELECT id, event_id, event_time, received_time, machine_id, factory_id, duration_ms, defect_count, :archivedAt " +
+                   "FROM events WHERE id IN (:ids)",
+           nativeQuery = true)
+    int archiveByIds(@Param("ids") List<Long> ids, @Param("archivedAt") Instant archivedAt);
+}
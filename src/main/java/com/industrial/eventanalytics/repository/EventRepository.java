@@ -1,12 +1,15 @@
 package com.industrial.eventanalytics.repository;
 
 import com.industrial.eventanalytics.model.Event;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,6 +18,20 @@ public interface EventRepository extends JpaRepository<Event, Long> {
     
     Optional<Event> findByEventId(String eventId);
     
+    List<Event> findByEventIdIn(Collection<String> eventIds);
+    
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Event e SET e.eventTime = :eventTime, e.receivedTime = :receivedTime, " +
+           "e.machineId = :machineId, e.factoryId = :factoryId, e.durationMs = :durationMs, " +
+           "e.defectCount = :defectCount WHERE e.eventId = :eventId AND e.receivedTime < :receivedTime")
+    int updateIfNewer(@Param("eventId") String eventId,
+                      @Param("eventTime") Instant eventTime,
+                      @Param("receivedTime") Instant receivedTime,
+                      @Param("machineId") String machineId,
+                      @Param("factoryId") String factoryId,
+                      @Param("durationMs") Long durationMs,
+                      @Param("defectCount") Integer defectCount);
+    
     @Query("SELECT COUNT(e) FROM Event e WHERE e.machineId = :machineId " +
            "AND e.eventTime >= :start AND e.eventTime < :end")
     long countEventsByMachineAndTimeWindow(@Param("machineId") String machineId,
@@ -35,4 +52,63 @@ public interface EventRepository extends JpaRepository<Event, Long> {
            "ORDER BY SUM(e.defectCount) DESC")
     List<Object[]> findTopDefectLinesByTimeWindow(@Param("from") Instant from,
                                                   @Param("to") Instant to);
+    
+    @Query("SELECT e.machineId as lineId, SUM(e.defectCount) as totalDefects, COUNT(e) as eventCount " +
+           "FROM Event e WHERE e.factoryId = :factoryId " +
+           "AND e.eventTime >= :from AND e.eventTime <= :to " +
+           "AND e.defectCount != -1 " +
+           "GROUP BY e.machineId " +
+           "ORDER BY SUM(e.defectCount) DESC")
+    List<Object[]> findTopDefectLinesByFactoryAndTimeWindow(@Param("factoryId") String factoryId,
+                                                            @Param("from") Instant from,
+                                                            @Param("to") Instant to);
+    
+    @Query("SELECT e.machineId, SUM(e.defectCount), COUNT(e) FROM Event e " +
+           "WHERE (:factoryId IS NULL OR e.factoryId = :factoryId) " +
+           "AND e.eventTime >= :from AND e.eventTime <= :to " +
+           "AND e.defectCount != -1 " +
+           "GROUP BY e.machineId " +
+           "HAVING SUM(e.defectCount) >= :minDefects " +
+           "ORDER BY SUM(e.defectCount) DESC")
+    List<Object[]> findDefectLinesAtLeast(@Param("factoryId") String factoryId,
+                                          @Param("from") Instant from,
+                                          @Param("to") Instant to,
+                                          @Param("minDefects") long minDefects);
+    
+    @Query("SELECT e.machineId, SUM(e.defectCount), COUNT(e) FROM Event e " +
+           "WHERE (:factoryId IS NULL OR e.factoryId = :factoryId) " +
+           "AND e.machineId IN :lineIds " +
+           "AND e.eventTime >= :from AND e.eventTime <= :to " +
+           "AND e.defectCount != -1 " +
+           "GROUP BY e.machineId")
+    List<Object[]> findDefectLines(@Param("factoryId") String factoryId,
+                                   @Param("from") Instant from,
+                                   @Param("to") Instant to,
+                                   @Param("lineIds") Collection<String> lineIds);
+    
+    /**
+     * Per-interval event count and known-defect sum for one machine in a
+     * single grouped pass. Buckets are numbered from {@code start}, which the
+     * caller aligns to a UTC interval boundary.
+     */
+    @Query(value = "SELECT b.bucket, COUNT(*), COALESCE(SUM(b.defects), 0) FROM (" +
+                   "SELECT FLOOR(DATEDIFF('SECOND', :start, e.event_time) / :intervalSeconds) AS bucket, " +
+                   "CASE WHEN e.defect_count <> -1 THEN e.defect_count ELSE 0 END AS defects " +
+                   "FROM events e WHERE e.machine_id = :machineId " +
+                   "AND e.event_time >= :start AND e.event_time < :end) b " +
+                   "GROUP BY b.bucket ORDER BY b.bucket",
+           nativeQuery = true)
+    List<Object[]> aggregateByInterval(@Param("machineId") String machineId,
+                                       @Param("start") Instant start,
+                                       @Param("end") Instant end,
+                                       @Param("intervalSeconds") long intervalSeconds);
+    
+    @Query("SELECT e.id, e.eventId FROM Event e WHERE e.eventTime < :cutoff ORDER BY e.eventTime, e.id")
+    List<Object[]> findIdsOlderThan(@Param("cutoff") Instant cutoff, Pageable pageable);
+    
+    long countByEventTimeBefore(Instant cutoff);
+    
+    @Modifying
+    @Query("DELETE FROM Event e WHERE e.id IN :ids")
+    int deleteByIdIn(@Param("ids") List<Long> ids);
 }
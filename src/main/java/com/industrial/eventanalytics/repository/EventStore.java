@@ -0,0 +1,61 @@
+package com.industrial.eventanalytics.repository;
+
+import com.industrial.eventanalytics.dto.TopDefectLineResponse;
+import com.industrial.eventanalytics.model.Event;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hot-path persistence operations for events. {@code events.store} selects
+ * the JPA implementation ({@code jpa}, default) or the plain JDBC one
+ * ({@code jdbc}); both must behave identically.
+ */
+public interface EventStore {
+    
+    /**
+     * Current stored version of each of the given eventIds that exists,
+     * keyed by eventId.
+     */
+    Map<String, Event> findByEventIds(Collection<String> eventIds);
+    
+    void insertAll(List<Event> events);
+    
+    /**
+     * Overwrites each stored event whose receivedTime is older than the
+     * given version's.
+     * @return per event, whether the row was updated
+     */
+    boolean[] updateIfNewer(List<Event> events);
+    
+    /**
+     * Events of a machine with {@code start <= eventTime < end}.
+     */
+    long countEvents(String machineId, Instant start, Instant end);
+    
+    /**
+     * Known defects (defectCount != -1) of a machine with
+     * {@code start <= eventTime < end}.
+     */
+    long sumDefects(String machineId, Instant start, Instant end);
+    
+    /**
+     * Machines ranked by known defects with {@code from <= eventTime <= to},
+     * within one factory or fleet-wide when {@code factoryId} is null.
+     */
+    List<TopDefectLineResponse> findTopDefectLines(String factoryId, Instant from, Instant to, int limit);
+    
+    /**
+     * Every machine with at least {@code minDefects} known defects in the
+     * window, ranked like {@link #findTopDefectLines}.
+     */
+    List<TopDefectLineResponse> findDefectLinesAtLeast(String factoryId, Instant from, Instant to, long minDefects);
+    
+    /**
+     * Known defects and event counts in the window for the given machines;
+     * machines without events in it are left out.
+     */
+    List<TopDefectLineResponse> findDefectLines(String factoryId, Instant from, Instant to, Collection<String> lineIds);
+}
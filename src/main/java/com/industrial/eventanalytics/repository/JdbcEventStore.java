@@ -0,0 +1,181 @@
+package com.industrial.eventanalytics.repository;
+
+import com.industrial.eventanalytics.dto.TopDefectLineResponse;
+import com.industrial.eventanalytics.model.Event;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link EventStore} on plain prepared statements: no persistence context,
+ * no dirty checking, rows mapped straight into values and DTOs. Joins the
+ * surrounding Spring transaction like the JPA repositories do.
+ */
+@Repository
+@ConditionalOnProperty(name = "events.store", havingValue = "jdbc")
+public class JdbcEventStore implements EventStore {
+    
+    private static final int LOOKUP_SLICE = 500;
+    
+    private static final String COLUMNS =
+            "event_id, event_time, received_time, machine_id, factory_id, duration_ms, defect_count";
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Override
+    public Map<String, Event> findByEventIds(Collection<String> eventIds) {
+        Map<String, Event> found = new HashMap<>();
+        List<String> ids = new ArrayList<>(eventIds);
+        for (int from = 0; from < ids.size(); from += LOOKUP_SLICE) {
+            List<String> slice = ids.subList(from, Math.min(ids.size(), from + LOOKUP_SLICE));
+            String placeholders = String.join(",", Collections.nCopies(slice.size(), "?"));
+            jdbcTemplate.query("SELECT " + COLUMNS + " FROM events WHERE event_id IN (" + placeholders + ")",
+                    rs -> {
+                        Event event = new Event(rs.getString(1),
+                                rs.getObject(2, OffsetDateTime.class).toInstant(),
+                                rs.getObject(3, OffsetDateTime.class).toInstant(),
+                                rs.getString(4), rs.getString(5), rs.getLong(6), rs.getInt(7));
+                        found.put(event.getEventId(), event);
+                    },
+                    slice.toArray());
+        }
+        return found;
+    }
+    
+    @Override
+    public void insertAll(List<Event> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO events (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?)",
+                events, events.size(), (ps, event) -> {
+                    ps.setString(1, event.getEventId());
+                    ps.setObject(2, utc(event.getEventTime()));
+                    ps.setObject(3, utc(event.getReceivedTime()));
+                    ps.setString(4, event.getMachineId());
+                    ps.setString(5, event.getFactoryId());
+                    ps.setLong(6, event.getDurationMs());
+                    ps.setInt(7, event.getDefectCount());
+                });
+    }
+    
+    @Override
+    public boolean[] updateIfNewer(List<Event> events) {
+        boolean[] updated = new boolean[events.size()];
+        if (events.isEmpty()) {
+            return updated;
+        }
+        int[][] counts = jdbcTemplate.batchUpdate(
+                "UPDATE events SET event_time = ?, received_time = ?, machine_id = ?, factory_id = ?, " +
+                "duration_ms = ?, defect_count = ? WHERE event_id = ? AND received_time < ?",
+                events, events.size(), (ps, event) -> {
+                    OffsetDateTime receivedTime = utc(event.getReceivedTime());
+                    ps.setObject(1, utc(event.getEventTime()));
+                    ps.setObject(2, receivedTime);
+                    ps.setString(3, event.getMachineId());
+                    ps.setString(4, event.getFactoryId());
+                    ps.setLong(5, event.getDurationMs());
+                    ps.setInt(6, event.getDefectCount());
+                    ps.setString(7, event.getEventId());
+                    ps.setObject(8, receivedTime);
+                });
+        for (int i = 0; i < counts[0].length; i++) {
+            // Drivers that cannot report per-statement counts are trusted to have applied the row
+            updated[i] = counts[0][i] > 0 || counts[0][i] == Statement.SUCCESS_NO_INFO;
+        }
+        return updated;
+    }
+    
+    @Override
+    public long countEvents(String machineId, Instant start, Instant end) {
+        Long count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM events WHERE machine_id = ? AND event_time >= ? AND event_time < ?",
+                Long.class, machineId, utc(start), utc(end));
+        return count != null ? count : 0;
+    }
+    
+    @Override
+    public long sumDefects(String machineId, Instant start, Instant end) {
+        Long sum = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(SUM(defect_count), 0) FROM events " +
+                "WHERE machine_id = ? AND event_time >= ? AND event_time < ? AND defect_count <> -1",
+                Long.class, machineId, utc(start), utc(end));
+        return sum != null ? sum : 0;
+    }
+    
+    @Override
+    public List<TopDefectLineResponse> findTopDefectLines(String factoryId, Instant from, Instant to, int limit) {
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT machine_id, SUM(defect_count), COUNT(*) FROM events WHERE ");
+        if (factoryId != null) {
+            sql.append("factory_id = ? AND ");
+            args.add(factoryId);
+        }
+        sql.append("event_time >= ? AND event_time <= ? AND defect_count <> -1 " +
+                "GROUP BY machine_id ORDER BY SUM(defect_count) DESC LIMIT ?");
+        args.add(utc(from));
+        args.add(utc(to));
+        args.add(limit);
+        return jdbcTemplate.query(sql.toString(),
+                (rs, rowNum) -> new TopDefectLineResponse(rs.getString(1), rs.getLong(2), rs.getLong(3)),
+                args.toArray());
+    }
+    
+    @Override
+    public List<TopDefectLineResponse> findDefectLinesAtLeast(String factoryId, Instant from, Instant to, long minDefects) {
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT machine_id, SUM(defect_count), COUNT(*) FROM events WHERE ");
+        if (factoryId != null) {
+            sql.append("factory_id = ? AND ");
+            args.add(factoryId);
+        }
+        sql.append("event_time >= ? AND event_time <= ? AND defect_count <> -1 " +
+                "GROUP BY machine_id HAVING SUM(defect_count) >= ? ORDER BY SUM(defect_count) DESC");
+        args.add(utc(from));
+        args.add(utc(to));
+        args.add(minDefects);
+        return jdbcTemplate.query(sql.toString(),
+                (rs, rowNum) -> new TopDefectLineResponse(rs.getString(1), rs.getLong(2), rs.getLong(3)),
+                args.toArray());
+    }
+    
+    @Override
+    public List<TopDefectLineResponse> findDefectLines(String factoryId, Instant from, Instant to, Collection<String> lineIds) {
+        List<TopDefectLineResponse> found = new ArrayList<>();
+        List<String> ids = new ArrayList<>(lineIds);
+        for (int start = 0; start < ids.size(); start += LOOKUP_SLICE) {
+            List<String> slice = ids.subList(start, Math.min(ids.size(), start + LOOKUP_SLICE));
+            List<Object> args = new ArrayList<>(slice);
+            StringBuilder sql = new StringBuilder("SELECT machine_id, SUM(defect_count), COUNT(*) FROM events WHERE machine_id IN (")
+                    .append(String.join(",", Collections.nCopies(slice.size(), "?"))).append(") AND ");
+            if (factoryId != null) {
+                sql.append("factory_id = ? AND ");
+                args.add(factoryId);
+            }
+            sql.append("event_time >= ? AND event_time <= ? AND defect_count <> -1 GROUP BY machine_id");
+            args.add(utc(from));
+            args.add(utc(to));
+            found.addAll(jdbcTemplate.query(sql.toString(),
+                    (rs, rowNum) -> new TopDefectLineResponse(rs.getString(1), rs.getLong(2), rs.getLong(3)),
+                    args.toArray()));
+        }
+        return found;
+    }
+    
+    private static OffsetDateTime utc(Instant instant) {
+        return OffsetDateTime.ofInstant(instant, ZoneOffset.UTC);
+    }
+}
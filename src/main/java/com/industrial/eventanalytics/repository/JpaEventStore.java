@@ -0,0 +1,85 @@
+package com.industrial.eventanalytics.repository;
+
+import com.industrial.eventanalytics.dto.TopDefectLineResponse;
+import com.industrial.eventanalytics.model.Event;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Repository
+@ConditionalOnProperty(name = "events.store", havingValue = "jpa", matchIfMissing = true)
+public class JpaEventStore implements EventStore {
+    
+    @Autowired
+    private EventRepository eventRepository;
+    
+    @Override
+    public Map<String, Event> findByEventIds(Collection<String> eventIds) {
+        Map<String, Event> found = new HashMap<>();
+        if (!eventIds.isEmpty()) {
+            eventRepository.findByEventIdIn(eventIds).forEach(event -> found.put(event.getEventId(), event));
+        }
+        return found;
+    }
+    
+    @Override
+    public void insertAll(List<Event> events) {
+        eventRepository.saveAll(events);
+    }
+    
+    @Override
+    public boolean[] updateIfNewer(List<Event> events) {
+        boolean[] updated = new boolean[events.size()];
+        for (int i = 0; i < events.size(); i++) {
+            Event event = events.get(i);
+            updated[i] = eventRepository.updateIfNewer(event.getEventId(), event.getEventTime(), event.getReceivedTime(),
+                    event.getMachineId(), event.getFactoryId(), event.getDurationMs(), event.getDefectCount()) > 0;
+        }
+        return updated;
+    }
+    
+    @Override
+    public long countEvents(String machineId, Instant start, Instant end) {
+        return eventRepository.countEventsByMachineAndTimeWindow(machineId, start, end);
+    }
+    
+    @Override
+    public long sumDefects(String machineId, Instant start, Instant end) {
+        Long sum = eventRepository.sumDefectsByMachineAndTimeWindow(machineId, start, end);
+        return sum != null ? sum : 0;
+    }
+    
+    @Override
+    public List<TopDefectLineResponse> findTopDefectLines(String factoryId, Instant from, Instant to, int limit) {
+        List<Object[]> rows = factoryId != null
+                ? eventRepository.findTopDefectLinesByFactoryAndTimeWindow(factoryId, from, to)
+                : eventRepository.findTopDefectLinesByTimeWindow(from, to);
+        return rows.stream()
+                .limit(limit)
+                .map(row -> new TopDefectLineResponse((String) row[0], (Long) row[1], (Long) row[2]))
+                .toList();
+    }
+    
+    @Override
+    public List<TopDefectLineResponse> findDefectLinesAtLeast(String factoryId, Instant from, Instant to, long minDefects) {
+        return eventRepository.findDefectLinesAtLeast(factoryId, from, to, minDefects).stream()
+                .map(row -> new TopDefectLineResponse((String) row[0], (Long) row[1], (Long) row[2]))
+                .toList();
+    }
+    
+    @Override
+    public List<TopDefectLineResponse> findDefectLines(String factoryId, Instant from, Instant to, Collection<String> lineIds) {
+        if (lineIds.isEmpty()) {
+            return List.of();
+        }
+        return eventRepository.findDefectLines(factoryId, from, to, lineIds).stream()
+                .map(row -> new TopDefectLineResponse((String) row[0], (Long) row[1], (Long) row[2]))
+                .toList();
+    }
+}
@@ -0,0 +1,97 @@
+package com.industrial.eventanalytics.service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * AIMD concurrency limit driven by observed latency. Each request that
+ * completes within the latency target while the limiter is well utilised
+ * grows the limit by {@code 1/limit} (about one slot per round of requests);
+ * a request that is slower than the target or fails shrinks it
+ * multiplicatively, once per congestion signal: requests that were already
+ * in flight at the last decrease do not shrink it again, so a burst of slow
+ * completions backs off one step rather than straight to the minimum.
+ * Requests over the limit are refused immediately rather than queued.
+ */
+public class AdaptiveConcurrencyLimiter {
+    
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyTargetNanos;
+    private final double backoffRatio;
+    private final LongSupplier clock;
+    
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private double limit;
+    private volatile int currentLimit;
+    private long lastDecreaseNanos;
+    
+    public AdaptiveConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit,
+                                      long latencyTargetNanos, double backoffRatio) {
+        this(name, initialLimit, minLimit, maxLimit, latencyTargetNanos, backoffRatio, System::nanoTime);
+    }
+    
+    AdaptiveConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit,
+                               long latencyTargetNanos, double backoffRatio, LongSupplier clock) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Invalid limits for " + name + ": min=" + minLimit + ", max=" + maxLimit);
+        }
+        this.name = name;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyTargetNanos = latencyTargetNanos;
+        this.backoffRatio = backoffRatio;
+        this.clock = clock;
+        this.lastDecreaseNanos = clock.getAsLong();
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.currentLimit = (int) this.limit;
+    }
+    
+    /**
+     * Claims a slot, returning false when the current limit is reached.
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= currentLimit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+    
+    /**
+     * Releases a slot claimed by {@link #tryAcquire()} and feeds the
+     * observed latency into the limit.
+     */
+    public void release(long latencyNanos, boolean failed) {
+        int inFlightBefore = inFlight.getAndDecrement();
+        long now = clock.getAsLong();
+        synchronized (this) {
+            if (failed || latencyNanos > latencyTargetNanos) {
+                if (now - latencyNanos - lastDecreaseNanos >= 0) {
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                    lastDecreaseNanos = now;
+                }
+            } else if (inFlightBefore * 2 >= currentLimit) {
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+            currentLimit = (int) limit;
+        }
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public int getLimit() {
+        return currentLimit;
+    }
+    
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
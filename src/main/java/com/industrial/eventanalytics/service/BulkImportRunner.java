@@ -0,0 +1,49 @@
+package com.industrial.eventanalytics.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+
+/**
+ * Entry point of the standalone bulk loader mode, e.g.
+ * {@code java -jar app.jar --spring.profiles.active=bulk-import --bulk-import.file=events.ndjson}.
+ * The application exits once the file has been loaded.
+ */
+@Component
+@ConditionalOnProperty(name = "bulk-import.file")
+public class BulkImportRunner implements ApplicationRunner {
+    
+    @Autowired
+    private BulkImportService bulkImportService;
+    
+    @Autowired
+    private ConfigurableApplicationContext context;
+    
+    @Value("${bulk-import.file}")
+    private Path file;
+    
+    @Value("${bulk-import.checkpoint:}")
+    private String checkpoint;
+    
+    @Value("${bulk-import.exit-when-done:true}")
+    private boolean exitWhenDone;
+    
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        Path checkpointFile = checkpoint.isEmpty()
+                ? file.resolveSibling(file.getFileName() + ".checkpoint")
+                : Path.of(checkpoint);
+        bulkImportService.importFile(file, checkpointFile);
+        
+        if (exitWhenDone) {
+            System.exit(SpringApplication.exit(context, () -> 0));
+        }
+    }
+}
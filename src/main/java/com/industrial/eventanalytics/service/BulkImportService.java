@@ -0,0 +1,581 @@
+package com.industrial.eventanalytics.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.industrial.eventanalytics.codec.EventDecoder;
+import com.industrial.eventanalytics.dto.EventRequest;
+import com.industrial.eventanalytics.model.Event;
+import com.industrial.eventanalytics.repository.EventStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Offline loader for large event files. NDJSON files are memory-mapped,
+ * split at line boundaries and parsed in parallel; a single JSON array is
+ * streamed from the mapped file instead. Records are then applied in file
+ * order, in batches, with the same validation and dedup/update rules as
+ * {@link EventService}, through the batch operations of {@link EventStore}.
+ * After every committed batch the byte offset (or array index) reached is
+ * written to a checkpoint file, so an interrupted import resumes where it
+ * stopped.
+ */
+@Service
+public class BulkImportService {
+    
+    private static final Logger log = LoggerFactory.getLogger(BulkImportService.class);
+    
+    private static final String MALFORMED_RECORD = "MALFORMED_RECORD";
+    
+    @Autowired
+    private EventStore eventStore;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Autowired
+    private EventDecoder eventDecoder;
+    
+    @Autowired
+    private EventValidator eventValidator;
+    
+    @Autowired
+    private FactoryRegistry factoryRegistry;
+    
+    @Autowired
+    private RecentEventCache recentEventCache;
+    
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    
+    @Value("${bulk-import.chunk-bytes:33554432}")
+    private long chunkBytes;
+    
+    @Value("${bulk-import.batch-size:5000}")
+    private int batchSize;
+    
+    @Value("${bulk-import.parallelism:0}")
+    private int parallelism;
+    
+    @Value("${bulk-import.progress-interval:PT5S}")
+    private Duration progressInterval;
+    
+    public Report importFile(Path file, Path checkpointFile) throws IOException {
+        Report report = readCheckpoint(checkpointFile);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            report.totalBytes = channel.size();
+            report.startNanos = System.nanoTime();
+            report.lastProgressNanos = report.startNanos;
+            
+            Loader loader = new Loader(transactionTemplate, checkpointFile, report);
+            if (isJsonArray(channel)) {
+                importArray(channel, loader);
+                loader.flush();
+            } else {
+                importLines(channel, loader);
+                loader.flush();
+                // Trailing blank lines carry no records; mark the whole file as done
+                loader.advanceTo(report.totalBytes);
+            }
+        }
+        
+        log.info("Bulk import of {} finished: {}", file, report.summary());
+        return report;
+    }
+    
+    private void importLines(FileChannel channel, Loader loader) throws IOException {
+        List<long[]> chunks = splitAtLineBoundaries(channel, loader.report.offset, channel.size());
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "bulk-import-parser");
+            thread.setDaemon(true);
+            return thread;
+        });
+        
+        try {
+            Deque<Future<ParsedChunk>> inFlight = new ArrayDeque<>();
+            int next = 0;
+            while (next < chunks.size() || !inFlight.isEmpty()) {
+                // Parse ahead in parallel, but hand chunks to the loader in file order
+                while (next < chunks.size() && inFlight.size() < threads * 2) {
+                    long[] chunk = chunks.get(next++);
+                    inFlight.add(executor.submit(() -> parseLines(channel, chunk[0], chunk[1])));
+                }
+                ParsedChunk parsed = inFlight.poll().get();
+                for (int i = 0; i < parsed.requests.size(); i++) {
+                    loader.add(parsed.requests.get(i), parsed.endOffsets[i]);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Bulk import interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to parse " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    private List<long[]> splitAtLineBoundaries(FileChannel channel, long from, long size) throws IOException {
+        List<long[]> chunks = new ArrayList<>();
+        long position = from;
+        while (position < size) {
+            long end = Math.min(size, position + Math.min(chunkBytes, Integer.MAX_VALUE - 8));
+            if (end < size) {
+                end = nextLineStart(channel, end, size);
+            }
+            chunks.add(new long[]{position, end});
+            position = end;
+        }
+        return chunks;
+    }
+    
+    private static long nextLineStart(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long position = from - 1;
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+    
+    private ParsedChunk parseLines(FileChannel channel, long start, long end) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        ParsedChunk parsed = new ParsedChunk();
+        byte[] line = new byte[4096];
+        int limit = buffer.limit();
+        int lineStart = 0;
+        
+        for (int i = 0; i <= limit; i++) {
+            if (i < limit && buffer.get(i) != '\n') {
+                continue;
+            }
+            int from = lineStart;
+            int to = i;
+            while (from < to && isWhitespace(buffer.get(from))) {
+                from++;
+            }
+            while (to > from && isWhitespace(buffer.get(to - 1))) {
+                to--;
+            }
+            if (to > from) {
+                int length = to - from;
+                if (line.length < length) {
+                    line = new byte[Math.max(length, line.length * 2)];
+                }
+                buffer.get(from, line, 0, length);
+                EventRequest request;
+                try {
+                    request = eventDecoder.decodeEvent(line, 0, length);
+                } catch (IOException e) {
+                    request = null;
+                }
+                parsed.add(request, start + Math.min(i + 1, limit));
+            }
+            lineStart = i + 1;
+        }
+        return parsed;
+    }
+    
+    private void importArray(FileChannel channel, Loader loader) throws IOException {
+        long skip = loader.report.offset;
+        long index = 0;
+        try (JsonParser parser = objectMapper.getFactory().createParser(new MappedInputStream(channel))) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Expected a JSON array of events");
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                index++;
+                if (index <= skip) {
+                    parser.skipChildren();
+                    continue;
+                }
+                EventRequest request;
+                try {
+                    request = objectMapper.readValue(parser, EventRequest.class);
+                } catch (IOException e) {
+                    request = null;
+                    parser.skipChildren();
+                }
+                loader.add(request, index);
+            }
+        }
+    }
+    
+    private static boolean isJsonArray(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        long position = 0;
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                return false;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = buffer.get(i);
+                if (!isWhitespace(b)) {
+                    return b == '[';
+                }
+            }
+            position += read;
+        }
+    }
+    
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+    
+    private Report readCheckpoint(Path checkpointFile) throws IOException {
+        Report report = new Report();
+        if (checkpointFile != null && Files.exists(checkpointFile)) {
+            Properties properties = new Properties();
+            try (InputStream in = Files.newInputStream(checkpointFile)) {
+                properties.load(in);
+            }
+            report.offset = Long.parseLong(properties.getProperty("offset", "0"));
+            report.records = Long.parseLong(properties.getProperty("records", "0"));
+            report.accepted = Long.parseLong(properties.getProperty("accepted", "0"));
+            report.deduped = Long.parseLong(properties.getProperty("deduped", "0"));
+            report.updated = Long.parseLong(properties.getProperty("updated", "0"));
+            report.rejected = Long.parseLong(properties.getProperty("rejected", "0"));
+            report.resumedFrom = report.offset;
+            log.info("Resuming bulk import from checkpoint offset {}", report.offset);
+        }
+        return report;
+    }
+    
+    private static void writeCheckpoint(Path checkpointFile, Report report) {
+        if (checkpointFile == null) {
+            return;
+        }
+        Properties properties = new Properties();
+        properties.setProperty("offset", Long.toString(report.offset));
+        properties.setProperty("records", Long.toString(report.records));
+        properties.setProperty("accepted", Long.toString(report.accepted));
+        properties.setProperty("deduped", Long.toString(report.deduped));
+        properties.setProperty("updated", Long.toString(report.updated));
+        properties.setProperty("rejected", Long.toString(report.rejected));
+        try {
+            Path tmp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                properties.store(out, "bulk import checkpoint");
+            }
+            Files.move(tmp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write checkpoint " + checkpointFile, e);
+        }
+    }
+    
+    /**
+     * Buffers records into batches and applies each batch in one transaction.
+     */
+    private final class Loader {
+        private final TransactionTemplate transactionTemplate;
+        private final Path checkpointFile;
+        private final Report report;
+        private final List<EventRequest> batch = new ArrayList<>();
+        private long batchEndOffset;
+        
+        private Loader(TransactionTemplate transactionTemplate, Path checkpointFile, Report report) {
+            this.transactionTemplate = transactionTemplate;
+            this.checkpointFile = checkpointFile;
+            this.report = report;
+        }
+        
+        void add(EventRequest request, long endOffset) {
+            batch.add(request);
+            batchEndOffset = endOffset;
+            if (batch.size() >= batchSize) {
+                flush();
+            }
+        }
+        
+        void flush() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            BatchCounts counts = transactionTemplate.execute(status -> applyBatch(batch));
+            report.add(counts, batch.size());
+            report.offset = batchEndOffset;
+            writeCheckpoint(checkpointFile, report);
+            batch.clear();
+            logProgress();
+        }
+        
+        void advanceTo(long offset) {
+            if (report.offset < offset) {
+                report.offset = offset;
+                writeCheckpoint(checkpointFile, report);
+            }
+        }
+        
+        private void logProgress() {
+            long now = System.nanoTime();
+            if (now - report.lastProgressNanos >= progressInterval.toNanos()) {
+                report.lastProgressNanos = now;
+                log.info("Bulk import progress: {}", report.summary());
+            }
+        }
+    }
+    
+    private BatchCounts applyBatch(List<EventRequest> requests) {
+        BatchCounts counts = new BatchCounts();
+        List<Event> valid = new ArrayList<>(requests.size());
+        for (EventRequest request : requests) {
+            String reason = request == null ? MALFORMED_RECORD : eventValidator.validate(request);
+            if (reason != null) {
+                counts.reject(reason);
+                continue;
+            }
+            Instant receivedTime = request.getReceivedTime() != null ? request.getReceivedTime() : Instant.now();
+            valid.add(new Event(request.getEventId(), request.getEventTime(), receivedTime, request.getMachineId(),
+                    factoryRegistry.resolve(request.getMachineId(), request.getFactoryId()),
+                    request.getDurationMs(), request.getDefectCount()));
+        }
+        
+        Set<String> ids = new HashSet<>();
+        valid.forEach(event -> ids.add(event.getEventId()));
+        Map<String, Event> current = eventStore.findByEventIds(ids);
+        
+        // Same decision sequence as EventService, applied in file order
+        Map<String, Event> inserts = new LinkedHashMap<>();
+        Map<String, Event> updates = new LinkedHashMap<>();
+        Map<String, Event> replacedVersions = new HashMap<>();
+        for (Event event : valid) {
+            Event stored = current.get(event.getEventId());
+            if (stored == null) {
+                current.put(event.getEventId(), event);
+                inserts.put(event.getEventId(), event);
+                counts.accepted++;
+            } else if (event.hasSamePayloadAs(stored) || !event.isNewerThan(stored)) {
+                counts.deduped++;
+            } else {
+                current.put(event.getEventId(), event);
+                if (inserts.containsKey(event.getEventId())) {
+                    inserts.put(event.getEventId(), event);
+                } else {
+                    updates.put(event.getEventId(), event);
+                    replacedVersions.putIfAbsent(event.getEventId(), stored);
+                }
+                counts.updated++;
+            }
+        }
+        
+        eventStore.insertAll(new ArrayList<>(inserts.values()));
+        List<Event> updateList = new ArrayList<>(updates.values());
+        boolean[] applied = eventStore.updateIfNewer(updateList);
+        List<Event> written = new ArrayList<>(inserts.values());
+        List<Event> replaced = new ArrayList<>();
+        for (int i = 0; i < updateList.size(); i++) {
+            recentEventCache.invalidate(updateList.get(i).getEventId());
+            if (applied[i]) {
+                written.add(updateList.get(i));
+                replaced.add(replacedVersions.get(updateList.get(i).getEventId()));
+            } else {
+                // Live ingest stored a newer version in the meantime
+                counts.updated--;
+                counts.deduped++;
+            }
+        }
+        if (!written.isEmpty()) {
+            eventPublisher.publishEvent(new EventsWrittenEvent(written, replaced));
+        }
+        return counts;
+    }
+    
+    private static final class ParsedChunk {
+        private final List<EventRequest> requests = new ArrayList<>();
+        private long[] endOffsets = new long[64];
+        
+        void add(EventRequest request, long endOffset) {
+            if (requests.size() == endOffsets.length) {
+                endOffsets = Arrays.copyOf(endOffsets, endOffsets.length * 2);
+            }
+            endOffsets[requests.size()] = endOffset;
+            requests.add(request);
+        }
+    }
+    
+    private static final class BatchCounts {
+        private int accepted;
+        private int deduped;
+        private int updated;
+        private int rejected;
+        private final Map<String, Integer> rejectionReasons = new HashMap<>();
+        
+        void reject(String reason) {
+            rejected++;
+            rejectionReasons.merge(reason, 1, Integer::sum);
+        }
+    }
+    
+    /**
+     * Sequential view of a file through successive read-only mappings.
+     */
+    private final class MappedInputStream extends InputStream {
+        private final FileChannel channel;
+        private final long size;
+        private long mappedUpTo;
+        private MappedByteBuffer current;
+        
+        private MappedInputStream(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+        }
+        
+        private boolean ensureMapped() throws IOException {
+            if (current != null && current.hasRemaining()) {
+                return true;
+            }
+            if (mappedUpTo >= size) {
+                return false;
+            }
+            long length = Math.min(Math.min(chunkBytes, Integer.MAX_VALUE - 8), size - mappedUpTo);
+            current = channel.map(FileChannel.MapMode.READ_ONLY, mappedUpTo, length);
+            mappedUpTo += length;
+            return true;
+        }
+        
+        @Override
+        public int read() throws IOException {
+            return ensureMapped() ? current.get() & 0xff : -1;
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!ensureMapped()) {
+                return -1;
+            }
+            int n = Math.min(len, current.remaining());
+            current.get(b, off, n);
+            return n;
+        }
+    }
+    
+    /**
+     * Cumulative progress of an import, including batches committed by
+     * earlier runs that this one resumed from.
+     */
+    public static class Report {
+        private long offset;
+        private long resumedFrom;
+        private long totalBytes;
+        private long records;
+        private long accepted;
+        private long deduped;
+        private long updated;
+        private long rejected;
+        private long recordsThisRun;
+        private final Map<String, Long> rejectionReasons = new TreeMap<>();
+        private long startNanos;
+        private long lastProgressNanos;
+        
+        void add(BatchCounts counts, int batchRecords) {
+            records += batchRecords;
+            recordsThisRun += batchRecords;
+            accepted += counts.accepted;
+            deduped += counts.deduped;
+            updated += counts.updated;
+            rejected += counts.rejected;
+            counts.rejectionReasons.forEach((reason, count) -> rejectionReasons.merge(reason, (long) count, Long::sum));
+        }
+        
+        public String summary() {
+            double seconds = Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+            return String.format("records=%d accepted=%d deduped=%d updated=%d rejected=%d %s " +
+                            "position=%d/%d rate=%.0f records/s",
+                    records, accepted, deduped, updated, rejected, rejectionReasons,
+                    offset, totalBytes, recordsThisRun / seconds);
+        }
+        
+        public long getOffset() {
+            return offset;
+        }
+        
+        public long getResumedFrom() {
+            return resumedFrom;
+        }
+        
+        public long getRecords() {
+            return records;
+        }
+        
+        public long getRecordsThisRun() {
+            return recordsThisRun;
+        }
+        
+        public long getAccepted() {
+            return accepted;
+        }
+        
+        public long getDeduped() {
+            return deduped;
+        }
+        
+        public long getUpdated() {
+            return updated;
+        }
+        
+        public long getRejected() {
+            return rejected;
+        }
+        
+        public Map<String, Long> getRejectionReasons() {
+            return rejectionReasons;
+        }
+    }
+}
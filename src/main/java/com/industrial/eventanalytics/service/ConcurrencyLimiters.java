@@ -0,0 +1,103 @@
+package com.industrial.eventanalytics.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
+
+/**
+ * Separate adaptive concurrency budgets for ingest and stats queries, so an
+ * ingest storm cannot starve dashboards and heavy reports cannot starve
+ * ingest.
+ */
+@Component
+public class ConcurrencyLimiters {
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${limiter.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${limiter.retry-after:PT1S}")
+    private Duration retryAfter;
+    
+    @Value("${limiter.ingest.initial:20}")
+    private int ingestInitial;
+    
+    @Value("${limiter.ingest.min:4}")
+    private int ingestMin;
+    
+    @Value("${limiter.ingest.max:200}")
+    private int ingestMax;
+    
+    @Value("${limiter.ingest.latency-target:PT1S}")
+    private Duration ingestLatencyTarget;
+    
+    @Value("${limiter.stats.initial:20}")
+    private int statsInitial;
+    
+    @Value("${limiter.stats.min:2}")
+    private int statsMin;
+    
+    @Value("${limiter.stats.max:100}")
+    private int statsMax;
+    
+    @Value("${limiter.stats.latency-target:PT0.5S}")
+    private Duration statsLatencyTarget;
+    
+    @Value("${limiter.backoff-ratio:0.9}")
+    private double backoffRatio;
+    
+    private AdaptiveConcurrencyLimiter ingest;
+    private AdaptiveConcurrencyLimiter stats;
+    private Counter ingestRejected;
+    private Counter statsRejected;
+    
+    @PostConstruct
+    void init() {
+        ingest = new AdaptiveConcurrencyLimiter("ingest", ingestInitial, ingestMin, ingestMax,
+                ingestLatencyTarget.toNanos(), backoffRatio);
+        stats = new AdaptiveConcurrencyLimiter("stats", statsInitial, statsMin, statsMax,
+                statsLatencyTarget.toNanos(), backoffRatio);
+        ingestRejected = register(ingest);
+        statsRejected = register(stats);
+    }
+    
+    private Counter register(AdaptiveConcurrencyLimiter limiter) {
+        Gauge.builder("concurrency.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+                .tag("pool", limiter.getName())
+                .register(meterRegistry);
+        Gauge.builder("concurrency.inflight", limiter, AdaptiveConcurrencyLimiter::getInFlight)
+                .tag("pool", limiter.getName())
+                .register(meterRegistry);
+        return Counter.builder("concurrency.rejected")
+                .tag("pool", limiter.getName())
+                .register(meterRegistry);
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public AdaptiveConcurrencyLimiter ingest() {
+        return ingest;
+    }
+    
+    public AdaptiveConcurrencyLimiter stats() {
+        return stats;
+    }
+    
+    public void recordRejected(AdaptiveConcurrencyLimiter limiter) {
+        (limiter == ingest ? ingestRejected : statsRejected).increment();
+    }
+    
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,422 @@
+package com.industrial.eventanalytics.service;
+
+import com.industrial.eventanalytics.model.Event;
+import com.industrial.eventanalytics.sketch.CountMinSketch;
+import com.industrial.eventanalytics.sketch.SpaceSavingSummary;
+import com.industrial.eventanalytics.tiering.ColdStorage;
+import com.industrial.eventanalytics.tiering.Segment;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Per-bucket heavy-hitter summaries of known defects per machine, fleet-wide
+ * and per factory, backing approximate top-defect-lines rankings. Each
+ * bucket of {@code stats.approximate.bucket} holds a Space-Saving summary of
+ * defects plus Count-Min sketches of defects and known-defect events, so a
+ * ranking costs the same however many events the window holds.
+ * <p>
+ * Updated after commit from {@link EventsWrittenEvent}: new versions are
+ * added and the versions they replaced subtracted. Built at startup from the
+ * events table and the cold segments, and never lazily initialised, since a
+ * build triggered by the first write would count that write twice.
+ * <p>
+ * Buckets are kept back to the raw retention horizon, so a long window is
+ * never scanned from the table beyond its ragged edges. Buckets older than
+ * {@code stats.approximate.rollup-after} are merged into buckets of
+ * {@code stats.approximate.coarse-bucket} to bound their number. Buckets
+ * past the horizon are dropped rather than purged by
+ * {@link RetentionPurgedEvent}, which tiering also publishes for rows it
+ * keeps.
+ */
+@Component
+@Lazy(false)
+@DependsOn("entityManagerFactory")
+public class DefectSketches {
+    
+    private static final Logger log = LoggerFactory.getLogger(DefectSketches.class);
+    
+    private static final String REBUILD_SQL =
+            "SELECT b.bucket, b.machine_id, b.factory_id, SUM(b.defect_count), COUNT(*) FROM ("
+            + "SELECT FLOOR(DATEDIFF('SECOND', ?, event_time) / ?) AS bucket, machine_id, factory_id, defect_count "
+            + "FROM events WHERE event_time >= ? AND defect_count <> -1) b "
+            + "GROUP BY b.bucket, b.machine_id, b.factory_id";
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Autowired
+    private ColdStorage coldStorage;
+    
+    @Autowired
+    private RetentionService retentionService;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${stats.approximate.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${stats.approximate.bucket:PT1H}")
+    private Duration bucket;
+    
+    @Value("${stats.approximate.capacity:256}")
+    private int capacity;
+    
+    @Value("${stats.approximate.count-min.width:64}")
+    private int countMinWidth;
+    
+    @Value("${stats.approximate.count-min.depth:3}")
+    private int countMinDepth;
+    
+    @Value("${stats.approximate.coarse-bucket:P1D}")
+    private Duration coarseBucket;
+    
+    @Value("${stats.approximate.rollup-after:P30D}")
+    private Duration rollupAfter;
+    
+    private long bucketSeconds;
+    private long coarseSeconds;
+    
+    /** Buckets by start, in epoch seconds: coarse before {@link #rolledUpTo}, fine from there on. */
+    private final ConcurrentSkipListMap<Long, Bucket> buckets = new ConcurrentSkipListMap<>();
+    
+    /** Held for reading while buckets are looked up or updated, for writing while they are rolled up. */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    private volatile long rolledUpTo = Long.MIN_VALUE;
+    
+    @PostConstruct
+    void init() {
+        if (!enabled) {
+            return;
+        }
+        bucketSeconds = bucket.getSeconds();
+        if (bucketSeconds < 1 || bucket.getNano() != 0) {
+            throw new IllegalStateException("stats.approximate.bucket must be a whole number of seconds");
+        }
+        coarseSeconds = coarseBucket.getSeconds();
+        if (coarseBucket.getNano() != 0 || coarseSeconds < bucketSeconds || coarseSeconds % bucketSeconds != 0) {
+            throw new IllegalStateException("stats.approximate.coarse-bucket must be a whole multiple of stats.approximate.bucket");
+        }
+        rebuild();
+        Gauge.builder("stats.approximate.buckets", buckets, Map::size)
+                .description("Time buckets holding defect summaries")
+                .register(meterRegistry);
+    }
+    
+    /**
+     * Rebuilds every bucket from the stored events, e.g. after rows were
+     * changed outside the ingest path. Writes committed meanwhile may be
+     * counted twice or missed, so run it while ingest is quiet.
+     */
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            buckets.clear();
+            rolledUpTo = rollupBoundary();
+            long oldest = oldestStart();
+            long oldestMicros = oldest * 1_000_000L;
+            OffsetDateTime since = OffsetDateTime.ofInstant(Instant.ofEpochSecond(oldest), ZoneOffset.UTC);
+            jdbcTemplate.query(REBUILD_SQL, (RowCallbackHandler) rs ->
+                    bucketAt(bucketStart(oldest + rs.getLong(1) * bucketSeconds))
+                            .add(rs.getString(2), rs.getString(3), rs.getLong(4), rs.getLong(5)),
+                    since, bucketSeconds, since);
+            for (Segment segment : coldStorage.getSegments()) {
+                if (segment.getMaxMicros() >= oldestMicros) {
+                    segment.forEachKnownRow((machineId, factoryId, micros, defectCount) -> {
+                        if (micros >= oldestMicros) {
+                            bucketAt(bucketStart(Math.floorDiv(micros, 1_000_000L))).add(machineId, factoryId, defectCount, 1);
+                        }
+                    });
+                }
+            }
+            log.info("Built defect summaries for {} buckets since {}", buckets.size(), Instant.ofEpochSecond(oldest));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEventsWritten(EventsWrittenEvent written) {
+        if (!enabled) {
+            return;
+        }
+        prune();
+        lock.readLock().lock();
+        try {
+            long oldest = oldestStart();
+            for (Event event : written.getReplaced()) {
+                apply(event, -1, oldest);
+            }
+            for (Event event : written.getEvents()) {
+                apply(event, 1, oldest);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private void apply(Event event, int sign, long oldest) {
+        if (event.getDefectCount() == -1) {
+            return;
+        }
+        long start = bucketStart(event.getEventTime().getEpochSecond());
+        if (start < oldest) {
+            return;
+        }
+        Bucket target = sign > 0 ? bucketAt(start) : buckets.get(start);
+        if (target != null) {
+            target.add(event.getMachineId(), event.getFactoryId(), sign * (long) event.getDefectCount(), sign);
+        }
+    }
+    
+    /**
+     * The buckets lying entirely within {@code from <= eventTime <= to}, or
+     * null when no bucket fits, in which case the window should be answered
+     * exactly. What is left at either end is shorter than the bucket
+     * containing it, and at the old end also covers events between the
+     * retention horizon and the first bucket kept.
+     */
+    public Window cover(Instant from, Instant to) {
+        if (!enabled) {
+            return null;
+        }
+        prune();
+        lock.readLock().lock();
+        try {
+            long first = Math.max(oldestStart(), bucketStartAtOrAfter(from));
+            // a bucket [s, e) is covered when its last microsecond is at most to
+            long end = bucketStart(to.plusNanos(1_000).getEpochSecond());
+            return first < end ? new Window(first, end, new ArrayList<>(buckets.subMap(first, end).values())) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /** Rolls up buckets that have aged past the fine granularity and drops those past the horizon. */
+    private void prune() {
+        long boundary = rollupBoundary();
+        if (boundary > rolledUpTo) {
+            rollUp(boundary);
+        }
+        buckets.headMap(oldestStart()).clear();
+    }
+    
+    /**
+     * Merges the fine buckets before {@code boundary} into coarse ones. Runs
+     * under the write lock, so no update lands in a fine bucket after it has
+     * been merged.
+     */
+    private void rollUp(long boundary) {
+        lock.writeLock().lock();
+        try {
+            long from = rolledUpTo;
+            if (boundary <= from) {
+                return;
+            }
+            // everything from the previous boundary on is still fine-grained
+            Map.Entry<Long, Bucket> next;
+            while ((next = buckets.ceilingEntry(from)) != null && next.getKey() < boundary) {
+                long start = Math.floorDiv(next.getKey(), coarseSeconds) * coarseSeconds;
+                Map<Long, Bucket> fine = buckets.subMap(start, start + coarseSeconds);
+                Bucket coarse = new Bucket();
+                for (Bucket b : fine.values()) {
+                    coarse.merge(b);
+                }
+                fine.clear();
+                buckets.put(start, coarse);
+                from = start + coarseSeconds;
+            }
+            rolledUpTo = boundary;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    private long rollupBoundary() {
+        long second = Instant.now().minus(rollupAfter).getEpochSecond();
+        return Math.floorDiv(second, coarseSeconds) * coarseSeconds;
+    }
+    
+    /** Start of the oldest bucket kept: the first at or after the raw retention horizon. */
+    private long oldestStart() {
+        Instant horizon = retentionService.getRawHorizon();
+        return bucketStartAtOrAfter(horizon == null ? Instant.EPOCH : horizon);
+    }
+    
+    /** Start of the bucket holding {@code epochSecond}, coarse before {@link #rolledUpTo}. */
+    private long bucketStart(long epochSecond) {
+        long size = epochSecond < rolledUpTo ? coarseSeconds : bucketSeconds;
+        return Math.floorDiv(epochSecond, size) * size;
+    }
+    
+    private long bucketStartAtOrAfter(Instant instant) {
+        long second = instant.getEpochSecond() + (instant.getNano() > 0 ? 1 : 0);
+        long start = bucketStart(second);
+        if (start == second) {
+            return start;
+        }
+        return start + (start < rolledUpTo ? coarseSeconds : bucketSeconds);
+    }
+    
+    private Bucket bucketAt(long start) {
+        return buckets.computeIfAbsent(start, s -> new Bucket());
+    }
+    
+    /**
+     * Whole buckets {@code [coveredStart, coveredEnd)} of a ranking window,
+     * as they were when it was covered.
+     */
+    public final class Window {
+        private final long first;
+        private final long end;
+        private final List<Bucket> covered;
+        
+        private Window(long first, long end, List<Bucket> covered) {
+            this.first = first;
+            this.end = end;
+            this.covered = covered;
+        }
+        
+        public Instant getCoveredStart() {
+            return Instant.ofEpochSecond(first);
+        }
+        
+        public Instant getCoveredEnd() {
+            return Instant.ofEpochSecond(end);
+        }
+        
+        /**
+         * Merges the buckets for one factory, or the fleet when
+         * {@code factoryId} is null, into per-machine
+         * {@code {lower bound, estimate, upper bound, events}} of known
+         * defects and known-defect events. Covers the machines monitored in
+         * any bucket plus {@code alsoMachines}; any other machine has at most
+         * the summed floors.
+         */
+        public Map<String, long[]> lines(String factoryId, Collection<String> alsoMachines) {
+            Set<String> machineIds = new HashSet<>(alsoMachines);
+            for (Bucket b : covered) {
+                b.collectMachines(factoryId, machineIds);
+            }
+            Map<String, long[]> lines = new HashMap<>();
+            for (String machineId : machineIds) {
+                lines.put(machineId, new long[4]);
+            }
+            for (Bucket b : covered) {
+                b.addBounds(factoryId, lines);
+            }
+            return lines;
+        }
+    }
+    
+    private final class Bucket {
+        private final Summary fleet = new Summary();
+        private final Map<String, Summary> factories = new HashMap<>();
+        
+        synchronized void add(String machineId, String factoryId, long defects, long events) {
+            fleet.add(machineId, defects, events);
+            if (factoryId != null) {
+                Summary factory = factories.get(factoryId);
+                if (factory == null) {
+                    if (events < 0) {
+                        return;
+                    }
+                    factory = new Summary();
+                    factories.put(factoryId, factory);
+                }
+                factory.add(machineId, defects, events);
+            }
+        }
+        
+        synchronized void merge(Bucket other) {
+            synchronized (other) {
+                fleet.merge(other.fleet);
+                for (Map.Entry<String, Summary> factory : other.factories.entrySet()) {
+                    factories.computeIfAbsent(factory.getKey(), id -> new Summary()).merge(factory.getValue());
+                }
+            }
+        }
+        
+        synchronized void collectMachines(String factoryId, Set<String> machineIds) {
+            Summary summary = summary(factoryId);
+            if (summary != null) {
+                machineIds.addAll(summary.defects.getCounters().keySet());
+            }
+        }
+        
+        synchronized void addBounds(String factoryId, Map<String, long[]> lines) {
+            Summary summary = summary(factoryId);
+            if (summary == null) {
+                return;
+            }
+            for (Map.Entry<String, long[]> line : lines.entrySet()) {
+                long[] bounds = line.getValue();
+                long[] counter = summary.defects.getCounters().get(line.getKey());
+                // both the counter and the Count-Min estimate never undercount
+                long upper = summary.defectCounts.estimate(line.getKey());
+                if (counter != null) {
+                    upper = Math.min(upper, counter[0]);
+                    bounds[0] += Math.max(0, counter[0] - counter[1]);
+                    bounds[1] += upper;
+                } else {
+                    upper = Math.min(upper, summary.defects.getFloor());
+                }
+                bounds[2] += upper;
+                bounds[3] += summary.eventCounts.estimate(line.getKey());
+            }
+        }
+        
+        private Summary summary(String factoryId) {
+            return factoryId == null ? fleet : factories.get(factoryId);
+        }
+    }
+    
+    private final class Summary {
+        private final SpaceSavingSummary defects = new SpaceSavingSummary(capacity);
+        private final CountMinSketch defectCounts = new CountMinSketch(countMinDepth, countMinWidth);
+        private final CountMinSketch eventCounts = new CountMinSketch(countMinDepth, countMinWidth);
+        
+        void add(String machineId, long defects, long events) {
+            this.defects.add(machineId, defects);
+            defectCounts.add(machineId, defects);
+            eventCounts.add(machineId, events);
+        }
+        
+        void merge(Summary other) {
+            defects.merge(other.defects);
+            defectCounts.merge(other.defectCounts);
+            eventCounts.merge(other.eventCounts);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.industrial.eventanalytics.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process locks on individual eventIds, held from the lookup until the
+ * surrounding transaction completes. Batches of this instance that share
+ * an eventId are serialized instead of racing to insert the same row and
+ * rolling back on the unique constraint. Other instances are still covered
+ * by the constraint and the batch retry in {@link EventService}.
+ */
+@Component
+public class EventIdLocks {
+    
+    @Value("${ingest.lock-timeout:PT10S}")
+    private Duration lockTimeout;
+    
+    private final ConcurrentHashMap<String, Holder> held = new ConcurrentHashMap<>();
+    
+    /**
+     * Locks the given eventIds for the current transaction. Ids are taken in
+     * sorted order, so callers locking disjoint-ordered sets cannot deadlock;
+     * a caller that still waits longer than {@code ingest.lock-timeout} (e.g.
+     * several batches sharing one group-commit transaction) gets a
+     * {@link CannotAcquireLockException}.
+     */
+    public void lockForTransaction(Collection<String> eventIds) {
+        List<String> sorted = new ArrayList<>(eventIds);
+        sorted.sort(null);
+        List<String> acquired = new ArrayList<>(sorted.size());
+        long deadline = System.nanoTime() + lockTimeout.toNanos();
+        
+        try {
+            for (String eventId : sorted) {
+                acquire(eventId, deadline);
+                acquired.add(eventId);
+            }
+        } catch (RuntimeException e) {
+            release(acquired);
+            throw e;
+        }
+        
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    release(acquired);
+                }
+            });
+        } else {
+            release(acquired);
+        }
+    }
+    
+    private void acquire(String eventId, long deadline) {
+        Thread current = Thread.currentThread();
+        while (true) {
+            Holder existing = held.putIfAbsent(eventId, new Holder(current));
+            if (existing == null) {
+                return;
+            }
+            if (existing.owner == current) {
+                existing.holds++;
+                return;
+            }
+            try {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || !existing.released.await(remaining, TimeUnit.NANOSECONDS)) {
+                    throw new CannotAcquireLockException("Timed out waiting for eventId " + eventId);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CannotAcquireLockException("Interrupted waiting for eventId " + eventId, e);
+            }
+        }
+    }
+    
+    private void release(List<String> eventIds) {
+        for (String eventId : eventIds) {
+            Holder holder = held.get(eventId);
+            if (holder != null && --holder.holds == 0) {
+                held.remove(eventId);
+                holder.released.countDown();
+            }
+        }
+    }
+    
+    /**
+     * Only the owning thread touches {@code holds}.
+     */
+    private static final class Holder {
+        private final Thread owner;
+        private final CountDownLatch released = new CountDownLatch(1);
+        private int holds = 1;
+        
+        private Holder(Thread owner) {
+            this.owner = owner;
+        }
+    }
+}
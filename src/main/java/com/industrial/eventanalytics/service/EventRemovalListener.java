@@ -0,0 +1,23 @@
+package com.industrial.eventanalytics.service;
+
+import com.industrial.eventanalytics.model.Event;
+import jakarta.persistence.PostRemove;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * JPA callback keeping {@link RecentEventCache} from answering for events
+ * removed through the entity manager. Bulk JPQL deletes bypass entity
+ * callbacks and invalidate the cache themselves.
+ */
+@Component
+public class EventRemovalListener {
+    
+    @Autowired
+    private RecentEventCache recentEventCache;
+    
+    @PostRemove
+    public void onRemove(Event event) {
+        recentEventCache.invalidate(event.getEventId());
+    }
+}
@@ -1,115 +1,230 @@
 package com.industrial.eventanalytics.service;
 
+import com.industrial.eventanalytics.diagnostics.BatchIngestEvent;
+import com.industrial.eventanalytics.diagnostics.IngestStageEvent;
 import com.industrial.eventanalytics.dto.BatchResponse;
 import com.industrial.eventanalytics.dto.EventRequest;
 import com.industrial.eventanalytics.model.Event;
-import com.industrial.eventanalytics.repository.EventRepository;
+import com.industrial.eventanalytics.repository.EventStore;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
 
 @Service
 public class EventService {
     
     @Autowired
-    private EventRepository eventRepository;
+    private EventStore eventStore;
     
-    private static final long MAX_DURATION_MS = 6 * 60 * 60 * 1000L;
-    private static final long FUTURE_TOLERANCE_MS = 15 * 60 * 1000L;
+    @Autowired
+    private FactoryRegistry factoryRegistry;
+    
+    @Autowired
+    private EventValidator eventValidator;
+    
+    @Autowired
+    private FactoryMetrics factoryMetrics;
+    
+    @Autowired
+    private RecentEventCache recentEventCache;
+    
+    @Autowired
+    private EventIdLocks eventIdLocks;
     
-    private final ConcurrentHashMap<String, Event> batchCache = new ConcurrentHashMap<>();
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
     
-    @Transactional
+    @Value("${ingest.conflict-retries:10}")
+    private int conflictRetries;
+    
+    /**
+     * Applies a batch in one transaction. When a concurrent batch inserts or
+     * locks the same eventId first, the whole batch is rolled back and run
+     * again, so its decisions are made against the other batch's committed
+     * row. Inside a caller's transaction the conflict is left to the caller.
+     */
     public BatchResponse processBatchEvents(List<EventRequest> eventRequests) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> ingest(eventRequests));
+            } catch (DataIntegrityViolationException | ConcurrencyFailureException e) {
+                if (attempt >= conflictRetries || TransactionSynchronizationManager.isActualTransactionActive()) {
+                    throw e;
+                }
+                backOff(attempt);
+            }
+        }
+    }
+    
+    private static void backOff(int attempt) {
+        // Jittered, so batches that collided once do not collide again on retry
+        long maxMillis = Math.min(50, 2L << attempt);
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(1, maxMillis + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while retrying batch", e);
+        }
+    }
+    
+    private BatchResponse ingest(List<EventRequest> eventRequests) {
         int accepted = 0;
         int deduped = 0;
         int updated = 0;
         int rejected = 0;
         List<BatchResponse.RejectionDetail> rejections = new ArrayList<>();
         
-        batchCache.clear();
+        BatchIngestEvent batchEvent = new BatchIngestEvent();
+        batchEvent.begin();
         
+        // Validated in request order, so rejections are reported in the caller's order
+        List<Event> valid = new ArrayList<>(eventRequests.size());
+        Map<String, Integer> occurrences = new HashMap<>();
         for (EventRequest request : eventRequests) {
             try {
-                String validationError = validateEvent(request);
+                IngestStageEvent validationStage = new IngestStageEvent();
+                validationStage.begin();
+                String validationError = eventValidator.validate(request);
+                IngestStageEvent.end(validationStage, IngestStageEvent.VALIDATION, request.getEventId());
                 if (validationError != null) {
                     rejected++;
                     rejections.add(new BatchResponse.RejectionDetail(request.getEventId(), validationError));
+                    factoryMetrics.recordIngest(request.getFactoryId(), "rejected");
                     continue;
                 }
                 
                 Instant requestReceivedTime = request.getReceivedTime() != null ? request.getReceivedTime() : Instant.now();
-                Event newEvent = convertToEvent(request, requestReceivedTime);
-                
-                Optional<Event> existingEventOpt = eventRepository.findByEventId(request.getEventId());
-                
-                if (existingEventOpt.isPresent()) {
-                    Event existingEvent = existingEventOpt.get();
-                    
-                    if (isPayloadIdentical(newEvent, existingEvent)) {
-                        deduped++;
-                        continue;
-                    }
-                    
-                    if (requestReceivedTime.isAfter(existingEvent.getReceivedTime())) {
-                        existingEvent.setEventTime(newEvent.getEventTime());
-                        existingEvent.setReceivedTime(requestReceivedTime);
-                        existingEvent.setMachineId(newEvent.getMachineId());
-                        existingEvent.setDurationMs(newEvent.getDurationMs());
-                        existingEvent.setDefectCount(newEvent.getDefectCount());
-                        eventRepository.save(existingEvent);
-                        updated++;
-                    } else {
-                        deduped++;
-                    }
-                } else {
-                    eventRepository.save(newEvent);
-                    accepted++;
-                }
-                
+                valid.add(convertToEvent(request, requestReceivedTime));
+                occurrences.merge(request.getEventId(), 1, Integer::sum);
             } catch (Exception e) {
                 rejected++;
                 rejections.add(new BatchResponse.RejectionDetail(request.getEventId(), "PROCESSING_ERROR: " + e.getMessage()));
+                factoryMetrics.recordIngest(request.getFactoryId(), "rejected");
             }
         }
         
-        return new BatchResponse(accepted, deduped, updated, rejected, rejections);
-    }
-    
-    private String validateEvent(EventRequest request) {
-        if (request.getEventId() == null || request.getEventId().trim().isEmpty()) {
-            return "MISSING_EVENT_ID";
-        }
-        if (request.getEventTime() == null) {
-            return "MISSING_EVENT_TIME";
-        }
-        if (request.getMachineId() == null || request.getMachineId().trim().isEmpty()) {
-            return "MISSING_MACHINE_ID";
+        // Rows are written in eventId order, so concurrent batches cannot deadlock on each other;
+        // the sort is stable, so repeats of one eventId are still applied in request order
+        valid.sort(Comparator.comparing(Event::getEventId));
+        
+        // Retries and stale corrections of recently written events are settled without a lookup.
+        // Only for eventIds that occur once: repeats must be compared with each other in order.
+        List<Event> pending = new ArrayList<>(valid.size());
+        for (Event event : valid) {
+            RecentEventCache.Entry cached = occurrences.get(event.getEventId()) == 1
+                    ? recentEventCache.get(event.getEventId()) : null;
+            if (cached != null && (cached.matches(event) || !event.getReceivedTime().isAfter(cached.getReceivedTime()))) {
+                deduped++;
+                factoryMetrics.recordIngest(event.getFactoryId(), "deduped");
+            } else {
+                pending.add(event);
+            }
         }
-        if (request.getDurationMs() == null) {
-            return "MISSING_DURATION";
+        
+        IngestStageEvent lookupStage = new IngestStageEvent();
+        lookupStage.begin();
+        Map<String, Event> current = new HashMap<>();
+        if (!pending.isEmpty()) {
+            Set<String> pendingIds = pending.stream().map(Event::getEventId).collect(Collectors.toSet());
+            eventIdLocks.lockForTransaction(pendingIds);
+            current.putAll(eventStore.findByEventIds(pendingIds));
         }
-        if (request.getDefectCount() == null) {
-            return "MISSING_DEFECT_COUNT";
+        IngestStageEvent.end(lookupStage, IngestStageEvent.LOOKUP, null);
+        
+        Map<String, Event> inserts = new LinkedHashMap<>();
+        Map<String, Event> updates = new LinkedHashMap<>();
+        Map<String, Integer> updatesPerEventId = new HashMap<>();
+        Map<String, Event> replacedVersions = new HashMap<>();
+        for (Event event : pending) {
+            Event stored = current.get(event.getEventId());
+            if (stored == null) {
+                current.put(event.getEventId(), event);
+                inserts.put(event.getEventId(), event);
+                accepted++;
+                factoryMetrics.recordIngest(event.getFactoryId(), "accepted");
+            } else if (event.hasSamePayloadAs(stored) || !event.isNewerThan(stored)) {
+                deduped++;
+                factoryMetrics.recordIngest(event.getFactoryId(), "deduped");
+            } else {
+                current.put(event.getEventId(), event);
+                if (inserts.containsKey(event.getEventId())) {
+                    inserts.put(event.getEventId(), event);
+                    factoryMetrics.recordIngest(event.getFactoryId(), "updated");
+                } else {
+                    // Counted once the conditional update has run
+                    updates.put(event.getEventId(), event);
+                    replacedVersions.putIfAbsent(event.getEventId(), stored);
+                    updatesPerEventId.merge(event.getEventId(), 1, Integer::sum);
+                }
+                updated++;
+            }
         }
         
-        if (request.getDurationMs() < 0 || request.getDurationMs() > MAX_DURATION_MS) {
-            return "INVALID_DURATION";
+        IngestStageEvent persistStage = new IngestStageEvent();
+        persistStage.begin();
+        eventStore.insertAll(new ArrayList<>(inserts.values()));
+        List<Event> updateList = new ArrayList<>(updates.values());
+        boolean[] applied = eventStore.updateIfNewer(updateList);
+        IngestStageEvent.end(persistStage, IngestStageEvent.PERSIST, null);
+        
+        List<Event> written = new ArrayList<>(inserts.values());
+        List<Event> replaced = new ArrayList<>();
+        for (int i = 0; i < updateList.size(); i++) {
+            Event event = updateList.get(i);
+            int count = updatesPerEventId.get(event.getEventId());
+            String outcome = "updated";
+            if (applied[i]) {
+                written.add(event);
+                replaced.add(replacedVersions.get(event.getEventId()));
+            } else {
+                // A concurrent batch stored a newer correction after our lookup, so ours are stale
+                current.remove(event.getEventId());
+                recentEventCache.invalidate(event.getEventId());
+                updated -= count;
+                deduped += count;
+                outcome = "deduped";
+            }
+            for (int n = 0; n < count; n++) {
+                factoryMetrics.recordIngest(event.getFactoryId(), outcome);
+            }
+        }
+        current.values().forEach(recentEventCache::record);
+        if (!written.isEmpty()) {
+            eventPublisher.publishEvent(new EventsWrittenEvent(written, replaced));
         }
         
-        Instant now = Instant.now();
-        if (request.getEventTime().isAfter(now.plusMillis(FUTURE_TOLERANCE_MS))) {
-            return "FUTURE_EVENT_TIME";
+        batchEvent.end();
+        if (batchEvent.shouldCommit()) {
+            batchEvent.batchSize = eventRequests.size();
+            batchEvent.accepted = accepted;
+            batchEvent.deduped = deduped;
+            batchEvent.updated = updated;
+            batchEvent.rejected = rejected;
+            batchEvent.commit();
         }
         
-        return null;
+        return new BatchResponse(accepted, deduped, updated, rejected, rejections);
     }
     
     private Event convertToEvent(EventRequest request, Instant receivedTime) {
@@ -118,15 +233,9 @@ public class EventService {
             request.getEventTime(),
             receivedTime,
             request.getMachineId(),
+            factoryRegistry.resolve(request.getMachineId(), request.getFactoryId()),
             request.getDurationMs(),
             request.getDefectCount()
         );
     }
-    
-    private boolean isPayloadIdentical(Event event1, Event event2) {
-        return event1.getEventTime().equals(event2.getEventTime()) &&
-               event1.getMachineId().equals(event2.getMachineId()) &&
-               event1.getDurationMs().equals(event2.getDurationMs()) &&
-               event1.getDefectCount().equals(event2.getDefectCount());
-    }
 }
@@ -0,0 +1,66 @@
+package com.industrial.eventanalytics.service;
+
+import com.industrial.eventanalytics.dto.EventRequest;
+import com.industrial.eventanalytics.tiering.ColdStorage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+
+/**
+ * Validation rules shared by every ingest path (HTTP batches, bulk import),
+ * so all of them reject the same events with the same reasons.
+ */
+@Component
+public class EventValidator {
+    
+    public static final long MAX_DURATION_MS = 6 * 60 * 60 * 1000L;
+    public static final long FUTURE_TOLERANCE_MS = 15 * 60 * 1000L;
+    
+    @Autowired
+    private FactoryRegistry factoryRegistry;
+    
+    @Autowired
+    private ColdStorage coldStorage;
+    
+    /**
+     * Returns the rejection reason for an event, or {@code null} if it is valid.
+     */
+    public String validate(EventRequest request) {
+        if (request.getEventId() == null || request.getEventId().trim().isEmpty()) {
+            return "MISSING_EVENT_ID";
+        }
+        if (request.getEventTime() == null) {
+            return "MISSING_EVENT_TIME";
+        }
+        if (request.getMachineId() == null || request.getMachineId().trim().isEmpty()) {
+            return "MISSING_MACHINE_ID";
+        }
+        if (!request.hasDurationMs()) {
+            return "MISSING_DURATION";
+        }
+        if (!request.hasDefectCount()) {
+            return "MISSING_DEFECT_COUNT";
+        }
+        
+        if (request.getDurationMsValue() < 0 || request.getDurationMsValue() > MAX_DURATION_MS) {
+            return "INVALID_DURATION";
+        }
+        
+        Instant now = Instant.now();
+        if (request.getEventTime().isAfter(now.plusMillis(FUTURE_TOLERANCE_MS))) {
+            return "FUTURE_EVENT_TIME";
+        }
+        
+        if (factoryRegistry.conflicts(request.getMachineId(), request.getFactoryId())) {
+            return "FACTORY_MISMATCH";
+        }
+        
+        // a tiered event can be neither deduplicated nor corrected, so storing it again would count it twice
+        if (coldStorage.containsEventId(request.getEventId())) {
+            return "EVENT_TIERED";
+        }
+        
+        return null;
+    }
+}
@@ -0,0 +1,33 @@
+package com.industrial.eventanalytics.service;
+
+import com.industrial.eventanalytics.model.Event;
+
+import java.util.List;
+
+/**
+ * Published inside the ingest transaction with the versions it inserted or
+ * updated, and the stored versions the updates replaced. Like
+ * {@link RetentionPurgedEvent}, listeners should use
+ * {@code @TransactionalEventListener} so nothing is acted on before commit.
+ */
+public class EventsWrittenEvent {
+    private final List<Event> events;
+    private final List<Event> replaced;
+    
+    public EventsWrittenEvent(List<Event> events) {
+        this(events, List.of());
+    }
+    
+    public EventsWrittenEvent(List<Event> events, List<Event> replaced) {
+        this.events = events;
+        this.replaced = replaced;
+    }
+    
+    public List<Event> getEvents() {
+        return events;
+    }
+    
+    public List<Event> getReplaced() {
+        return replaced;
+    }
+}
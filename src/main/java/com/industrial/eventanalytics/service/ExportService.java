@@ -0,0 +1,408 @@
+package com.industrial.eventanalytics.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.industrial.eventanalytics.tiering.ColdStorage;
+import com.industrial.eventanalytics.tiering.Segment;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Writes raw events and per-machine aggregates for a time window straight
+ * from a forward-only JDBC cursor to an output stream, one row at a time,
+ * so memory use does not depend on the size of the export.
+ * <p>
+ * Events moved to {@link ColdStorage} are merged in: tiered events by event
+ * time from one cursor per segment, tiered aggregates added to the table's.
+ * Segments do not keep receivedTime, so it is empty for tiered events.
+ */
+@Service
+public class ExportService {
+    
+    public enum Format {
+        NDJSON("application/x-ndjson", "ndjson"),
+        CSV("text/csv", "csv");
+        
+        private final String contentType;
+        private final String extension;
+        
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+        
+        public String getContentType() {
+            return contentType;
+        }
+        
+        public String getExtension() {
+            return extension;
+        }
+        
+        public static Format parse(String value) {
+            try {
+                return Format.valueOf(value.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "format must be ndjson or csv");
+            }
+        }
+    }
+    
+    private static final String[] EVENT_COLUMNS =
+            {"eventId", "eventTime", "receivedTime", "machineId", "factoryId", "durationMs", "defectCount"};
+    private static final String[] AGGREGATE_COLUMNS =
+            {"machineId", "factoryId", "eventsCount", "defectsCount", "avgDefectRate", "status"};
+    
+    /** Order of tiered-only aggregate rows: by machineId, then factoryId with none first. */
+    private static final Comparator<List<String>> ENTRY_ORDER = Comparator.<List<String>, String>comparing(key -> key.get(0))
+            .thenComparing(key -> key.get(1), Comparator.nullsFirst(Comparator.naturalOrder()));
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    @Autowired
+    private ColdStorage coldStorage;
+    
+    private final JdbcTemplate cursorTemplate;
+    
+    public ExportService(DataSource dataSource, @Value("${export.fetch-size:1000}") int fetchSize) {
+        this.cursorTemplate = new JdbcTemplate(dataSource);
+        this.cursorTemplate.setFetchSize(fetchSize);
+    }
+    
+    public long exportEvents(OutputStream out, Format format, String machineId, String factoryId,
+                             Instant start, Instant end) throws IOException {
+        checkWindow(start, end);
+        List<Object> args = new ArrayList<>();
+        String sql = "SELECT event_id, event_time, received_time, machine_id, factory_id, duration_ms, defect_count " +
+                "FROM events WHERE event_time >= ? AND event_time < ?" + filters(machineId, factoryId, start, end, args) +
+                " ORDER BY event_time, id";
+        
+        List<Segment.Rows> tiered = coldStorage.rows(machineId, factoryId, start, end);
+        Merge merge = tiered.isEmpty() ? null : new TieredEvents(tiered);
+        return stream(out, format, EVENT_COLUMNS, sql, args, merge, (rs, row) -> {
+            row.text(rs.getString(1));
+            row.text(rs.getObject(2, OffsetDateTime.class).toInstant().toString());
+            row.text(rs.getObject(3, OffsetDateTime.class).toInstant().toString());
+            row.text(rs.getString(4));
+            row.text(rs.getString(5));
+            row.number(rs.getLong(6));
+            row.number(rs.getInt(7));
+        });
+    }
+    
+    /**
+     * One row per machine with the same figures as the stats endpoint;
+     * defect counts of -1 (unknown) are left out of the sums.
+     */
+    public long exportAggregates(OutputStream out, Format format, String factoryId,
+                                 Instant start, Instant end) throws IOException {
+        checkWindow(start, end);
+        List<Object> args = new ArrayList<>();
+        String sql = "SELECT machine_id, factory_id, COUNT(*), " +
+                "COALESCE(SUM(CASE WHEN defect_count <> -1 THEN defect_count ELSE 0 END), 0) " +
+                "FROM events WHERE event_time >= ? AND event_time < ?" + filters(null, factoryId, start, end, args) +
+                " GROUP BY machine_id, factory_id ORDER BY machine_id, factory_id";
+        
+        // tiered totals of machines the table also has are added to their rows, the others come last
+        Map<List<String>, long[]> tiered = new TreeMap<>(ENTRY_ORDER);
+        tiered.putAll(coldStorage.entryTotals(factoryId, start, end));
+        Merge merge = tiered.isEmpty() ? null : new Merge() {
+            @Override
+            public long writeBefore(ResultSet rs, RowWriter row) {
+                return 0;
+            }
+            
+            @Override
+            public long writeRest(RowWriter row) throws IOException {
+                for (Map.Entry<List<String>, long[]> entry : tiered.entrySet()) {
+                    row.begin();
+                    writeAggregate(row, entry.getKey().get(0), entry.getKey().get(1),
+                            entry.getValue()[0], entry.getValue()[1], start, end);
+                    row.end();
+                }
+                return tiered.size();
+            }
+        };
+        return stream(out, format, AGGREGATE_COLUMNS, sql, args, merge, (rs, row) -> {
+            String machineId = rs.getString(1);
+            String rowFactoryId = rs.getString(2);
+            long[] cold = tiered.isEmpty() ? null : tiered.remove(Arrays.asList(machineId, rowFactoryId));
+            writeAggregate(row, machineId, rowFactoryId, rs.getLong(3) + (cold != null ? cold[0] : 0),
+                    rs.getLong(4) + (cold != null ? cold[1] : 0), start, end);
+        });
+    }
+    
+    private static void writeAggregate(RowWriter row, String machineId, String factoryId, long events, long defects,
+                                       Instant start, Instant end) throws IOException {
+        double avgDefectRate = StatsService.calculateAvgDefectRate(defects, start, end);
+        row.text(machineId);
+        row.text(factoryId);
+        row.number(events);
+        row.number(defects);
+        row.decimal(avgDefectRate);
+        row.text(avgDefectRate < 2.0 ? "Healthy" : "Warning");
+    }
+    
+    public void checkWindow(Instant start, Instant end) {
+        if (!end.isAfter(start)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "end must be after start");
+        }
+    }
+    
+    private static String filters(String machineId, String factoryId, Instant start, Instant end, List<Object> args) {
+        args.add(OffsetDateTime.ofInstant(start, ZoneOffset.UTC));
+        args.add(OffsetDateTime.ofInstant(end, ZoneOffset.UTC));
+        StringBuilder sql = new StringBuilder();
+        if (machineId != null) {
+            sql.append(" AND machine_id = ?");
+            args.add(machineId);
+        }
+        if (factoryId != null) {
+            sql.append(" AND factory_id = ?");
+            args.add(factoryId);
+        }
+        return sql.toString();
+    }
+    
+    private long stream(OutputStream out, Format format, String[] columns, String sql, List<Object> args,
+                        Merge merge, RowMapper mapper) throws IOException {
+        RowWriter row = format == Format.NDJSON ? new JsonRowWriter(out, columns) : new CsvRowWriter(out, columns);
+        long[] rows = new long[1];
+        
+        // A read-only transaction lets drivers such as PostgreSQL use a server-side cursor with the fetch size
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+        try {
+            transactionTemplate.executeWithoutResult(status -> cursorTemplate.query(sql, (RowCallbackHandler) rs -> {
+                try {
+                    if (merge != null) {
+                        rows[0] += merge.writeBefore(rs, row);
+                    }
+                    row.begin();
+                    mapper.map(rs, row);
+                    row.end();
+                    rows[0]++;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, args.toArray()));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (merge != null) {
+            rows[0] += merge.writeRest(row);
+        }
+        row.close();
+        return rows[0];
+    }
+    
+    @FunctionalInterface
+    private interface RowMapper {
+        void map(ResultSet rs, RowWriter row) throws SQLException, IOException;
+    }
+    
+    /** Rows from outside the table, merged into its result in order. */
+    private interface Merge {
+        /** Writes the merged rows that come before the current table row and returns how many. */
+        long writeBefore(ResultSet rs, RowWriter row) throws SQLException, IOException;
+        
+        /** Writes the merged rows left after the last table row and returns how many. */
+        long writeRest(RowWriter row) throws IOException;
+    }
+    
+    /** Tiered events, written before the first table row with a later event time. */
+    private static final class TieredEvents implements Merge {
+        private final PriorityQueue<Segment.Rows> cursors =
+                new PriorityQueue<>(Comparator.comparingLong(Segment.Rows::getMicros));
+        
+        private TieredEvents(List<Segment.Rows> segments) {
+            for (Segment.Rows cursor : segments) {
+                if (cursor.next()) {
+                    cursors.add(cursor);
+                }
+            }
+        }
+        
+        @Override
+        public long writeBefore(ResultSet rs, RowWriter row) throws SQLException, IOException {
+            return writeUntil(rs.getObject(2, OffsetDateTime.class).toInstant(), row);
+        }
+        
+        @Override
+        public long writeRest(RowWriter row) throws IOException {
+            return writeUntil(null, row);
+        }
+        
+        private long writeUntil(Instant eventTime, RowWriter row) throws IOException {
+            long written = 0;
+            while (!cursors.isEmpty() && (eventTime == null || !cursors.peek().getEventTime().isAfter(eventTime))) {
+                Segment.Rows cursor = cursors.poll();
+                row.begin();
+                row.text(cursor.getEventId());
+                row.text(cursor.getEventTime().toString());
+                row.text(null);
+                row.text(cursor.getMachineId());
+                row.text(cursor.getFactoryId());
+                row.number(cursor.getDurationMs());
+                row.number(cursor.getDefectCount());
+                row.end();
+                written++;
+                if (cursor.next()) {
+                    cursors.add(cursor);
+                }
+            }
+            return written;
+        }
+    }
+    
+    private interface RowWriter {
+        void begin() throws IOException;
+        
+        void text(String value) throws IOException;
+        
+        void number(long value) throws IOException;
+        
+        void decimal(double value) throws IOException;
+        
+        void end() throws IOException;
+        
+        void close() throws IOException;
+    }
+    
+    private final class JsonRowWriter implements RowWriter {
+        private final JsonGenerator generator;
+        private final String[] columns;
+        private int column;
+        
+        private JsonRowWriter(OutputStream out, String[] columns) throws IOException {
+            this.generator = objectMapper.getFactory().createGenerator(out);
+            this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            this.columns = columns;
+        }
+        
+        @Override
+        public void begin() throws IOException {
+            generator.writeStartObject();
+            column = 0;
+        }
+        
+        @Override
+        public void text(String value) throws IOException {
+            generator.writeStringField(columns[column++], value);
+        }
+        
+        @Override
+        public void number(long value) throws IOException {
+            generator.writeNumberField(columns[column++], value);
+        }
+        
+        @Override
+        public void decimal(double value) throws IOException {
+            generator.writeNumberField(columns[column++], value);
+        }
+        
+        @Override
+        public void end() throws IOException {
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+        
+        @Override
+        public void close() throws IOException {
+            generator.close();
+        }
+    }
+    
+    private static final class CsvRowWriter implements RowWriter {
+        private final Writer writer;
+        private boolean firstColumn;
+        
+        private CsvRowWriter(OutputStream out, String[] columns) throws IOException {
+            this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+            writer.write(String.join(",", columns));
+            writer.write("\r\n");
+        }
+        
+        private void separator() throws IOException {
+            if (!firstColumn) {
+                writer.write(',');
+            }
+            firstColumn = false;
+        }
+        
+        @Override
+        public void begin() {
+            firstColumn = true;
+        }
+        
+        @Override
+        public void text(String value) throws IOException {
+            separator();
+            if (value == null) {
+                return;
+            }
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                writer.write(value);
+            } else {
+                writer.write('"');
+                writer.write(value.replace("\"", "\"\""));
+                writer.write('"');
+            }
+        }
+        
+        @Override
+        public void number(long value) throws IOException {
+            separator();
+            writer.write(Long.toString(value));
+        }
+        
+        @Override
+        public void decimal(double value) throws IOException {
+            separator();
+            writer.write(Double.toString(value));
+        }
+        
+        @Override
+        public void end() throws IOException {
+            writer.write("\r\n");
+        }
+        
+        @Override
+        public void close() throws IOException {
+            writer.flush();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.industrial.eventanalytics.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-factory ingest outcome counters and query timers. Meters are cached
+ * per tag combination so the hot path does not go through the registry
+ * lookup for every event. Factories the {@link FactoryRegistry} does not
+ * know are tagged {@code unknown}, since the tag comes from request input.
+ * Ingest outcomes counted inside a transaction are staged and only added
+ * once it commits, so a batch that is rolled back and run again, after a
+ * conflict or a failed group commit, is counted once.
+ */
+@Component
+public class FactoryMetrics {
+    
+    public static final String FLEET = "ALL";
+    
+    static final String UNKNOWN = "unknown";
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Autowired
+    private FactoryRegistry factoryRegistry;
+    
+    private final ConcurrentHashMap<String, Counter> ingestCounters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Timer> queryTimers = new ConcurrentHashMap<>();
+    
+    public void recordIngest(String factoryId, String outcome) {
+        String factory = factoryRegistry.isKnown(factoryId) ? factoryId : UNKNOWN;
+        Counter counter = ingestCounters.computeIfAbsent(factory + '|' + outcome, key ->
+                Counter.builder("ingest.events")
+                        .tag("factory", factory)
+                        .tag("outcome", outcome)
+                        .register(meterRegistry));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            stagedIngest().merge(counter, 1L, Long::sum);
+        } else {
+            counter.increment();
+        }
+    }
+    
+    public Timer queryTimer(String query, String factoryId) {
+        String factory = factoryId == null ? FLEET : factoryRegistry.isKnown(factoryId) ? factoryId : UNKNOWN;
+        return queryTimers.computeIfAbsent(query + '|' + factory, key ->
+                Timer.builder("stats.query")
+                        .tag("query", query)
+                        .tag("factory", factory)
+                        .register(meterRegistry));
+    }
+    
+    @SuppressWarnings("unchecked")
+    private Map<Counter, Long> stagedIngest() {
+        Map<Counter, Long> staged = (Map<Counter, Long>) TransactionSynchronizationManager.getResource(this);
+        if (staged == null) {
+            Map<Counter, Long> newStaged = new HashMap<>();
+            TransactionSynchronizationManager.bindResource(this, newStaged);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(FactoryMetrics.this);
+                    if (status == STATUS_COMMITTED) {
+                        newStaged.forEach(Counter::increment);
+                    }
+                }
+            });
+            staged = newStaged;
+        }
+        return staged;
+    }
+}
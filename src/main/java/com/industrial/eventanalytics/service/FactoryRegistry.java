@@ -0,0 +1,99 @@
+package com.industrial.eventanalytics.service;
+
+import com.industrial.eventanalytics.model.Event;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Static machine to factory assignment, configured as
+ * {@code factory.machines[M-001]=F01}. The registry wins over a factory named
+ * in the request; machines it does not know keep the requested factory or
+ * fall back to {@code factory.default-id}.
+ * <p>
+ * Factories named in the machine map, the default and those listed in
+ * {@code factory.ids} are known; metrics tag every other factory as
+ * {@code unknown} so request input cannot create meters without bound.
+ */
+@Component
+@ConfigurationProperties(prefix = "factory")
+public class FactoryRegistry {
+    
+    private Map<String, String> machines = new HashMap<>();
+    
+    private String defaultId = Event.UNASSIGNED_FACTORY;
+    
+    private List<String> ids = new ArrayList<>();
+    
+    private volatile Set<String> knownIds;
+    
+    public String lookup(String machineId) {
+        return machineId != null ? machines.get(machineId) : null;
+    }
+    
+    public String resolve(String machineId, String requestedFactoryId) {
+        String registered = lookup(machineId);
+        if (registered != null) {
+            return registered;
+        }
+        if (requestedFactoryId != null && !requestedFactoryId.trim().isEmpty()) {
+            return requestedFactoryId.trim();
+        }
+        return defaultId;
+    }
+    
+    public boolean isKnown(String factoryId) {
+        Set<String> known = knownIds;
+        if (known == null) {
+            known = new HashSet<>(machines.values());
+            known.addAll(ids);
+            known.add(defaultId);
+            knownIds = known;
+        }
+        return factoryId != null && known.contains(factoryId);
+    }
+    
+    /**
+     * True when the request names a factory that contradicts the registry.
+     */
+    public boolean conflicts(String machineId, String requestedFactoryId) {
+        String registered = lookup(machineId);
+        return registered != null
+                && requestedFactoryId != null
+                && !requestedFactoryId.trim().isEmpty()
+                && !registered.equals(requestedFactoryId.trim());
+    }
+    
+    public Map<String, String> getMachines() {
+        return machines;
+    }
+    
+    public void setMachines(Map<String, String> machines) {
+        this.machines = machines;
+        knownIds = null;
+    }
+    
+    public String getDefaultId() {
+        return defaultId;
+    }
+    
+    public void setDefaultId(String defaultId) {
+        this.defaultId = defaultId;
+        knownIds = null;
+    }
+    
+    public List<String> getIds() {
+        return ids;
+    }
+    
+    public void setIds(List<String> ids) {
+        this.ids = ids;
+        knownIds = null;
+    }
+}
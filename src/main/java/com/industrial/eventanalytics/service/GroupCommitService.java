@@ -0,0 +1,223 @@
+package com.industrial.eventanalytics.service;
+
+import com.industrial.eventanalytics.dto.BatchResponse;
+import com.industrial.eventanalytics.dto.EventRequest;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Coalesces concurrent small batches into one shared transaction. Callers
+ * posting at most {@code max-batch-events} events are queued; a committer
+ * thread collects queued batches for up to {@code window} (or until the group
+ * is full), runs them back to back through {@link EventService} inside a
+ * single transaction, and hands every caller its own {@link BatchResponse}
+ * once that transaction has committed. If the shared commit fails, each
+ * batch of the group is retried in its own transaction so one caller's
+ * failure does not fail the others. A caller waits at most {@code timeout}
+ * for its result, so a stalled committer cannot hold ingest threads
+ * forever; a batch that timed out while already in a group may still
+ * commit, and a retry is then deduplicated by eventId.
+ */
+@Service
+public class GroupCommitService {
+    
+    private static final Logger log = LoggerFactory.getLogger(GroupCommitService.class);
+    
+    @Autowired
+    private EventService eventService;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${ingest.group-commit.enabled:false}")
+    private boolean enabled;
+    
+    @Value("${ingest.group-commit.max-batch-events:50}")
+    private int maxBatchEvents;
+    
+    @Value("${ingest.group-commit.window:PT0.005S}")
+    private Duration window;
+    
+    @Value("${ingest.group-commit.max-group-size:32}")
+    private int maxGroupSize;
+    
+    @Value("${ingest.group-commit.max-group-events:2000}")
+    private int maxGroupEvents;
+    
+    @Value("${ingest.group-commit.committers:2}")
+    private int committers;
+    
+    @Value("${ingest.group-commit.timeout:PT30S}")
+    private Duration timeout;
+    
+    private final LinkedBlockingQueue<PendingBatch> queue = new LinkedBlockingQueue<>();
+    private final List<Thread> committerThreads = new ArrayList<>();
+    private TransactionTemplate transactionTemplate;
+    private DistributionSummary groupSize;
+    private DistributionSummary groupEvents;
+    private Counter fallbacks;
+    private volatile boolean running;
+    
+    @PostConstruct
+    void start() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        groupSize = DistributionSummary.builder("ingest.group.size")
+                .description("Batches committed per shared transaction")
+                .register(meterRegistry);
+        groupEvents = DistributionSummary.builder("ingest.group.events")
+                .description("Events committed per shared transaction")
+                .register(meterRegistry);
+        fallbacks = Counter.builder("ingest.group.fallbacks")
+                .description("Groups whose shared commit failed and were retried per batch")
+                .register(meterRegistry);
+        
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        for (int i = 0; i < committers; i++) {
+            Thread thread = new Thread(this::commitLoop, "group-commit-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            committerThreads.add(thread);
+        }
+    }
+    
+    @PreDestroy
+    void stop() {
+        running = false;
+        committerThreads.forEach(Thread::interrupt);
+        PendingBatch pending;
+        while ((pending = queue.poll()) != null) {
+            pending.result.completeExceptionally(new IllegalStateException("Group commit is shutting down"));
+        }
+    }
+    
+    /**
+     * Processes a batch, sharing a transaction with other small batches when
+     * group commit is enabled.
+     */
+    public BatchResponse process(List<EventRequest> events) {
+        if (!running || events.size() > maxBatchEvents) {
+            return eventService.processBatchEvents(events);
+        }
+        
+        PendingBatch pending = new PendingBatch(events);
+        queue.add(pending);
+        try {
+            return pending.result.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            boolean started = !queue.remove(pending);
+            pending.result.cancel(false);
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, started
+                    ? "Group commit did not finish within " + timeout + ", the batch may have been stored"
+                    : "Group commit did not start within " + timeout + ", the batch was not stored");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for group commit", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+    
+    private void commitLoop() {
+        while (running) {
+            try {
+                List<PendingBatch> group = collectGroup();
+                commitGroup(group);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Group commit loop failed", e);
+            }
+        }
+    }
+    
+    private List<PendingBatch> collectGroup() throws InterruptedException {
+        PendingBatch first = queue.take();
+        List<PendingBatch> group = new ArrayList<>();
+        group.add(first);
+        int events = first.events.size();
+        
+        long deadline = System.nanoTime() + window.toNanos();
+        while (group.size() < maxGroupSize && events < maxGroupEvents) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            PendingBatch next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            group.add(next);
+            events += next.events.size();
+        }
+        return group;
+    }
+    
+    private void commitGroup(List<PendingBatch> group) {
+        List<BatchResponse> responses = new ArrayList<>(group.size());
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (PendingBatch pending : group) {
+                    responses.add(eventService.processBatchEvents(pending.events));
+                }
+            });
+        } catch (RuntimeException e) {
+            fallbacks.increment();
+            log.debug("Shared commit of {} batches failed, retrying individually", group.size(), e);
+            // ingest outcomes staged by the shared attempt were dropped with its rollback
+            for (PendingBatch pending : group) {
+                try {
+                    pending.result.complete(eventService.processBatchEvents(pending.events));
+                } catch (RuntimeException individual) {
+                    pending.result.completeExceptionally(individual);
+                }
+            }
+            return;
+        }
+        
+        groupSize.record(group.size());
+        groupEvents.record(group.stream().mapToInt(pending -> pending.events.size()).sum());
+        for (int i = 0; i < group.size(); i++) {
+            group.get(i).result.complete(responses.get(i));
+        }
+    }
+    
+    private static class PendingBatch {
+        private final List<EventRequest> events;
+        private final CompletableFuture<BatchResponse> result = new CompletableFuture<>();
+        
+        private PendingBatch(List<EventRequest> events) {
+            this.events = events;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.industrial.eventanalytics.service;
+
+import com.industrial.eventanalytics.dto.BatchResponse;
+import com.industrial.eventanalytics.dto.EventRequest;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import jakarta.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the {@link BatchResponse} produced for each {@code Idempotency-Key}
+ * so that a gateway retrying a whole batch gets the original answer back
+ * without the batch being processed again. Completed entries are bounded in
+ * number, evicted least-recently-used, and expire a fixed time after
+ * completion. Entries still running are kept apart and never evicted, so a
+ * retry arriving while the first attempt is still running always waits for
+ * it rather than running the batch again.
+ */
+@Service
+public class IdempotencyService {
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${ingest.idempotency.max-entries:10000}")
+    private int maxEntries;
+    
+    @Value("${ingest.idempotency.ttl:PT10M}")
+    private Duration ttl;
+    
+    @Value("${ingest.idempotency.in-flight-wait:PT30S}")
+    private Duration inFlightWait;
+    
+    private Map<String, Entry> entries;
+    
+    /** Entries whose first attempt is still running; guarded by {@code entries}. */
+    private final Map<String, Entry> inFlight = new HashMap<>();
+    
+    @PostConstruct
+    void init() {
+        entries = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        meterRegistry.gauge("ingest.idempotency.entries", this, service -> service.size());
+    }
+    
+    /**
+     * Runs {@code action} once per key and payload digest. Later calls with
+     * the same key and payload get the stored response; a different payload
+     * under a known key is rejected with 422.
+     */
+    public Outcome execute(String key, List<EventRequest> events, Supplier<BatchResponse> action) {
+        byte[] digest = digest(events);
+        
+        while (true) {
+            Entry mine = new Entry(digest);
+            Entry existing;
+            synchronized (entries) {
+                existing = inFlight.get(key);
+                if (existing == null) {
+                    existing = entries.get(key);
+                    if (existing != null && existing.isExpired(Instant.now())) {
+                        entries.remove(key);
+                        existing = null;
+                    }
+                }
+                if (existing == null) {
+                    inFlight.put(key, mine);
+                }
+            }
+            
+            if (existing == null) {
+                meterRegistry.counter("ingest.idempotency.requests", "result", "miss").increment();
+                return new Outcome(runAndStore(key, mine, action), false);
+            }
+            
+            if (!Arrays.equals(existing.digest, digest)) {
+                meterRegistry.counter("ingest.idempotency.requests", "result", "conflict").increment();
+                throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY,
+                        "Idempotency-Key was already used for a different payload");
+            }
+            
+            String result = existing.result.isDone() ? "replay" : "waited";
+            try {
+                BatchResponse response = existing.result.get(inFlightWait.toMillis(), TimeUnit.MILLISECONDS);
+                meterRegistry.counter("ingest.idempotency.requests", "result", result).increment();
+                return new Outcome(response, true);
+            } catch (TimeoutException e) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT,
+                        "A request with this Idempotency-Key is still being processed");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Interrupted while waiting for original request");
+            } catch (ExecutionException e) {
+                // The first attempt failed and released the key; try to become the owner
+            }
+        }
+    }
+    
+    private BatchResponse runAndStore(String key, Entry entry, Supplier<BatchResponse> action) {
+        try {
+            BatchResponse response = action.get();
+            entry.completedAt = Instant.now();
+            synchronized (entries) {
+                inFlight.remove(key, entry);
+                entries.put(key, entry);
+            }
+            entry.result.complete(response);
+            return response;
+        } catch (RuntimeException e) {
+            synchronized (entries) {
+                inFlight.remove(key, entry);
+            }
+            entry.result.completeExceptionally(e);
+            throw e;
+        }
+    }
+    
+    public int size() {
+        synchronized (entries) {
+            return entries.size() + inFlight.size();
+        }
+    }
+    
+    private static byte[] digest(List<EventRequest> events) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (EventRequest event : events) {
+            update(md, event.getEventId());
+            update(md, event.getEventTime());
+            update(md, event.getReceivedTime());
+            update(md, event.getMachineId());
+            update(md, event.getFactoryId());
+            update(md, event.getDurationMs());
+            update(md, event.getDefectCount());
+        }
+        return md.digest();
+    }
+    
+    private static void update(MessageDigest md, Object value) {
+        if (value == null) {
+            md.update((byte) 0);
+            return;
+        }
+        md.update((byte) 1);
+        md.update(value.toString().getBytes(StandardCharsets.UTF_8));
+        md.update((byte) '\n');
+    }
+    
+    private class Entry {
+        private final byte[] digest;
+        private final CompletableFuture<BatchResponse> result = new CompletableFuture<>();
+        private volatile Instant completedAt;
+        
+        private Entry(byte[] digest) {
+            this.digest = digest;
+        }
+        
+        private boolean isExpired(Instant now) {
+            Instant completed = completedAt;
+            return completed != null && completed.plus(ttl).isBefore(now);
+        }
+    }
+    
+    public static class Outcome {
+        private final BatchResponse response;
+        private final boolean replayed;
+        
+        public Outcome(BatchResponse response, boolean replayed) {
+            this.response = response;
+            this.replayed = replayed;
+        }
+        
+        public BatchResponse getResponse() {
+            return response;
+        }
+        
+        public boolean isReplayed() {
+            return replayed;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.industrial.eventanalytics.service;
+
+import com.industrial.eventanalytics.config.ReadRoutingDataSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Decides where read-only transactions run. Reads go to the analytics pool
+ * while the replica is within {@code analytics.replica.max-staleness};
+ * otherwise, or when a caller's consistency token has not been applied there
+ * yet, they go to the primary.
+ */
+@Component
+public class ReadRouting {
+    
+    @Autowired
+    private ReplicationStream replicationStream;
+    
+    @Value("${analytics.replica.read-your-writes-wait:PT2S}")
+    private Duration readYourWritesWait;
+    
+    private final ThreadLocal<String> pinned = new ThreadLocal<>();
+    
+    /** Source for read-only transactions started on this thread. */
+    public String currentSource() {
+        String source = pinned.get();
+        if (source != null) {
+            return source;
+        }
+        return !replicationStream.isEnabled() || replicationStream.isWithinStaleness()
+                ? ReadRoutingDataSource.ANALYTICS : ReadRoutingDataSource.PRIMARY;
+    }
+    
+    /**
+     * Fixes the source for the rest of a request. With a token from an earlier
+     * write the replica gets {@code read-your-writes-wait} to catch up to it
+     * before the request is sent to the primary instead.
+     */
+    public String pin(Long consistencyToken) {
+        String source = ReadRoutingDataSource.ANALYTICS;
+        if (replicationStream.isEnabled()) {
+            boolean caughtUp = consistencyToken == null
+                    || replicationStream.awaitApplied(consistencyToken, readYourWritesWait);
+            if (!caughtUp || !replicationStream.isWithinStaleness()) {
+                source = ReadRoutingDataSource.PRIMARY;
+            }
+        }
+        pinned.set(source);
+        return source;
+    }
+    
+    public void unpin() {
+        pinned.remove();
+    }
+    
+    /**
+     * How far behind the primary a read from {@code source} may be; zero for
+     * the primary and for an analytics pool on the primary database.
+     */
+    public Duration getStaleness(String source) {
+        if (!replicationStream.isEnabled() || ReadRoutingDataSource.PRIMARY.equals(source)) {
+            return Duration.ZERO;
+        }
+        return replicationStream.getLag();
+    }
+    
+    /**
+     * Token covering every write committed so far, or {@code null} when reads
+     * are never stale.
+     */
+    public Long currentToken() {
+        return replicationStream.isEnabled() ? replicationStream.getPublishedSequence() : null;
+    }
+}
@@ -0,0 +1,355 @@
+package com.industrial.eventanalytics.service;
+
+import com.industrial.eventanalytics.model.Event;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import jakarta.annotation.PostConstruct;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Process-wide, memory-bounded cache of recently written events, keyed by
+ * eventId, so that retries and corrections arriving shortly after the
+ * original can be deduplicated without a database lookup.
+ * <p>
+ * The cache is split into lock-striped segments, each a segmented LRU: new
+ * entries start in a probation area and are promoted to a protected area on
+ * their second hit, so a burst of one-off eventIds cannot flush the entries
+ * that keep getting retried. Writes made inside a transaction are staged and
+ * only applied after commit, so a rolled back batch never leaves entries
+ * behind.
+ */
+@Component
+public class RecentEventCache {
+    
+    /**
+     * Rough per-entry footprint besides the key characters: map node, entry
+     * object, key String header and the protected/probation bookkeeping.
+     */
+    private static final int ENTRY_OVERHEAD_BYTES = 160;
+    
+    private static final int SEGMENTS = 16;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${ingest.recent-cache.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${ingest.recent-cache.max-bytes:67108864}")
+    private long maxBytes;
+    
+    private Segment[] segments;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    
+    @PostConstruct
+    void init() {
+        segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(maxBytes / SEGMENTS);
+        }
+        FunctionCounter.builder("ingest.recent_cache.hits", hits, AtomicLong::get).register(meterRegistry);
+        FunctionCounter.builder("ingest.recent_cache.misses", misses, AtomicLong::get).register(meterRegistry);
+        FunctionCounter.builder("ingest.recent_cache.evictions", evictions, AtomicLong::get).register(meterRegistry);
+        Gauge.builder("ingest.recent_cache.hit_ratio", this, RecentEventCache::hitRatio).register(meterRegistry);
+        Gauge.builder("ingest.recent_cache.bytes", this, RecentEventCache::estimatedBytes)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("ingest.recent_cache.size", this, RecentEventCache::size).register(meterRegistry);
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public Entry get(String eventId) {
+        if (!enabled) {
+            return null;
+        }
+        Entry entry = segmentFor(eventId).get(eventId);
+        if (entry != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return entry;
+    }
+    
+    /**
+     * Records the stored state of an event. Inside a transaction the entry is
+     * only published once the transaction commits.
+     */
+    public void record(Event event) {
+        if (!enabled) {
+            return;
+        }
+        Entry entry = Entry.of(event);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            stagedEntries().add(entry);
+        } else {
+            put(entry);
+        }
+    }
+    
+    public void invalidate(String eventId) {
+        if (enabled && eventId != null) {
+            segmentFor(eventId).remove(eventId);
+        }
+    }
+    
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+    
+    /**
+     * Drops entries for events the retention job or tiering removed, so a
+     * re-sent expired event is not mistaken for a duplicate. Runs for every
+     * purged chunk, even with the cutoff of the previous one, since entries
+     * of old events may have been cached in between.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRetentionPurged(RetentionPurgedEvent purged) {
+        if (!enabled) {
+            return;
+        }
+        long cutoffMillis = purged.getCutoff().toEpochMilli();
+        for (Segment segment : segments) {
+            segment.removeIf(entry -> entry.eventTimeMillis < cutoffMillis);
+        }
+    }
+    
+    public double hitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+    
+    public long estimatedBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.bytes();
+        }
+        return bytes;
+    }
+    
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+    
+    private void put(Entry entry) {
+        segmentFor(entry.eventId).put(entry);
+    }
+    
+    private Segment segmentFor(String eventId) {
+        int h = eventId.hashCode();
+        return segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+    }
+    
+    @SuppressWarnings("unchecked")
+    private List<Entry> stagedEntries() {
+        List<Entry> staged = (List<Entry>) TransactionSynchronizationManager.getResource(this);
+        if (staged == null) {
+            List<Entry> newStaged = new ArrayList<>();
+            TransactionSynchronizationManager.bindResource(this, newStaged);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(RecentEventCache.this);
+                    if (status == STATUS_COMMITTED) {
+                        newStaged.forEach(RecentEventCache.this::put);
+                    }
+                }
+            });
+            staged = newStaged;
+        }
+        return staged;
+    }
+    
+    /**
+     * Compact copy of the stored payload plus its receivedTime.
+     */
+    public static final class Entry {
+        private final String eventId;
+        private final long eventTimeMillis;
+        private final long receivedTimeMillis;
+        private final String machineId;
+        private final String factoryId;
+        private final long durationMs;
+        private final int defectCount;
+        
+        private Entry(String eventId, long eventTimeMillis, long receivedTimeMillis, String machineId,
+                      String factoryId, long durationMs, int defectCount) {
+            this.eventId = eventId;
+            this.eventTimeMillis = eventTimeMillis;
+            this.receivedTimeMillis = receivedTimeMillis;
+            this.machineId = machineId;
+            this.factoryId = factoryId;
+            this.durationMs = durationMs;
+            this.defectCount = defectCount;
+        }
+        
+        static Entry of(Event event) {
+            return new Entry(event.getEventId(), event.getEventTime().toEpochMilli(),
+                    event.getReceivedTime().toEpochMilli(), event.getMachineId(), event.getFactoryId(),
+                    event.getDurationMs(), event.getDefectCount());
+        }
+        
+        /**
+         * Same comparison as the service's payload check: eventTime, machine,
+         * factory, duration and defect count.
+         */
+        public boolean matches(Event event) {
+            return eventTimeMillis == event.getEventTime().toEpochMilli()
+                    && machineId.equals(event.getMachineId())
+                    && factoryId.equals(event.getFactoryId())
+                    && durationMs == event.getDurationMs()
+                    && defectCount == event.getDefectCount();
+        }
+        
+        public Instant getReceivedTime() {
+            return Instant.ofEpochMilli(receivedTimeMillis);
+        }
+        
+        long weight() {
+            return ENTRY_OVERHEAD_BYTES + 2L * eventId.length();
+        }
+    }
+    
+    private final class Segment {
+        private final long maxBytes;
+        private final long maxProtectedBytes;
+        private final LinkedHashMap<String, Entry> probation = new LinkedHashMap<>(64, 0.75f, true);
+        private final LinkedHashMap<String, Entry> protectedEntries = new LinkedHashMap<>(64, 0.75f, true);
+        private long probationBytes;
+        private long protectedBytes;
+        
+        private Segment(long maxBytes) {
+            this.maxBytes = maxBytes;
+            this.maxProtectedBytes = maxBytes * 4 / 5;
+        }
+        
+        synchronized Entry get(String eventId) {
+            Entry entry = protectedEntries.get(eventId);
+            if (entry != null) {
+                return entry;
+            }
+            entry = probation.remove(eventId);
+            if (entry == null) {
+                return null;
+            }
+            probationBytes -= entry.weight();
+            protectedEntries.put(eventId, entry);
+            protectedBytes += entry.weight();
+            demoteOverflow();
+            return entry;
+        }
+        
+        synchronized void put(Entry entry) {
+            Entry existing = protectedEntries.get(entry.eventId);
+            if (existing != null) {
+                if (entry.receivedTimeMillis >= existing.receivedTimeMillis) {
+                    protectedEntries.put(entry.eventId, entry);
+                }
+                return;
+            }
+            existing = probation.get(entry.eventId);
+            if (existing != null) {
+                if (entry.receivedTimeMillis >= existing.receivedTimeMillis) {
+                    probation.put(entry.eventId, entry);
+                }
+                return;
+            }
+            probation.put(entry.eventId, entry);
+            probationBytes += entry.weight();
+            evictOverflow();
+        }
+        
+        synchronized void remove(String eventId) {
+            Entry entry = probation.remove(eventId);
+            if (entry != null) {
+                probationBytes -= entry.weight();
+            }
+            entry = protectedEntries.remove(eventId);
+            if (entry != null) {
+                protectedBytes -= entry.weight();
+            }
+        }
+        
+        synchronized void removeIf(Predicate<Entry> predicate) {
+            probationBytes -= removeIf(probation, predicate);
+            protectedBytes -= removeIf(protectedEntries, predicate);
+        }
+        
+        private long removeIf(LinkedHashMap<String, Entry> map, Predicate<Entry> predicate) {
+            long removed = 0;
+            Iterator<Entry> it = map.values().iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                if (predicate.test(entry)) {
+                    removed += entry.weight();
+                    it.remove();
+                }
+            }
+            return removed;
+        }
+        
+        synchronized void clear() {
+            probation.clear();
+            protectedEntries.clear();
+            probationBytes = 0;
+            protectedBytes = 0;
+        }
+        
+        synchronized long bytes() {
+            return probationBytes + protectedBytes;
+        }
+        
+        synchronized int size() {
+            return probation.size() + protectedEntries.size();
+        }
+        
+        private void demoteOverflow() {
+            Iterator<Map.Entry<String, Entry>> it = protectedEntries.entrySet().iterator();
+            while (protectedBytes > maxProtectedBytes && it.hasNext()) {
+                Entry demoted = it.next().getValue();
+                it.remove();
+                protectedBytes -= demoted.weight();
+                probation.put(demoted.eventId, demoted);
+                probationBytes += demoted.weight();
+            }
+            evictOverflow();
+        }
+        
+        private void evictOverflow() {
+            Iterator<Map.Entry<String, Entry>> it = probation.entrySet().iterator();
+            while (probationBytes + protectedBytes > maxBytes && it.hasNext()) {
+                Entry evicted = it.next().getValue();
+                it.remove();
+                probationBytes -= evicted.weight();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package com.industrial.eventanalytics.service;
+
+import com.industrial.eventanalytics.model.Event;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local stand-in for a read replica: a second database kept up to date from
+ * the changes this instance commits. Committed ingest writes and retention
+ * purges are numbered in the order their after-commit listeners run and
+ * applied to the replica by one thread, in that order, in batches. The lag is
+ * the age of the oldest committed change not applied yet.
+ * 
+ * Listener order is not strictly commit order: two transactions committing
+ * concurrently may be numbered the other way round. Rows are applied as
+ * conditional upserts keyed by eventId that never replace a newer
+ * receivedTime, so reordered or replayed writes (after the startup snapshot,
+ * or after a failed batch) converge. Purges delete exactly the eventIds the
+ * primary removed rather than everything before the cutoff, so rows written
+ * after a purge are never dropped by it. The divergence left is bounded to an
+ * eventId older than the cutoff that is ingested while a purge chunk removes
+ * it: if the two listeners run in the other order than the commits, the
+ * replica can keep or lose that one row until it is seeded again at startup.
+ */
+@Component
+@DependsOn("entityManagerFactory")
+public class ReplicationStream {
+    
+    private static final Logger log = LoggerFactory.getLogger(ReplicationStream.class);
+    
+    private static final String UPSERT_SQL =
+            "MERGE INTO events r USING (SELECT CAST(? AS VARCHAR(255)) event_id, "
+            + "CAST(? AS TIMESTAMP(6) WITH TIME ZONE) event_time, CAST(? AS TIMESTAMP(6) WITH TIME ZONE) received_time, "
+            + "CAST(? AS VARCHAR(255)) machine_id, CAST(? AS VARCHAR(255)) factory_id, "
+            + "CAST(? AS BIGINT) duration_ms, CAST(? AS INTEGER) defect_count) s "
+            + "ON r.event_id = s.event_id "
+            + "WHEN MATCHED AND s.received_time >= r.received_time THEN UPDATE SET event_time = s.event_time, "
+            + "received_time = s.received_time, machine_id = s.machine_id, factory_id = s.factory_id, "
+            + "duration_ms = s.duration_ms, defect_count = s.defect_count "
+            + "WHEN NOT MATCHED THEN INSERT (event_id, event_time, received_time, machine_id, factory_id, duration_ms, defect_count) "
+            + "VALUES (s.event_id, s.event_time, s.received_time, s.machine_id, s.factory_id, s.duration_ms, s.defect_count)";
+    
+    private static final String PURGE_SQL = "DELETE FROM events WHERE event_id = ? AND event_time < ?";
+    
+    @Autowired
+    @Qualifier("primaryDataSource")
+    private DataSource primaryDataSource;
+    
+    @Autowired
+    @Qualifier("analyticsDataSource")
+    private HikariDataSource analyticsDataSource;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${analytics.replica.enabled:false}")
+    private boolean enabled;
+    
+    @Value("${analytics.replica.max-staleness:PT5S}")
+    private Duration maxStaleness;
+    
+    @Value("${analytics.replica.apply-batch-size:1000}")
+    private int applyBatchSize;
+    
+    @Value("${analytics.replica.apply-delay:PT0S}")
+    private Duration applyDelay;
+    
+    private static class Change {
+        final long committedAtNanos = System.nanoTime();
+        final List<Event> upserts;
+        final List<String> purgedEventIds;
+        final Instant purgeCutoff;
+        long sequence;
+        
+        Change(List<Event> upserts, List<String> purgedEventIds, Instant purgeCutoff) {
+            this.upserts = upserts;
+            this.purgedEventIds = purgedEventIds;
+            this.purgeCutoff = purgeCutoff;
+        }
+    }
+    
+    private final ConcurrentLinkedQueue<Change> queue = new ConcurrentLinkedQueue<>();
+    private final Object appliedMonitor = new Object();
+    private volatile long publishedSequence;
+    private volatile long appliedSequence;
+    private volatile boolean running;
+    private Connection replica;
+    private Thread applier;
+    
+    @PostConstruct
+    void start() throws SQLException {
+        if (!enabled) {
+            return;
+        }
+        Gauge.builder("analytics.replica.lag", this, stream -> stream.getLag().toNanos() / 1e9)
+                .description("Age of the oldest committed change not yet applied to the analytics replica")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        Gauge.builder("analytics.replica.pending", queue, ConcurrentLinkedQueue::size)
+                .description("Committed changes waiting to be applied to the analytics replica")
+                .register(meterRegistry);
+        
+        // Changes committed from here on are queued; the snapshot may already contain some, which the upserts tolerate
+        running = true;
+        replica = DriverManager.getConnection(analyticsDataSource.getJdbcUrl(),
+                analyticsDataSource.getUsername(), analyticsDataSource.getPassword());
+        replica.setAutoCommit(false);
+        copySchemaAndSnapshot();
+        applier = new Thread(this::applyLoop, "analytics-replica-apply");
+        applier.setDaemon(true);
+        applier.start();
+        log.info("Analytics replica {} seeded, streaming committed changes", analyticsDataSource.getJdbcUrl());
+    }
+    
+    @PreDestroy
+    void stop() throws InterruptedException, SQLException {
+        if (!enabled) {
+            return;
+        }
+        running = false;
+        synchronized (this) {
+            notifyAll();
+        }
+        applier.join(TimeUnit.SECONDS.toMillis(5));
+        replica.close();
+    }
+    
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEventsWritten(EventsWrittenEvent written) {
+        if (enabled && !written.getEvents().isEmpty()) {
+            publish(new Change(written.getEvents(), List.of(), null));
+        }
+    }
+    
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRetentionPurged(RetentionPurgedEvent purged) {
+        if (enabled) {
+            publish(new Change(List.of(), purged.getPurgedEventIds(), purged.getCutoff()));
+        }
+    }
+    
+    private synchronized void publish(Change change) {
+        change.sequence = ++publishedSequence;
+        queue.add(change);
+        notifyAll();
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public long getPublishedSequence() {
+        return publishedSequence;
+    }
+    
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+    
+    public Duration getLag() {
+        Change oldest = queue.peek();
+        return oldest == null ? Duration.ZERO : Duration.ofNanos(System.nanoTime() - oldest.committedAtNanos);
+    }
+    
+    public boolean isWithinStaleness() {
+        return getLag().compareTo(maxStaleness) <= 0;
+    }
+    
+    /**
+     * Waits until the change numbered {@code sequence} has been applied.
+     * 
+     * @return false if it was not applied within {@code timeout}
+     */
+    public boolean awaitApplied(long sequence, Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        synchronized (appliedMonitor) {
+            while (appliedSequence < sequence) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(appliedMonitor, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+    
+    private void copySchemaAndSnapshot() throws SQLException {
+        try (Connection primary = primaryDataSource.getConnection();
+             Statement primaryStatement = primary.createStatement();
+             Statement replicaStatement = replica.createStatement()) {
+            boolean exists;
+            try (ResultSet tables = replica.getMetaData().getTables(null, null, "EVENTS", null)) {
+                exists = tables.next();
+            }
+            if (exists) {
+                replicaStatement.execute("TRUNCATE TABLE events");
+            } else {
+                // H2's own DDL for the table Hibernate generated, so both sides stay identical
+                try (ResultSet script = primaryStatement.executeQuery("SCRIPT NODATA TABLE events")) {
+                    while (script.next()) {
+                        String sql = script.getString(1);
+                        if (!sql.startsWith("--") && !sql.startsWith("CREATE USER")) {
+                            replicaStatement.execute(sql);
+                        }
+                    }
+                }
+            }
+            
+            primaryStatement.setFetchSize(applyBatchSize);
+            try (ResultSet rows = primaryStatement.executeQuery("SELECT event_id, event_time, received_time, "
+                    + "machine_id, factory_id, duration_ms, defect_count FROM events");
+                 PreparedStatement upsert = replica.prepareStatement(UPSERT_SQL)) {
+                int batched = 0;
+                while (rows.next()) {
+                    for (int i = 1; i <= 7; i++) {
+                        upsert.setObject(i, rows.getObject(i));
+                    }
+                    upsert.addBatch();
+                    if (++batched == applyBatchSize) {
+                        upsert.executeBatch();
+                        batched = 0;
+                    }
+                }
+                upsert.executeBatch();
+            }
+            replica.commit();
+        }
+    }
+    
+    private void applyLoop() {
+        while (running) {
+            try {
+                List<Change> batch = nextBatch();
+                if (batch.isEmpty()) {
+                    continue;
+                }
+                apply(batch);
+                for (int i = 0; i < batch.size(); i++) {
+                    queue.poll();
+                }
+                synchronized (appliedMonitor) {
+                    appliedSequence = batch.get(batch.size() - 1).sequence;
+                    appliedMonitor.notifyAll();
+                }
+            } catch (SQLException e) {
+                log.warn("Applying changes to the analytics replica failed, retrying", e);
+                rollbackQuietly();
+                sleep(Duration.ofSeconds(1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Waits for the oldest change to become due and collects it together with
+     * the due changes behind it, up to {@code apply-batch-size} events.
+     */
+    private List<Change> nextBatch() throws InterruptedException {
+        synchronized (this) {
+            while (running && queue.isEmpty()) {
+                wait();
+            }
+        }
+        List<Change> batch = new ArrayList<>();
+        Change head = queue.peek();
+        if (head == null) {
+            return batch;
+        }
+        long waitNanos = head.committedAtNanos + applyDelay.toNanos() - System.nanoTime();
+        if (waitNanos > 0) {
+            sleep(Duration.ofNanos(waitNanos));
+            return batch;
+        }
+        int events = 0;
+        Iterator<Change> pending = queue.iterator();
+        while (pending.hasNext() && (batch.isEmpty() || events < applyBatchSize)) {
+            Change change = pending.next();
+            if (change.committedAtNanos + applyDelay.toNanos() > System.nanoTime()) {
+                break;
+            }
+            batch.add(change);
+            events += change.upserts.size() + change.purgedEventIds.size();
+        }
+        return batch;
+    }
+    
+    private void apply(List<Change> batch) throws SQLException {
+        try (PreparedStatement upsert = replica.prepareStatement(UPSERT_SQL);
+             PreparedStatement purge = replica.prepareStatement(PURGE_SQL)) {
+            for (Change change : batch) {
+                if (!change.purgedEventIds.isEmpty()) {
+                    // keep statement order: earlier upserts go first
+                    upsert.executeBatch();
+                    OffsetDateTime cutoff = OffsetDateTime.ofInstant(change.purgeCutoff, ZoneOffset.UTC);
+                    for (String eventId : change.purgedEventIds) {
+                        purge.setString(1, eventId);
+                        purge.setObject(2, cutoff);
+                        purge.addBatch();
+                    }
+                    purge.executeBatch();
+                }
+                for (Event event : change.upserts) {
+                    upsert.setString(1, event.getEventId());
+                    upsert.setObject(2, OffsetDateTime.ofInstant(event.getEventTime(), ZoneOffset.UTC));
+                    upsert.setObject(3, OffsetDateTime.ofInstant(event.getReceivedTime(), ZoneOffset.UTC));
+                    upsert.setString(4, event.getMachineId());
+                    upsert.setString(5, event.getFactoryId());
+                    upsert.setLong(6, event.getDurationMs());
+                    upsert.setInt(7, event.getDefectCount());
+                    upsert.addBatch();
+                }
+            }
+            upsert.executeBatch();
+        }
+        replica.commit();
+    }
+    
+    private void rollbackQuietly() {
+        try {
+            replica.rollback();
+        } catch (SQLException e) {
+            log.debug("Rollback on the analytics replica failed", e);
+        }
+    }
+    
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration.toMillis(), (int) (duration.toNanos() % 1_000_000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
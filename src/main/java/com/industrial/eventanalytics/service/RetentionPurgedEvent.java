@@ -0,0 +1,42 @@
+package com.industrial.eventanalytics.service;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Published inside each retention chunk transaction, and by tiering when
+ * the rows before the cutoff have moved to cold segments. Components holding
+ * aggregates derived from raw events should listen with
+ * {@code @TransactionalEventListener} so they only drop what they hold for
+ * the purged rows once the chunk has committed. The purged row ids and
+ * their eventIds are listed in the same order.
+ */
+public class RetentionPurgedEvent {
+    private final Instant cutoff;
+    private final List<Long> purgedIds;
+    private final List<String> purgedEventIds;
+    private final boolean archived;
+    
+    public RetentionPurgedEvent(Instant cutoff, List<Long> purgedIds, List<String> purgedEventIds, boolean archived) {
+        this.cutoff = cutoff;
+        this.purgedIds = purgedIds;
+        this.purgedEventIds = purgedEventIds;
+        this.archived = archived;
+    }
+    
+    public Instant getCutoff() {
+        return cutoff;
+    }
+    
+    public List<Long> getPurgedIds() {
+        return purgedIds;
+    }
+    
+    public List<String> getPurgedEventIds() {
+        return purgedEventIds;
+    }
+    
+    public boolean isArchived() {
+        return archived;
+    }
+}
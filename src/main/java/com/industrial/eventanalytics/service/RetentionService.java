@@ -0,0 +1,204 @@
+package com.industrial.eventanalytics.service;
+
+import com.industrial.eventanalytics.repository.ArchivedEventRepository;
+import com.industrial.eventanalytics.repository.EventRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Purges raw events older than the configured retention in small,
+ * time-ordered chunks. Each chunk runs in its own short transaction and the
+ * cycle stops once its row or time budget is spent, so a large backlog is
+ * worked off over several cycles instead of holding locks on the hot table.
+ * Never lazily initialised, since its schedule is only registered once the
+ * bean exists.
+ */
+@Service
+@Lazy(false)
+public class RetentionService {
+    
+    private static final Logger log = LoggerFactory.getLogger(RetentionService.class);
+    
+    @Autowired
+    private EventRepository eventRepository;
+    
+    @Autowired
+    private ArchivedEventRepository archivedEventRepository;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${retention.enabled:false}")
+    private boolean enabled;
+    
+    @Value("${retention.raw-retention:P90D}")
+    private Duration rawRetention;
+    
+    @Value("${retention.mode:delete}")
+    private String mode;
+    
+    @Value("${retention.chunk-size:500}")
+    private int chunkSize;
+    
+    @Value("${retention.max-rows-per-cycle:20000}")
+    private int maxRowsPerCycle;
+    
+    @Value("${retention.max-cycle-time:PT5S}")
+    private Duration maxCycleTime;
+    
+    @Value("${retention.chunk-pause:PT0.05S}")
+    private Duration chunkPause;
+    
+    private TransactionTemplate transactionTemplate;
+    private Counter purgedRows;
+    private Counter purgedChunks;
+    private Timer cycleTimer;
+    private final AtomicLong backlogRows = new AtomicLong();
+    private final AtomicLong lastCutoffEpochSeconds = new AtomicLong();
+    private final AtomicReference<Instant> purgedThrough = new AtomicReference<>();
+    
+    @PostConstruct
+    void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        purgedRows = Counter.builder("retention.rows.purged")
+                .tag("mode", mode)
+                .description("Raw events removed from the events table by retention")
+                .register(meterRegistry);
+        purgedChunks = Counter.builder("retention.chunks")
+                .tag("mode", mode)
+                .register(meterRegistry);
+        cycleTimer = Timer.builder("retention.cycle")
+                .description("Wall time of a retention cycle")
+                .register(meterRegistry);
+        meterRegistry.gauge("retention.backlog.rows", backlogRows);
+        meterRegistry.gauge("retention.cutoff.epoch.seconds", lastCutoffEpochSeconds);
+    }
+    
+    @Scheduled(fixedDelayString = "${retention.interval:PT5M}",
+               initialDelayString = "${retention.initial-delay:PT1M}")
+    public void scheduledPurge() {
+        if (enabled) {
+            runCycle();
+        }
+    }
+    
+    /**
+     * Runs one bounded purge cycle and returns the number of rows removed.
+     */
+    public int runCycle() {
+        Instant cutoff = Instant.now().minus(rawRetention);
+        boolean archive = "archive".equalsIgnoreCase(mode);
+        long deadline = System.nanoTime() + maxCycleTime.toNanos();
+        int purged = 0;
+        
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            while (purged < maxRowsPerCycle && System.nanoTime() < deadline) {
+                int limit = Math.min(chunkSize, maxRowsPerCycle - purged);
+                Integer removed = transactionTemplate.execute(status -> purgeChunk(cutoff, limit, archive));
+                if (removed == null || removed == 0) {
+                    break;
+                }
+                purged += removed;
+                purgedRows.increment(removed);
+                purgedChunks.increment();
+                if (removed < limit) {
+                    break;
+                }
+                if (!pause()) {
+                    break;
+                }
+            }
+        } finally {
+            sample.stop(cycleTimer);
+        }
+        
+        backlogRows.set(eventRepository.countByEventTimeBefore(cutoff));
+        lastCutoffEpochSeconds.set(cutoff.getEpochSecond());
+        if (backlogRows.get() == 0) {
+            purgedThrough.accumulateAndGet(cutoff, (prev, next) -> prev == null || next.isAfter(prev) ? next : prev);
+        }
+        if (purged > 0) {
+            log.info("Retention cycle purged {} events older than {} ({} remaining)", purged, cutoff, backlogRows.get());
+        }
+        return purged;
+    }
+    
+    private int purgeChunk(Instant cutoff, int limit, boolean archive) {
+        List<Object[]> rows = eventRepository.findIdsOlderThan(cutoff, PageRequest.of(0, limit));
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        List<Long> ids = new ArrayList<>(rows.size());
+        List<String> eventIds = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            ids.add((Long) row[0]);
+            eventIds.add((String) row[1]);
+        }
+        if (archive) {
+            archivedEventRepository.archiveByIds(ids, Instant.now());
+        }
+        int removed = eventRepository.deleteByIdIn(ids);
+        eventPublisher.publishEvent(new RetentionPurgedEvent(cutoff, ids, eventIds, archive));
+        return removed;
+    }
+    
+    private boolean pause() {
+        if (chunkPause.isZero() || chunkPause.isNegative()) {
+            return true;
+        }
+        try {
+            Thread.sleep(chunkPause.toMillis());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+    
+    /**
+     * Earliest event time that is guaranteed to still be present in the raw
+     * table, or {@code null} when retention is disabled and nothing has been
+     * purged.
+     */
+    public Instant getRawHorizon() {
+        if (enabled) {
+            return Instant.now().minus(rawRetention);
+        }
+        return purgedThrough.get();
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public long getBacklogRows() {
+        return backlogRows.get();
+    }
+}
@@ -1,56 +1,300 @@
 package com.industrial.eventanalytics.service;
 
+import com.industrial.eventanalytics.diagnostics.StatsQueryEvent;
 import com.industrial.eventanalytics.dto.StatsResponse;
+import com.industrial.eventanalytics.dto.TimeSeriesResponse;
 import com.industrial.eventanalytics.dto.TopDefectLineResponse;
 import com.industrial.eventanalytics.repository.EventRepository;
+import com.industrial.eventanalytics.repository.EventStore;
+import com.industrial.eventanalytics.tiering.ColdStorage;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * Read side of the service. Queries run in read-only transactions, which
+ * the routing data source sends to the analytics pool. Windows reaching
+ * into tiered days add the {@link ColdStorage} totals to the events table's.
+ */
 @Service
 public class StatsService {
     
     @Autowired
     private EventRepository eventRepository;
     
+    @Autowired
+    private EventStore eventStore;
+    
+    @Autowired
+    private ColdStorage coldStorage;
+    
+    @Autowired
+    private DefectSketches defectSketches;
+    
+    @Autowired
+    private RetentionService retentionService;
+    
+    @Autowired
+    private FactoryMetrics factoryMetrics;
+    
+    @Value("${stats.timeseries.max-points:2000}")
+    private int maxTimeSeriesPoints;
+    
+    @Transactional(readOnly = true)
     public StatsResponse getMachineStats(String machineId, Instant start, Instant end) {
-        long eventsCount = eventRepository.countEventsByMachineAndTimeWindow(machineId, start, end);
+        StatsQueryEvent queryEvent = new StatsQueryEvent();
+        queryEvent.begin();
         
-        Long defectsCountObj = eventRepository.sumDefectsByMachineAndTimeWindow(machineId, start, end);
-        long defectsCount = defectsCountObj != null ? defectsCountObj : 0;
+        long eventsCount = eventStore.countEvents(machineId, start, end);
         
+        long defectsCount = eventStore.sumDefects(machineId, start, end);
+        long[] cold = coldStorage.machineTotals(machineId, start, end);
+        eventsCount += cold[0];
+        defectsCount += cold[1];
+        commitQueryEvent(queryEvent, "machine-stats", machineId, null, start, end);
+        
+        return toMachineStats(machineId, start, end, eventsCount, defectsCount);
+    }
+    
+    /**
+     * Machine stats for the given totals, which may have been summed over
+     * several nodes.
+     */
+    public StatsResponse toMachineStats(String machineId, Instant start, Instant end, long eventsCount, long defectsCount) {
         double avgDefectRate = calculateAvgDefectRate(defectsCount, start, end);
         
         String status = avgDefectRate < 2.0 ? "Healthy" : "Warning";
         
-        return new StatsResponse(machineId, start, end, eventsCount, defectsCount, avgDefectRate, status);
+        StatsResponse response = new StatsResponse(machineId, start, end, eventsCount, defectsCount, avgDefectRate, status);
+        Instant horizon = getRetentionHorizonIfTruncated(start);
+        if (horizon != null) {
+            response.setComplete(false);
+            response.setRetentionHorizon(horizon);
+        }
+        return response;
     }
     
-    public List<TopDefectLineResponse> getTopDefectLines(Instant from, Instant to, int limit) {
-        List<Object[]> results = eventRepository.findTopDefectLinesByTimeWindow(from, to);
+    /**
+     * Per-interval stats for one machine, computed in one grouped query.
+     * Buckets are aligned to UTC multiples of the interval since the epoch,
+     * and empty buckets are returned as zero points so charts need no gap
+     * filling.
+     */
+    @Transactional(readOnly = true)
+    public TimeSeriesResponse getMachineTimeSeries(String machineId, Instant start, Instant end, Duration interval) {
+        long intervalSeconds = interval.getSeconds();
+        if (intervalSeconds < 1 || interval.getNano() != 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "interval must be a whole number of seconds");
+        }
+        if (!end.isAfter(start)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "end must be after start");
+        }
+        
+        Instant alignedStart = Instant.ofEpochSecond(Math.floorDiv(start.getEpochSecond(), intervalSeconds) * intervalSeconds);
+        long spanSeconds = end.getEpochSecond() - alignedStart.getEpochSecond() + (end.getNano() > 0 ? 1 : 0);
+        long pointCount = (spanSeconds + intervalSeconds - 1) / intervalSeconds;
+        if (pointCount > maxTimeSeriesPoints) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Requested " + pointCount + " points, the maximum is " + maxTimeSeriesPoints);
+        }
+        Instant alignedEnd = alignedStart.plusSeconds(pointCount * intervalSeconds);
         
-        List<TopDefectLineResponse> responses = new ArrayList<>();
-        int count = 0;
+        StatsQueryEvent queryEvent = new StatsQueryEvent();
+        queryEvent.begin();
+        List<Object[]> rows = factoryMetrics.queryTimer("timeseries", null).record(() ->
+                eventRepository.aggregateByInterval(machineId, alignedStart, alignedEnd, intervalSeconds));
+        commitQueryEvent(queryEvent, "timeseries", machineId, null, alignedStart, alignedEnd);
+        
+        long[] events = new long[(int) pointCount];
+        long[] defects = new long[(int) pointCount];
+        for (Object[] row : rows) {
+            int bucket = ((Number) row[0]).intValue();
+            events[bucket] = ((Number) row[1]).longValue();
+            defects[bucket] = ((Number) row[2]).longValue();
+        }
+        coldStorage.addBuckets(machineId, alignedStart, alignedEnd, intervalSeconds, events, defects);
         
-        for (Object[] result : results) {
-            if (count >= limit) break;
-            
-            String lineId = (String) result[0];
-            Long totalDefects = (Long) result[1];
-            Long eventCount = (Long) result[2];
-            
-            responses.add(new TopDefectLineResponse(lineId, totalDefects, eventCount));
-            count++;
+        List<TimeSeriesResponse.Point> points = new ArrayList<>((int) pointCount);
+        for (int i = 0; i < pointCount; i++) {
+            Instant bucketStart = alignedStart.plusSeconds(i * intervalSeconds);
+            double avgDefectRate = calculateAvgDefectRate(defects[i], bucketStart, bucketStart.plusSeconds(intervalSeconds));
+            points.add(new TimeSeriesResponse.Point(bucketStart, events[i], defects[i], avgDefectRate,
+                    avgDefectRate < 2.0 ? "Healthy" : "Warning"));
         }
         
+        TimeSeriesResponse response = new TimeSeriesResponse(machineId, alignedStart, alignedEnd, intervalSeconds, points);
+        Instant horizon = getRetentionHorizonIfTruncated(alignedStart);
+        if (horizon != null) {
+            response.setComplete(false);
+            response.setRetentionHorizon(horizon);
+        }
+        return response;
+    }
+    
+    /**
+     * Ranks machines by total defects, scoped to one factory or fleet-wide
+     * when {@code factoryId} is null.
+     */
+    @Transactional(readOnly = true)
+    public List<TopDefectLineResponse> getTopDefectLines(String factoryId, Instant from, Instant to, int limit) {
+        StatsQueryEvent queryEvent = new StatsQueryEvent();
+        queryEvent.begin();
+        List<TopDefectLineResponse> responses = factoryMetrics.queryTimer("top-defect-lines", factoryId).record(() ->
+                coldStorage.overlaps(from, to)
+                        ? withCold(eventStore.findDefectLinesAtLeast(factoryId, from, to, 0),
+                                coldStorage.lineTotals(factoryId, from, to), 0, limit)
+                        : eventStore.findTopDefectLines(factoryId, from, to, limit));
+        commitQueryEvent(queryEvent, "top-defect-lines", null, factoryId, from, to);
+        return responses;
+    }
+    
+    /**
+     * Top machines ranked from the {@link DefectSketches} buckets within the
+     * window, with the ragged edges before the first and after the last
+     * whole bucket counted exactly. Each line carries bounds on its true
+     * total, and its event count may overestimate. Windows shorter than a
+     * bucket are answered exactly, with both bounds equal to the total.
+     */
+    @Transactional(readOnly = true)
+    public List<TopDefectLineResponse> getApproximateTopDefectLines(String factoryId, Instant from, Instant to, int limit) {
+        if (!defectSketches.isEnabled()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Approximate mode is disabled on this node");
+        }
+        StatsQueryEvent queryEvent = new StatsQueryEvent();
+        queryEvent.begin();
+        List<TopDefectLineResponse> responses = factoryMetrics.queryTimer("top-defect-lines-approximate", factoryId).record(() -> {
+            DefectSketches.Window window = defectSketches.cover(from, to);
+            if (window == null) {
+                List<TopDefectLineResponse> exact = getTopDefectLines(factoryId, from, to, limit);
+                exact.forEach(line -> {
+                    line.setTotalDefectsLowerBound(line.getTotalDefects());
+                    line.setTotalDefectsUpperBound(line.getTotalDefects());
+                });
+                return exact;
+            }
+            List<TopDefectLineResponse> edges = new ArrayList<>();
+            if (from.isBefore(window.getCoveredStart())) {
+                // stored times are whole microseconds
+                edges.addAll(getDefectLinesAtLeast(factoryId, from, window.getCoveredStart().minusNanos(1_000), 0));
+            }
+            if (!to.isBefore(window.getCoveredEnd())) {
+                edges.addAll(getDefectLinesAtLeast(factoryId, window.getCoveredEnd(), to, 0));
+            }
+            Map<String, long[]> lines = window.lines(factoryId,
+                    edges.stream().map(TopDefectLineResponse::getLineId).toList());
+            for (TopDefectLineResponse edge : edges) {
+                long[] bounds = lines.get(edge.getLineId());
+                bounds[0] += edge.getTotalDefects();
+                bounds[1] += edge.getTotalDefects();
+                bounds[2] += edge.getTotalDefects();
+                bounds[3] += edge.getEventCount();
+            }
+            return lines.entrySet().stream()
+                    .filter(entry -> entry.getValue()[2] > 0 || entry.getValue()[3] > 0)
+                    .map(entry -> {
+                        long[] bounds = entry.getValue();
+                        TopDefectLineResponse line = new TopDefectLineResponse(entry.getKey(), bounds[1], bounds[3]);
+                        line.setTotalDefectsLowerBound(bounds[0]);
+                        line.setTotalDefectsUpperBound(bounds[2]);
+                        return line;
+                    })
+                    .sorted(Comparator.comparingLong(TopDefectLineResponse::getTotalDefects).reversed()
+                            .thenComparing(TopDefectLineResponse::getLineId))
+                    .limit(limit)
+                    .toList();
+        });
+        commitQueryEvent(queryEvent, "top-defect-lines-approximate", null, factoryId, from, to);
         return responses;
     }
     
-    private static double calculateAvgDefectRate(long defectsCount, Instant start, Instant end) {
+    /**
+     * Every machine with at least {@code minDefects} known defects on this
+     * node; a federated top-K query asks each node for these.
+     */
+    @Transactional(readOnly = true)
+    public List<TopDefectLineResponse> getDefectLinesAtLeast(String factoryId, Instant from, Instant to, long minDefects) {
+        return factoryMetrics.queryTimer("defect-lines-threshold", factoryId).record(() ->
+                coldStorage.overlaps(from, to)
+                        ? withCold(eventStore.findDefectLinesAtLeast(factoryId, from, to, 0),
+                                coldStorage.lineTotals(factoryId, from, to), minDefects, Integer.MAX_VALUE)
+                        : eventStore.findDefectLinesAtLeast(factoryId, from, to, minDefects));
+    }
+    
+    /**
+     * This node's totals for the given machines.
+     */
+    @Transactional(readOnly = true)
+    public List<TopDefectLineResponse> getDefectLines(String factoryId, Instant from, Instant to, Collection<String> lineIds) {
+        return factoryMetrics.queryTimer("defect-lines", factoryId).record(() -> {
+            List<TopDefectLineResponse> hot = eventStore.findDefectLines(factoryId, from, to, lineIds);
+            if (!coldStorage.overlaps(from, to)) {
+                return hot;
+            }
+            Map<String, long[]> cold = coldStorage.lineTotals(factoryId, from, to);
+            cold.keySet().retainAll(lineIds);
+            return withCold(hot, cold, 0, Integer.MAX_VALUE);
+        });
+    }
+    
+    /**
+     * Adds tiered per-machine totals to the events table's, then keeps the
+     * top {@code limit} machines with at least {@code minDefects}.
+     */
+    private static List<TopDefectLineResponse> withCold(List<TopDefectLineResponse> hot, Map<String, long[]> cold,
+                                                        long minDefects, int limit) {
+        Map<String, long[]> lines = new HashMap<>(cold);
+        for (TopDefectLineResponse line : hot) {
+            long[] totals = lines.computeIfAbsent(line.getLineId(), id -> new long[2]);
+            totals[0] += line.getTotalDefects();
+            totals[1] += line.getEventCount();
+        }
+        return lines.entrySet().stream()
+                .filter(entry -> entry.getValue()[0] >= minDefects)
+                .map(entry -> new TopDefectLineResponse(entry.getKey(), entry.getValue()[0], entry.getValue()[1]))
+                .sorted(Comparator.comparingLong(TopDefectLineResponse::getTotalDefects).reversed()
+                        .thenComparing(TopDefectLineResponse::getLineId))
+                .limit(limit)
+                .toList();
+    }
+    
+    /**
+     * Returns the raw retention horizon when a window starting at {@code from}
+     * reaches past it, otherwise {@code null}.
+     */
+    public Instant getRetentionHorizonIfTruncated(Instant from) {
+        Instant horizon = retentionService.getRawHorizon();
+        if (horizon != null && from.isBefore(horizon)) {
+            return horizon;
+        }
+        return null;
+    }
+    
+    private static void commitQueryEvent(StatsQueryEvent event, String query, String machineId, String factoryId,
+                                         Instant start, Instant end) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.query = query;
+            event.machineId = machineId;
+            event.factoryId = factoryId;
+            event.windowSeconds = ChronoUnit.SECONDS.between(start, end);
+            event.commit();
+        }
+    }
+    
+    static double calculateAvgDefectRate(long defectsCount, Instant start, Instant end) {
         double windowHours = ChronoUnit.SECONDS.between(start, end) / 3600.0;
         
         if (windowHours <= 0) {
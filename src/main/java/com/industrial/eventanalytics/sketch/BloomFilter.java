@@ -0,0 +1,46 @@
+package com.industrial.eventanalytics.sketch;
+
+/**
+ * Bloom filter over string items, sized at ten bits and seven probes per
+ * expected item for about a 1% false positive rate. Never reports a false
+ * negative. Not thread-safe while items are added; safe to query
+ * concurrently afterwards.
+ */
+public class BloomFilter {
+    
+    private static final int BITS_PER_ITEM = 10;
+    private static final int PROBES = 7;
+    
+    private final long[] words;
+    private final long bits;
+    
+    public BloomFilter(int expectedItems) {
+        this.words = new long[Math.max(1, (int) ((Math.max(1, expectedItems) * (long) BITS_PER_ITEM + 63) / 64))];
+        this.bits = words.length * 64L;
+    }
+    
+    public void add(String item) {
+        long hash = CountMinSketch.hash(item);
+        for (int probe = 0; probe < PROBES; probe++) {
+            long bit = index(hash, probe);
+            words[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+    
+    public boolean mightContain(String item) {
+        long hash = CountMinSketch.hash(item);
+        for (int probe = 0; probe < PROBES; probe++) {
+            long bit = index(hash, probe);
+            if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private long index(long hash, int probe) {
+        // double hashing: h1 + probe * h2
+        long combined = (hash & 0xffffffffL) + probe * (hash >>> 32);
+        return Long.remainderUnsigned(combined, bits);
+    }
+}
@@ -0,0 +1,71 @@
+package com.industrial.eventanalytics.sketch;
+
+/**
+ * Count-Min sketch over string items. With non-negative true totals the
+ * estimate never underestimates, also when some updates are negative, and
+ * exceeds the true total by at most {@code e / width} of the sketch's
+ * total weight with probability {@code 1 - exp(-depth)}. Not thread-safe.
+ */
+public class CountMinSketch {
+    
+    private final long[][] cells;
+    private final int width;
+    private long total;
+    
+    public CountMinSketch(int depth, int width) {
+        this.cells = new long[depth][width];
+        this.width = width;
+    }
+    
+    public void add(String item, long weight) {
+        long hash = hash(item);
+        for (int row = 0; row < cells.length; row++) {
+            cells[row][index(hash, row)] += weight;
+        }
+        total += weight;
+    }
+    
+    /** Adds another sketch of the same dimensions cell by cell. */
+    public void merge(CountMinSketch other) {
+        if (other.cells.length != cells.length || other.width != width) {
+            throw new IllegalArgumentException("Count-Min sketches of different dimensions cannot be merged");
+        }
+        for (int row = 0; row < cells.length; row++) {
+            for (int column = 0; column < width; column++) {
+                cells[row][column] += other.cells[row][column];
+            }
+        }
+        total += other.total;
+    }
+    
+    public long estimate(String item) {
+        long hash = hash(item);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < cells.length; row++) {
+            estimate = Math.min(estimate, cells[row][index(hash, row)]);
+        }
+        return estimate;
+    }
+    
+    public long getTotal() {
+        return total;
+    }
+    
+    private int index(long hash, int row) {
+        // double hashing: h1 + row * h2
+        long combined = (hash & 0xffffffffL) + row * (hash >>> 32);
+        return (int) Long.remainderUnsigned(combined, width);
+    }
+    
+    static long hash(String item) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < item.length(); i++) {
+            hash ^= item.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
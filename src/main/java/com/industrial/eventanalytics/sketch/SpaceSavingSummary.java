@@ -0,0 +1,97 @@
+package com.industrial.eventanalytics.sketch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Weighted Space-Saving heavy-hitter summary: at most {@code capacity}
+ * monitored items, each with a count that never underestimates the item's
+ * true total and an error such that {@code count - error} never
+ * overestimates it. An item that is not monitored has a true total of at
+ * most {@link #getFloor()}.
+ * 
+ * Negative weights (corrections lowering an earlier value) are applied to
+ * monitored items only, which keeps both bounds valid as long as true
+ * totals stay non-negative. The floor is the largest count ever evicted
+ * rather than the current minimum, so it stays a valid bound after a
+ * decrement. Not thread-safe.
+ */
+public class SpaceSavingSummary {
+    
+    private final int capacity;
+    private final Map<String, long[]> counters = new HashMap<>();
+    private long floor;
+    
+    public SpaceSavingSummary(int capacity) {
+        this.capacity = capacity;
+    }
+    
+    public void add(String item, long weight) {
+        long[] counter = counters.get(item);
+        if (counter != null) {
+            counter[0] += weight;
+            return;
+        }
+        if (weight <= 0) {
+            return;
+        }
+        if (counters.size() >= capacity) {
+            String evicted = null;
+            long min = Long.MAX_VALUE;
+            for (Map.Entry<String, long[]> entry : counters.entrySet()) {
+                if (entry.getValue()[0] < min) {
+                    min = entry.getValue()[0];
+                    evicted = entry.getKey();
+                }
+            }
+            counters.remove(evicted);
+            floor = Math.max(floor, min);
+        }
+        counters.put(item, new long[]{floor + weight, floor});
+    }
+    
+    /**
+     * Folds another summary into this one, so that both bounds hold for the
+     * summed totals. An item monitored on one side only counts the other
+     * side's floor as both count and error; when more than {@code capacity}
+     * items result, the smallest are evicted into the floor.
+     */
+    public void merge(SpaceSavingSummary other) {
+        Map<String, long[]> merged = new HashMap<>();
+        for (Map.Entry<String, long[]> entry : counters.entrySet()) {
+            long[] mine = entry.getValue();
+            long[] theirs = other.counters.get(entry.getKey());
+            merged.put(entry.getKey(), theirs == null
+                    ? new long[]{mine[0] + other.floor, mine[1] + other.floor}
+                    : new long[]{mine[0] + theirs[0], mine[1] + theirs[1]});
+        }
+        for (Map.Entry<String, long[]> entry : other.counters.entrySet()) {
+            if (!counters.containsKey(entry.getKey())) {
+                long[] theirs = entry.getValue();
+                merged.put(entry.getKey(), new long[]{theirs[0] + floor, theirs[1] + floor});
+            }
+        }
+        floor += other.floor;
+        if (merged.size() > capacity) {
+            List<Map.Entry<String, long[]>> ranked = new ArrayList<>(merged.entrySet());
+            ranked.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+            for (Map.Entry<String, long[]> evicted : ranked.subList(capacity, ranked.size())) {
+                floor = Math.max(floor, evicted.getValue()[0]);
+                merged.remove(evicted.getKey());
+            }
+        }
+        counters.clear();
+        counters.putAll(merged);
+    }
+    
+    /** Monitored items as {@code {count, error}}; the arrays are live. */
+    public Map<String, long[]> getCounters() {
+        return counters;
+    }
+    
+    public long getFloor() {
+        return floor;
+    }
+}
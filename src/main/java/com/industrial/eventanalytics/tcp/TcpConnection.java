@@ -0,0 +1,184 @@
+package com.industrial.eventanalytics.tcp;
+
+import com.industrial.eventanalytics.codec.EventDecoder;
+import com.industrial.eventanalytics.dto.EventRequest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * State of one gateway connection. Only the selector thread touches it,
+ * except for {@link Chunk#response}, which workers publish.
+ * 
+ * Records are framed out of the pooled read buffer one line at a time; a
+ * blank line closes the current chunk. Framing stops as soon as a chunk is
+ * waiting to be dispatched, leaving the rest of the bytes in the buffer, so
+ * a connection whose chunks cannot be dispatched stops consuming input.
+ */
+class TcpConnection {
+    
+    static final String MALFORMED_RECORD = "MALFORMED_RECORD";
+    static final String CHUNK_TOO_LARGE = "CHUNK_TOO_LARGE";
+    static final String LINE_TOO_LONG = "LINE_TOO_LONG";
+    static final String PROCESSING_ERROR = "PROCESSING_ERROR";
+    
+    static class Chunk {
+        final List<EventRequest> events;
+        volatile String response;
+        
+        Chunk(List<EventRequest> events) {
+            this.events = events;
+        }
+        
+        static Chunk nack(String reason, String message) {
+            Chunk chunk = new Chunk(List.of());
+            chunk.response = "NACK " + reason + " " + message;
+            return chunk;
+        }
+        
+        boolean isDone() {
+            return response != null;
+        }
+    }
+    
+    final SocketChannel channel;
+    final Deque<Chunk> waiting = new ArrayDeque<>();
+    final Deque<Chunk> outstanding = new ArrayDeque<>();
+    final Deque<ByteBuffer> writes = new ArrayDeque<>();
+    SelectionKey key;
+    ByteBuffer readBuffer;
+    int inFlight;
+    boolean inputClosed;
+    boolean readsPaused;
+    
+    private final byte[] line;
+    private List<EventRequest> current = new ArrayList<>();
+    private String error;
+    private String errorMessage;
+    private boolean discardingLine;
+    private int recordNumber;
+    
+    TcpConnection(SocketChannel channel, ByteBuffer readBuffer) {
+        this.channel = channel;
+        this.readBuffer = readBuffer;
+        this.line = new byte[readBuffer.capacity()];
+    }
+    
+    /**
+     * Frames complete lines from the read buffer (left in write mode) until
+     * a chunk is waiting or no complete line is left.
+     */
+    void frame(EventDecoder decoder, int maxChunkEvents) {
+        readBuffer.flip();
+        while (waiting.isEmpty()) {
+            int newline = indexOfNewline(readBuffer);
+            if (newline < 0) {
+                if (readBuffer.remaining() == readBuffer.capacity() || discardingLine) {
+                    // no room left to complete the line: fail the chunk and skip to the next newline
+                    if (!discardingLine) {
+                        recordNumber++;
+                        fail(LINE_TOO_LONG, "record " + recordNumber + " exceeds " + line.length + " bytes");
+                    }
+                    discardingLine = true;
+                    readBuffer.position(readBuffer.limit());
+                }
+                break;
+            }
+            int length = newline - readBuffer.position();
+            if (discardingLine) {
+                readBuffer.position(newline + 1);
+                discardingLine = false;
+                continue;
+            }
+            readBuffer.get(line, 0, length);
+            readBuffer.get();
+            onLine(decoder, length, maxChunkEvents);
+        }
+        readBuffer.compact();
+    }
+    
+    /**
+     * Called once the peer has shut down its output and no complete line is
+     * buffered: an unterminated last line and an open chunk are still
+     * processed.
+     */
+    void finishInput(EventDecoder decoder, int maxChunkEvents) {
+        readBuffer.flip();
+        int length = readBuffer.remaining();
+        if (length > 0 && !discardingLine) {
+            readBuffer.get(line, 0, length);
+            onLine(decoder, length, maxChunkEvents);
+        }
+        readBuffer.clear();
+        endChunk();
+    }
+    
+    private void onLine(EventDecoder decoder, int length, int maxChunkEvents) {
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        if (length == 0) {
+            endChunk();
+            return;
+        }
+        recordNumber++;
+        if (error != null) {
+            return;
+        }
+        if (current.size() >= maxChunkEvents) {
+            fail(CHUNK_TOO_LARGE, "chunk exceeds " + maxChunkEvents + " records");
+            return;
+        }
+        try {
+            EventRequest event = decoder.decodeEvent(line, 0, length);
+            if (event == null) {
+                fail(MALFORMED_RECORD, "record " + recordNumber + " is not an event object");
+                return;
+            }
+            current.add(event);
+        } catch (IOException e) {
+            fail(MALFORMED_RECORD, "record " + recordNumber + " is not valid JSON");
+        }
+    }
+    
+    private void fail(String reason, String message) {
+        if (error == null) {
+            error = reason;
+            errorMessage = message;
+        }
+    }
+    
+    private void endChunk() {
+        if (error != null) {
+            waiting.add(Chunk.nack(error, errorMessage));
+        } else if (!current.isEmpty()) {
+            waiting.add(new Chunk(current));
+        } else {
+            return;
+        }
+        current = new ArrayList<>();
+        recordNumber = 0;
+        error = null;
+        errorMessage = null;
+    }
+    
+    /** True once every chunk has been answered and every answer written. */
+    boolean isDrained() {
+        return waiting.isEmpty() && outstanding.isEmpty() && writes.isEmpty();
+    }
+    
+    private static int indexOfNewline(ByteBuffer buffer) {
+        for (int i = buffer.position(); i < buffer.limit(); i++) {
+            if (buffer.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,416 @@
+package com.industrial.eventanalytics.tcp;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.industrial.eventanalytics.cluster.ClusterRouter;
+import com.industrial.eventanalytics.codec.EventDecoder;
+import com.industrial.eventanalytics.dto.BatchResponse;
+import com.industrial.eventanalytics.service.AdaptiveConcurrencyLimiter;
+import com.industrial.eventanalytics.service.ConcurrencyLimiters;
+import com.industrial.eventanalytics.tcp.TcpConnection.Chunk;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Line-protocol ingest for gateways that keep a connection open and stream
+ * records instead of posting HTTP batches.
+ * 
+ * Each line is one event record in the same JSON shape as the batch
+ * endpoint; a blank line ends a chunk. Every chunk is answered with exactly
+ * one line, in the order the chunks were sent: {@code ACK <batch response>}
+ * once it went through the same validation and dedup pipeline as
+ * {@code POST /events/batch}, or {@code NACK <reason> <message>} if the
+ * chunk could not be processed (nothing in a NACKed chunk is stored).
+ * 
+ * A single selector thread does all socket I/O and framing out of pooled
+ * direct buffers; chunks are handed to a small worker pool. When a
+ * connection has too many chunks in flight, the worker queue is full, or the
+ * ingest concurrency limiter refuses, the connection stops being read until
+ * capacity frees up, so a fast gateway is slowed down by TCP flow control
+ * rather than by unbounded buffering here. Never lazily initialised, since
+ * nothing else references the listener.
+ */
+@Component
+@Lazy(false)
+@ConditionalOnProperty(name = "ingest.tcp.enabled", havingValue = "true")
+public class TcpIngestServer {
+    
+    private static final Logger log = LoggerFactory.getLogger(TcpIngestServer.class);
+    
+    private static final long SELECT_TIMEOUT_MS = 50;
+    
+    @Autowired
+    private ClusterRouter clusterRouter;
+    
+    @Autowired
+    private ConcurrencyLimiters limiters;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Autowired
+    private EventDecoder eventDecoder;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${ingest.tcp.host:0.0.0.0}")
+    private String host;
+    
+    @Value("${ingest.tcp.port:9090}")
+    private int port;
+    
+    @Value("${ingest.tcp.buffer-size:65536}")
+    private int bufferSize;
+    
+    @Value("${ingest.tcp.pooled-buffers:64}")
+    private int pooledBuffers;
+    
+    @Value("${ingest.tcp.max-connections:256}")
+    private int maxConnections;
+    
+    @Value("${ingest.tcp.max-chunk-events:1000}")
+    private int maxChunkEvents;
+    
+    @Value("${ingest.tcp.workers:4}")
+    private int workerCount;
+    
+    @Value("${ingest.tcp.max-pending-chunks:64}")
+    private int maxPendingChunks;
+    
+    @Value("${ingest.tcp.max-inflight-chunks-per-connection:4}")
+    private int maxInFlightPerConnection;
+    
+    private final Set<TcpConnection> connections = new LinkedHashSet<>();
+    private final Set<TcpConnection> paused = new LinkedHashSet<>();
+    private final ConcurrentLinkedQueue<TcpConnection> completed = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private DirectBufferPool bufferPool;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private ExecutorService workers;
+    private Thread selectorThread;
+    private int pendingChunks;
+    private Counter acks;
+    private Counter nacks;
+    private Counter readPauses;
+    private volatile boolean running;
+    
+    @PostConstruct
+    void start() {
+        bufferPool = new DirectBufferPool(bufferSize, pooledBuffers);
+        Gauge.builder("ingest.tcp.connections", openConnections, AtomicInteger::get)
+                .description("Open line-protocol connections")
+                .register(meterRegistry);
+        acks = Counter.builder("ingest.tcp.chunks").tag("outcome", "ack").register(meterRegistry);
+        nacks = Counter.builder("ingest.tcp.chunks").tag("outcome", "nack").register(meterRegistry);
+        readPauses = Counter.builder("ingest.tcp.read.pauses")
+                .description("Times a connection stopped being read because ingest was saturated")
+                .register(meterRegistry);
+        
+        try {
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.configureBlocking(false);
+            serverChannel.bind(new InetSocketAddress(host, port));
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open TCP ingest listener on " + host + ":" + port, e);
+        }
+        AtomicInteger workerIds = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "tcp-ingest-worker-" + workerIds.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = true;
+        selectorThread = new Thread(this::selectLoop, "tcp-ingest-selector");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+        log.info("TCP ingest listening on {}:{}", host, getLocalPort());
+    }
+    
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        selector.wakeup();
+        selectorThread.join(TimeUnit.SECONDS.toMillis(5));
+        workers.shutdown();
+        workers.awaitTermination(5, TimeUnit.SECONDS);
+        for (TcpConnection connection : new ArrayList<>(connections)) {
+            close(connection);
+        }
+        closeQuietly(serverChannel);
+        closeQuietly(selector);
+    }
+    
+    public int getLocalPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+    
+    private void selectLoop() {
+        while (running) {
+            try {
+                selector.select(SELECT_TIMEOUT_MS);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    TcpConnection connection = (TcpConnection) key.attachment();
+                    try {
+                        if (key.isWritable()) {
+                            flush(connection);
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            read(connection);
+                        }
+                    } catch (IOException e) {
+                        log.debug("TCP ingest connection {} failed", connection.channel, e);
+                        close(connection);
+                    }
+                }
+                
+                TcpConnection done;
+                while ((done = completed.poll()) != null) {
+                    done.inFlight--;
+                    pendingChunks--;
+                    if (connections.contains(done)) {
+                        serviceOrClose(done);
+                    }
+                }
+                if (!paused.isEmpty() && pendingChunks < maxPendingChunks) {
+                    for (TcpConnection connection : new ArrayList<>(paused)) {
+                        serviceOrClose(connection);
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("TCP ingest selector failed", e);
+            }
+        }
+    }
+    
+    private void serviceOrClose(TcpConnection connection) {
+        try {
+            service(connection);
+        } catch (IOException e) {
+            log.debug("TCP ingest connection {} failed", connection.channel, e);
+            close(connection);
+        }
+    }
+    
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        if (connections.size() >= maxConnections) {
+            log.warn("Refusing TCP ingest connection from {}: {} connections open",
+                    channel.getRemoteAddress(), connections.size());
+            closeQuietly(channel);
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        TcpConnection connection = new TcpConnection(channel, bufferPool.acquire());
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        connections.add(connection);
+        openConnections.incrementAndGet();
+    }
+    
+    private void read(TcpConnection connection) throws IOException {
+        if (connection.channel.read(connection.readBuffer) < 0) {
+            connection.inputClosed = true;
+            connection.key.interestOps(connection.key.interestOps() & ~SelectionKey.OP_READ);
+        }
+        service(connection);
+    }
+    
+    /**
+     * Dispatches and answers what it can, frames more of the buffered input
+     * and decides whether the connection may be read again.
+     */
+    private void service(TcpConnection connection) throws IOException {
+        while (true) {
+            dispatch(connection);
+            queueAnswers(connection);
+            if (!connection.waiting.isEmpty()) {
+                pauseReads(connection);
+                break;
+            }
+            connection.frame(eventDecoder, maxChunkEvents);
+            if (connection.waiting.isEmpty()) {
+                if (connection.inputClosed) {
+                    connection.finishInput(eventDecoder, maxChunkEvents);
+                    if (!connection.waiting.isEmpty()) {
+                        continue;
+                    }
+                    paused.remove(connection);
+                } else {
+                    resumeReads(connection);
+                }
+                break;
+            }
+        }
+        flush(connection);
+    }
+    
+    /** Hands waiting chunks to workers, in order, while there is capacity. */
+    private void dispatch(TcpConnection connection) {
+        while (!connection.waiting.isEmpty()) {
+            Chunk chunk = connection.waiting.peek();
+            if (chunk.isDone()) {
+                connection.outstanding.add(connection.waiting.poll());
+                continue;
+            }
+            if (connection.inFlight >= maxInFlightPerConnection || pendingChunks >= maxPendingChunks) {
+                return;
+            }
+            AdaptiveConcurrencyLimiter limiter = limiters.isEnabled() ? limiters.ingest() : null;
+            if (limiter != null && !limiter.tryAcquire()) {
+                limiters.recordRejected(limiter);
+                return;
+            }
+            connection.waiting.poll();
+            connection.outstanding.add(chunk);
+            connection.inFlight++;
+            pendingChunks++;
+            workers.execute(() -> {
+                long start = System.nanoTime();
+                boolean failed = true;
+                try {
+                    chunk.response = ack(clusterRouter.process(chunk.events, null));
+                    failed = false;
+                } catch (RuntimeException e) {
+                    log.warn("TCP ingest chunk of {} records failed", chunk.events.size(), e);
+                    chunk.response = "NACK " + TcpConnection.PROCESSING_ERROR + " " + singleLine(e.getMessage());
+                } finally {
+                    if (limiter != null) {
+                        limiter.release(System.nanoTime() - start, failed);
+                    }
+                    completed.add(connection);
+                    selector.wakeup();
+                }
+            });
+        }
+    }
+    
+    /** Turns answered chunks at the head of the connection into response lines. */
+    private void queueAnswers(TcpConnection connection) {
+        while (!connection.outstanding.isEmpty() && connection.outstanding.peek().isDone()) {
+            String response = connection.outstanding.poll().response;
+            (response.startsWith("ACK") ? acks : nacks).increment();
+            connection.writes.add(ByteBuffer.wrap((response + "\n").getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+    
+    private void flush(TcpConnection connection) throws IOException {
+        while (!connection.writes.isEmpty()) {
+            ByteBuffer head = connection.writes.peek();
+            connection.channel.write(head);
+            if (head.hasRemaining()) {
+                connection.key.interestOps(connection.key.interestOps() | SelectionKey.OP_WRITE);
+                return;
+            }
+            connection.writes.poll();
+        }
+        if (connection.key.isValid()) {
+            connection.key.interestOps(connection.key.interestOps() & ~SelectionKey.OP_WRITE);
+        }
+        closeIfDrained(connection);
+    }
+    
+    private void pauseReads(TcpConnection connection) {
+        if (!connection.readsPaused) {
+            connection.readsPaused = true;
+            readPauses.increment();
+        }
+        paused.add(connection);
+        if (connection.key.isValid()) {
+            connection.key.interestOps(connection.key.interestOps() & ~SelectionKey.OP_READ);
+        }
+    }
+    
+    private void resumeReads(TcpConnection connection) {
+        connection.readsPaused = false;
+        paused.remove(connection);
+        if (connection.key.isValid() && !connection.inputClosed) {
+            connection.key.interestOps(connection.key.interestOps() | SelectionKey.OP_READ);
+        }
+    }
+    
+    private void closeIfDrained(TcpConnection connection) {
+        if (connection.inputClosed && connection.isDrained()) {
+            close(connection);
+        }
+    }
+    
+    private void close(TcpConnection connection) {
+        if (!connections.remove(connection)) {
+            return;
+        }
+        paused.remove(connection);
+        openConnections.decrementAndGet();
+        if (connection.key != null) {
+            connection.key.cancel();
+        }
+        closeQuietly(connection.channel);
+        bufferPool.release(connection.readBuffer);
+    }
+    
+    private String ack(BatchResponse response) {
+        try {
+            return "ACK " + objectMapper.writeValueAsString(response);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    private static String singleLine(String message) {
+        return message == null ? "" : message.replace('\r', ' ').replace('\n', ' ');
+    }
+    
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.industrial.eventanalytics.tiering;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The cold tier: segment files in {@code tiering.directory}, each holding
+ * events moved out of the events table by {@link TieringService}. Answers
+ * the same aggregates as the stats queries for the part of a window that
+ * has been tiered. Windows that miss every segment cost one range check
+ * per segment.
+ */
+@Service
+public class ColdStorage {
+    
+    private static final Logger log = LoggerFactory.getLogger(ColdStorage.class);
+    
+    static final String SEGMENT_SUFFIX = ".seg";
+    static final String PENDING_SUFFIX = ".pending";
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${tiering.directory:data/segments}")
+    private String directory;
+    
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    
+    @PostConstruct
+    void init() throws IOException {
+        Path dir = getDirectory();
+        if (Files.isDirectory(dir)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + SEGMENT_SUFFIX)) {
+                for (Path file : files) {
+                    segments.add(Segment.open(file));
+                }
+            }
+        }
+        Gauge.builder("tiering.segments", segments, List::size)
+                .description("Cold segment files being served")
+                .register(meterRegistry);
+        Gauge.builder("tiering.segment.bytes", this, ColdStorage::totalBytes)
+                .register(meterRegistry);
+        if (!segments.isEmpty()) {
+            log.info("Serving {} cold segments from {}", segments.size(), dir);
+        }
+    }
+    
+    public Path getDirectory() {
+        return Paths.get(directory);
+    }
+    
+    List<Path> pendingFiles() throws IOException {
+        List<Path> pending = new ArrayList<>();
+        if (Files.isDirectory(getDirectory())) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(getDirectory(), "*" + PENDING_SUFFIX)) {
+                files.forEach(pending::add);
+            }
+        }
+        return pending;
+    }
+    
+    /** Renames a fully written pending file to its segment name and starts serving it. */
+    Segment publish(Path pending) throws IOException {
+        String name = pending.getFileName().toString();
+        Path target = pending.resolveSibling(name.substring(0, name.length() - PENDING_SUFFIX.length()) + SEGMENT_SUFFIX);
+        Files.move(pending, target, StandardCopyOption.ATOMIC_MOVE);
+        Segment segment = Segment.open(target);
+        segments.add(segment);
+        return segment;
+    }
+    
+    /**
+     * Deletes segments holding only events before {@code horizon}, once
+     * retention no longer keeps them.
+     * @return the number of segments removed
+     */
+    int dropBefore(Instant horizon) {
+        long horizonMicros = ceilMicros(horizon);
+        int dropped = 0;
+        for (Segment segment : segments) {
+            if (segment.getMaxMicros() < horizonMicros) {
+                segments.remove(segment);
+                try {
+                    Files.deleteIfExists(segment.getPath());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                dropped++;
+            }
+        }
+        return dropped;
+    }
+    
+    public List<Segment> getSegments() {
+        return List.copyOf(segments);
+    }
+    
+    public long totalBytes() {
+        return segments.stream().mapToLong(Segment::getSize).sum();
+    }
+    
+    /** Whether the event has been moved to a segment. */
+    public boolean containsEventId(String eventId) {
+        for (Segment segment : segments) {
+            if (segment.containsEventId(eventId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /** Whether any tiered event may have {@code from <= eventTime <= to}. */
+    public boolean overlaps(Instant from, Instant to) {
+        long lo = ceilMicros(from);
+        long hi = floorMicros(to) + 1;
+        return segments.stream().anyMatch(segment -> segment.overlaps(lo, hi));
+    }
+    
+    /**
+     * Tiered events and known defects of a machine with
+     * {@code start <= eventTime < end}, as {@code {events, defects}}.
+     */
+    public long[] machineTotals(String machineId, Instant start, Instant end) {
+        long[] totals = new long[2];
+        long lo = ceilMicros(start);
+        long hi = ceilMicros(end);
+        for (Segment segment : segments) {
+            segment.addMachineTotals(machineId, lo, hi, totals);
+        }
+        return totals;
+    }
+    
+    /**
+     * Tiered events and known defects with {@code start <= eventTime < end}
+     * per {@code [machineId, factoryId]}, as {@code {events, defects}}.
+     */
+    public Map<List<String>, long[]> entryTotals(String factoryId, Instant start, Instant end) {
+        Map<List<String>, long[]> totals = new HashMap<>();
+        long lo = ceilMicros(start);
+        long hi = ceilMicros(end);
+        for (Segment segment : segments) {
+            segment.addEntryTotals(factoryId, lo, hi, totals);
+        }
+        return totals;
+    }
+    
+    /**
+     * Cursors over the tiered events with {@code start <= eventTime < end},
+     * one per segment that may hold any, each in event time order.
+     */
+    public List<Segment.Rows> rows(String machineId, String factoryId, Instant start, Instant end) {
+        List<Segment.Rows> cursors = new ArrayList<>();
+        long lo = ceilMicros(start);
+        long hi = ceilMicros(end);
+        for (Segment segment : segments) {
+            Segment.Rows rows = segment.rows(machineId, factoryId, lo, hi);
+            if (rows != null) {
+                cursors.add(rows);
+            }
+        }
+        return cursors;
+    }
+    
+    /**
+     * Tiered known defects and known-defect events per machine with
+     * {@code from <= eventTime <= to}, as {@code {defects, events}}.
+     */
+    public Map<String, long[]> lineTotals(String factoryId, Instant from, Instant to) {
+        Map<String, long[]> lines = new HashMap<>();
+        long lo = ceilMicros(from);
+        long hi = floorMicros(to) + 1;
+        for (Segment segment : segments) {
+            segment.addLineTotals(factoryId, lo, hi, lines);
+        }
+        return lines;
+    }
+    
+    /**
+     * Adds tiered events and known defects of a machine to per-interval
+     * buckets numbered from {@code start}, covering {@code [start, end)}.
+     */
+    public void addBuckets(String machineId, Instant start, Instant end, long intervalSeconds,
+                           long[] events, long[] defects) {
+        long lo = ceilMicros(start);
+        long hi = ceilMicros(end);
+        for (Segment segment : segments) {
+            segment.addBuckets(machineId, lo, hi, lo, intervalSeconds * 1_000_000L, events, defects);
+        }
+    }
+    
+    private static long floorMicros(Instant instant) {
+        return SegmentWriter.micros(instant);
+    }
+    
+    private static long ceilMicros(Instant instant) {
+        return SegmentWriter.micros(instant) + (instant.getNano() % 1_000 != 0 ? 1 : 0);
+    }
+}
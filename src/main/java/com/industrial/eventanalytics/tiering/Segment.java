@@ -0,0 +1,441 @@
+package com.industrial.eventanalytics.tiering;
+
+import com.industrial.eventanalytics.sketch.BloomFilter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.IntConsumer;
+
+/**
+ * One immutable cold segment, memory-mapped read-only. Rows are sorted by
+ * eventTime and stored column by column, all varint-encoded:
+ * <ul>
+ * <li>eventTime as the zigzag delta in microseconds from the previous row</li>
+ * <li>a dictionary index per row standing for its (machineId, factoryId)</li>
+ * <li>durationMs and defectCount (zigzag)</li>
+ * <li>eventId, read once on open into a Bloom filter, and again only to
+ * confirm a filter match or when recovering an interrupted move</li>
+ * </ul>
+ * The footer holds the dictionary with per-entry event count, known-defect
+ * count and sum, min/max defects and min/max eventTime, plus the segment's
+ * time range. A query whose window covers an entry's time range is answered
+ * from the footer; otherwise only the time, key and defect columns are
+ * scanned, stopping at the end of the window. Positions are read with
+ * absolute gets, so queries can run concurrently.
+ */
+public class Segment {
+    
+    private final Path path;
+    private final ByteBuffer data;
+    private final long size;
+    private final int rows;
+    private final long minMicros;
+    private final long maxMicros;
+    private final int timeOffset;
+    private final int keyOffset;
+    private final int durationOffset;
+    private final int defectOffset;
+    private final int eventIdOffset;
+    private final String[] machineIds;
+    private final String[] factoryIds;
+    private final long[] events;
+    private final long[] knownEvents;
+    private final long[] defects;
+    private final long[] entryMinMicros;
+    private final long[] entryMaxMicros;
+    private final BloomFilter eventIds;
+    
+    private Segment(Path path, MappedByteBuffer data) throws IOException {
+        this.path = path;
+        this.data = data;
+        this.size = data.capacity();
+        if (size < 5 + SegmentWriter.TRAILER_BYTES || data.getInt(0) != SegmentWriter.MAGIC
+                || data.getInt((int) size - Integer.BYTES) != SegmentWriter.MAGIC) {
+            throw new IOException(path + " is not a complete segment file");
+        }
+        if (data.get(4) != SegmentWriter.VERSION) {
+            throw new IOException(path + " has unsupported segment version " + data.get(4));
+        }
+        Cursor footer = new Cursor((int) data.getLong((int) size - SegmentWriter.TRAILER_BYTES));
+        rows = (int) footer.varLong(data);
+        minMicros = footer.zigZag(data);
+        maxMicros = footer.zigZag(data);
+        timeOffset = (int) footer.varLong(data);
+        keyOffset = (int) footer.varLong(data);
+        durationOffset = (int) footer.varLong(data);
+        defectOffset = (int) footer.varLong(data);
+        eventIdOffset = (int) footer.varLong(data);
+        int entries = (int) footer.varLong(data);
+        machineIds = new String[entries];
+        factoryIds = new String[entries];
+        events = new long[entries];
+        knownEvents = new long[entries];
+        defects = new long[entries];
+        entryMinMicros = new long[entries];
+        entryMaxMicros = new long[entries];
+        for (int i = 0; i < entries; i++) {
+            machineIds[i] = footer.string(data);
+            factoryIds[i] = footer.string(data);
+            events[i] = footer.varLong(data);
+            knownEvents[i] = footer.varLong(data);
+            defects[i] = footer.zigZag(data);
+            footer.zigZag(data); // min defects
+            footer.zigZag(data); // max defects
+            entryMinMicros[i] = footer.zigZag(data);
+            entryMaxMicros[i] = footer.zigZag(data);
+        }
+        eventIds = new BloomFilter(rows);
+        Cursor eventId = new Cursor(eventIdOffset);
+        for (int row = 0; row < rows; row++) {
+            eventIds.add(eventId.string(data));
+        }
+    }
+    
+    public static Segment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new Segment(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+    
+    public Path getPath() {
+        return path;
+    }
+    
+    public long getSize() {
+        return size;
+    }
+    
+    public int getRows() {
+        return rows;
+    }
+    
+    public long getMinMicros() {
+        return minMicros;
+    }
+    
+    public long getMaxMicros() {
+        return maxMicros;
+    }
+    
+    /** Whether any row may fall in {@code [lo, hi)} (epoch microseconds). */
+    public boolean overlaps(long lo, long hi) {
+        return rows > 0 && minMicros < hi && maxMicros >= lo;
+    }
+    
+    /**
+     * Adds the machine's event count and known-defect sum in {@code [lo, hi)}
+     * to {@code totals[0]} and {@code totals[1]}.
+     */
+    public void addMachineTotals(String machineId, long lo, long hi, long[] totals) {
+        boolean[] scan = select(machineId, null, lo, hi, key -> {
+            totals[0] += events[key];
+            totals[1] += defects[key];
+        });
+        if (scan != null) {
+            scanRows(scan, lo, hi, (key, micros, defectCount) -> {
+                totals[0]++;
+                if (defectCount != -1) {
+                    totals[1] += defectCount;
+                }
+            });
+        }
+    }
+    
+    /**
+     * Adds known defects and known-defect events per machine in
+     * {@code [lo, hi)}, within one factory or all when {@code factoryId} is
+     * null, to {@code lines} as {@code {defects, events}}.
+     */
+    public void addLineTotals(String factoryId, long lo, long hi, Map<String, long[]> lines) {
+        boolean[] scan = select(null, factoryId, lo, hi, key -> {
+            if (knownEvents[key] > 0) {
+                long[] line = lines.computeIfAbsent(machineIds[key], m -> new long[2]);
+                line[0] += defects[key];
+                line[1] += knownEvents[key];
+            }
+        });
+        if (scan != null) {
+            scanRows(scan, lo, hi, (key, micros, defectCount) -> {
+                if (defectCount != -1) {
+                    long[] line = lines.computeIfAbsent(machineIds[key], m -> new long[2]);
+                    line[0] += defectCount;
+                    line[1]++;
+                }
+            });
+        }
+    }
+    
+    /**
+     * Adds events and known defects in {@code [lo, hi)} per
+     * {@code (machineId, factoryId)}, within one factory or all when
+     * {@code factoryId} is null, to {@code totals} as {@code {events, defects}}.
+     */
+    public void addEntryTotals(String factoryId, long lo, long hi, Map<List<String>, long[]> totals) {
+        boolean[] scan = select(null, factoryId, lo, hi, key -> {
+            long[] entry = totals.computeIfAbsent(Arrays.asList(machineIds[key], factoryIds[key]), k -> new long[2]);
+            entry[0] += events[key];
+            entry[1] += defects[key];
+        });
+        if (scan != null) {
+            scanRows(scan, lo, hi, (key, micros, defectCount) -> {
+                long[] entry = totals.computeIfAbsent(Arrays.asList(machineIds[key], factoryIds[key]), k -> new long[2]);
+                entry[0]++;
+                if (defectCount != -1) {
+                    entry[1] += defectCount;
+                }
+            });
+        }
+    }
+    
+    /**
+     * Rows matching the filters (null matches all) in {@code [lo, hi)}, in
+     * event time order, or null when no row can match.
+     */
+    public Rows rows(String machineId, String factoryId, long lo, long hi) {
+        boolean[] selected = select(machineId, factoryId, lo, hi, null);
+        return selected == null ? null : new Rows(selected, lo, hi);
+    }
+    
+    /**
+     * Adds the machine's events and known defects in {@code [lo, hi)} to the
+     * buckets of width {@code intervalMicros} counted from {@code startMicros}.
+     */
+    public void addBuckets(String machineId, long lo, long hi, long startMicros, long intervalMicros,
+                           long[] bucketEvents, long[] bucketDefects) {
+        boolean[] scan = select(machineId, null, lo, hi, null);
+        if (scan != null) {
+            scanRows(scan, lo, hi, (key, micros, defectCount) -> {
+                int bucket = (int) ((micros - startMicros) / intervalMicros);
+                bucketEvents[bucket]++;
+                if (defectCount != -1) {
+                    bucketDefects[bucket] += defectCount;
+                }
+            });
+        }
+    }
+    
+    /**
+     * Hands every row with a known defect count to {@code visitor}, in
+     * event time order.
+     */
+    public void forEachKnownRow(RowVisitor visitor) {
+        if (rows == 0) {
+            return;
+        }
+        boolean[] all = new boolean[machineIds.length];
+        Arrays.fill(all, true);
+        scanRows(all, Long.MIN_VALUE, Long.MAX_VALUE, (key, micros, defectCount) -> {
+            if (defectCount != -1) {
+                visitor.accept(machineIds[key], factoryIds[key], micros, defectCount);
+            }
+        });
+    }
+    
+    /** eventId of the first row, or null for an empty segment. */
+    public String firstEventId() {
+        return rows == 0 ? null : new Cursor(eventIdOffset).string(data);
+    }
+    
+    /**
+     * Whether a row has this eventId. The eventId column is only scanned
+     * when the Bloom filter matches, i.e. for tiered ids and about 1% of
+     * the others.
+     */
+    public boolean containsEventId(String eventId) {
+        if (!eventIds.mightContain(eventId)) {
+            return false;
+        }
+        Cursor cursor = new Cursor(eventIdOffset);
+        for (int row = 0; row < rows; row++) {
+            if (eventId.equals(cursor.string(data))) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    public interface RowVisitor {
+        void accept(String machineId, String factoryId, long micros, int defectCount);
+    }
+    
+    private interface RowConsumer {
+        void accept(int key, long micros, int defectCount);
+    }
+    
+    /**
+     * Hands dictionary entries matching the filters whose time range lies
+     * entirely in the window to {@code whole}, and returns which entries
+     * need a row scan (null if none). A null {@code whole} scans every
+     * matching entry that overlaps the window.
+     */
+    private boolean[] select(String machineId, String factoryId, long lo, long hi, IntConsumer whole) {
+        if (!overlaps(lo, hi)) {
+            return null;
+        }
+        boolean[] scan = null;
+        for (int key = 0; key < machineIds.length; key++) {
+            if ((machineId != null && !machineId.equals(machineIds[key]))
+                    || (factoryId != null && !Objects.equals(factoryId, factoryIds[key]))
+                    || entryMinMicros[key] >= hi || entryMaxMicros[key] < lo) {
+                continue;
+            }
+            if (whole != null && entryMinMicros[key] >= lo && entryMaxMicros[key] < hi) {
+                whole.accept(key);
+            } else {
+                if (scan == null) {
+                    scan = new boolean[machineIds.length];
+                }
+                scan[key] = true;
+            }
+        }
+        return scan;
+    }
+    
+    private void scanRows(boolean[] selected, long lo, long hi, RowConsumer consumer) {
+        Cursor time = new Cursor(timeOffset);
+        Cursor key = new Cursor(keyOffset);
+        Cursor defect = new Cursor(defectOffset);
+        long micros = 0;
+        for (int row = 0; row < rows; row++) {
+            micros += time.zigZag(data);
+            if (micros >= hi) {
+                break;
+            }
+            int entry = (int) key.varLong(data);
+            int defectCount = (int) defect.zigZag(data);
+            if (micros >= lo && selected[entry]) {
+                consumer.accept(entry, micros, defectCount);
+            }
+        }
+    }
+    
+    /**
+     * Forward-only cursor decoding every column of the selected rows, one
+     * row per {@link #next()}. Not thread-safe.
+     */
+    public final class Rows {
+        private final boolean[] selected;
+        private final long lo;
+        private final long hi;
+        private final Cursor time = new Cursor(timeOffset);
+        private final Cursor key = new Cursor(keyOffset);
+        private final Cursor duration = new Cursor(durationOffset);
+        private final Cursor defect = new Cursor(defectOffset);
+        private final Cursor eventIdColumn = new Cursor(eventIdOffset);
+        private int row;
+        private long micros;
+        private int entry;
+        private long durationMs;
+        private int defectCount;
+        private String eventId;
+        
+        private Rows(boolean[] selected, long lo, long hi) {
+            this.selected = selected;
+            this.lo = lo;
+            this.hi = hi;
+        }
+        
+        /** Moves to the next selected row; false once there is none. */
+        public boolean next() {
+            while (row < rows) {
+                row++;
+                micros += time.zigZag(data);
+                if (micros >= hi) {
+                    row = rows;
+                    return false;
+                }
+                entry = (int) key.varLong(data);
+                durationMs = duration.zigZag(data);
+                defectCount = (int) defect.zigZag(data);
+                if (micros >= lo && selected[entry]) {
+                    eventId = eventIdColumn.string(data);
+                    return true;
+                }
+                eventIdColumn.skipString(data);
+            }
+            return false;
+        }
+        
+        public long getMicros() {
+            return micros;
+        }
+        
+        public Instant getEventTime() {
+            return Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000L), Math.floorMod(micros, 1_000_000L) * 1_000L);
+        }
+        
+        public String getEventId() {
+            return eventId;
+        }
+        
+        public String getMachineId() {
+            return machineIds[entry];
+        }
+        
+        public String getFactoryId() {
+            return factoryIds[entry];
+        }
+        
+        public long getDurationMs() {
+            return durationMs;
+        }
+        
+        public int getDefectCount() {
+            return defectCount;
+        }
+    }
+    
+    /** Read position for decoding varints from the shared mapped buffer. */
+    private static final class Cursor {
+        int position;
+        
+        Cursor(int position) {
+            this.position = position;
+        }
+        
+        long varLong(ByteBuffer data) {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data.get(position++);
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+        
+        long zigZag(ByteBuffer data) {
+            long value = varLong(data);
+            return (value >>> 1) ^ -(value & 1);
+        }
+        
+        String string(ByteBuffer data) {
+            int length = (int) varLong(data) - 1;
+            if (length < 0) {
+                return null;
+            }
+            byte[] utf8 = new byte[length];
+            data.get(position, utf8);
+            position += length;
+            return new String(utf8, StandardCharsets.UTF_8);
+        }
+        
+        void skipString(ByteBuffer data) {
+            int length = (int) varLong(data) - 1;
+            if (length > 0) {
+                position += length;
+            }
+        }
+    }
+}
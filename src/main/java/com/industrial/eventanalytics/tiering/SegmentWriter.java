@@ -0,0 +1,193 @@
+package com.industrial.eventanalytics.tiering;
+
+import com.industrial.eventanalytics.model.Event;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a run of events, ordered by eventTime, as one immutable segment
+ * file. The layout is described in {@link Segment}.
+ */
+final class SegmentWriter {
+    
+    static final int MAGIC = 0x45565347; // "EVSG"
+    static final byte VERSION = 1;
+    static final int TRAILER_BYTES = Long.BYTES + Integer.BYTES;
+    
+    private SegmentWriter() {}
+    
+    /** Per (machine, factory) dictionary entry: totals for the footer. */
+    private static final class Entry {
+        final String machineId;
+        final String factoryId;
+        long events;
+        long knownEvents;
+        long defects;
+        long minDefects = Long.MAX_VALUE;
+        long maxDefects = Long.MIN_VALUE;
+        long minMicros = Long.MAX_VALUE;
+        long maxMicros = Long.MIN_VALUE;
+        
+        Entry(String machineId, String factoryId) {
+            this.machineId = machineId;
+            this.factoryId = factoryId;
+        }
+    }
+    
+    /**
+     * Writes and fsyncs the segment; {@code events} must be sorted by eventTime.
+     * @return the file size
+     */
+    static long write(Path path, List<Event> events) throws IOException {
+        Column times = new Column();
+        Column keys = new Column();
+        Column durations = new Column();
+        Column defects = new Column();
+        Column eventIds = new Column();
+        Map<String, Map<String, Integer>> keyIndex = new HashMap<>();
+        Entry[] entries = new Entry[16];
+        int entryCount = 0;
+        long previousMicros = 0;
+        long minMicros = Long.MAX_VALUE;
+        long maxMicros = Long.MIN_VALUE;
+        
+        for (Event event : events) {
+            long micros = micros(event.getEventTime());
+            Integer key = keyIndex.computeIfAbsent(event.getMachineId(), m -> new HashMap<>()).get(event.getFactoryId());
+            if (key == null) {
+                key = entryCount++;
+                if (key == entries.length) {
+                    entries = Arrays.copyOf(entries, key * 2);
+                }
+                entries[key] = new Entry(event.getMachineId(), event.getFactoryId());
+                keyIndex.get(event.getMachineId()).put(event.getFactoryId(), key);
+            }
+            int defectCount = event.getDefectCount();
+            
+            times.zigZag(micros - previousMicros);
+            keys.varLong(key);
+            durations.zigZag(event.getDurationMs());
+            defects.zigZag(defectCount);
+            eventIds.string(event.getEventId());
+            
+            Entry entry = entries[key];
+            entry.events++;
+            if (defectCount != -1) {
+                entry.knownEvents++;
+                entry.defects += defectCount;
+                entry.minDefects = Math.min(entry.minDefects, defectCount);
+                entry.maxDefects = Math.max(entry.maxDefects, defectCount);
+            }
+            entry.minMicros = Math.min(entry.minMicros, micros);
+            entry.maxMicros = Math.max(entry.maxMicros, micros);
+            minMicros = Math.min(minMicros, micros);
+            maxMicros = Math.max(maxMicros, micros);
+            previousMicros = micros;
+        }
+        
+        int headerBytes = Integer.BYTES + 1;
+        long timeOffset = headerBytes;
+        long keyOffset = timeOffset + times.size;
+        long durationOffset = keyOffset + keys.size;
+        long defectOffset = durationOffset + durations.size;
+        long eventIdOffset = defectOffset + defects.size;
+        long footerOffset = eventIdOffset + eventIds.size;
+        
+        Column footer = new Column();
+        footer.varLong(events.size());
+        footer.zigZag(minMicros);
+        footer.zigZag(maxMicros);
+        footer.varLong(timeOffset);
+        footer.varLong(keyOffset);
+        footer.varLong(durationOffset);
+        footer.varLong(defectOffset);
+        footer.varLong(eventIdOffset);
+        footer.varLong(entryCount);
+        for (int i = 0; i < entryCount; i++) {
+            Entry entry = entries[i];
+            footer.string(entry.machineId);
+            footer.string(entry.factoryId);
+            footer.varLong(entry.events);
+            footer.varLong(entry.knownEvents);
+            footer.zigZag(entry.defects);
+            footer.zigZag(entry.knownEvents > 0 ? entry.minDefects : 0);
+            footer.zigZag(entry.knownEvents > 0 ? entry.maxDefects : 0);
+            footer.zigZag(entry.minMicros);
+            footer.zigZag(entry.maxMicros);
+        }
+        long size = footerOffset + footer.size + TRAILER_BYTES;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Segment " + path + " would be " + size + " bytes, over the 2 GB mapping limit");
+        }
+        
+        ByteBuffer header = ByteBuffer.allocate(headerBytes).putInt(MAGIC).put(VERSION).flip();
+        ByteBuffer trailer = ByteBuffer.allocate(TRAILER_BYTES).putLong(footerOffset).putInt(MAGIC).flip();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ByteBuffer[] parts = {header, times.buffer(), keys.buffer(), durations.buffer(), defects.buffer(),
+                    eventIds.buffer(), footer.buffer(), trailer};
+            long written = 0;
+            while (written < size) {
+                written += channel.write(parts);
+            }
+            channel.force(true);
+        }
+        return size;
+    }
+    
+    /** Epoch microseconds, the precision event times are stored with. */
+    static long micros(Instant instant) {
+        return instant.getEpochSecond() * 1_000_000L + instant.getNano() / 1_000;
+    }
+    
+    /** Growable byte array with LEB128 varint encoding. */
+    private static final class Column {
+        byte[] bytes = new byte[1024];
+        int size;
+        
+        void varLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+        
+        void zigZag(long value) {
+            varLong((value << 1) ^ (value >> 63));
+        }
+        
+        /** Length + 1 then UTF-8 bytes; a length of 0 encodes null. */
+        void string(String value) {
+            if (value == null) {
+                varLong(0);
+                return;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            varLong(utf8.length + 1L);
+            ensure(utf8.length);
+            System.arraycopy(utf8, 0, bytes, size, utf8.length);
+            size += utf8.length;
+        }
+        
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+        
+        ByteBuffer buffer() {
+            return ByteBuffer.wrap(bytes, 0, size);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.industrial.eventanalytics.tiering;
+
+import com.industrial.eventanalytics.model.Event;
+import com.industrial.eventanalytics.repository.EventRepository;
+import com.industrial.eventanalytics.service.ReplicationStream;
+import com.industrial.eventanalytics.service.RetentionPurgedEvent;
+import com.industrial.eventanalytics.service.RetentionService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Moves whole UTC days older than {@code tiering.threshold} out of the
+ * events table into {@link ColdStorage} segment files, oldest day first.
+ * Each day is moved in one transaction: its rows are read and locked, the
+ * segment is written and fsynced under a {@code .pending} name, the rows
+ * are deleted, and after the commit the file is renamed and served. After
+ * a crash, a pending file whose rows are gone is published, and one whose
+ * rows are still there is discarded.
+ * 
+ * Tiered events are frozen. Dedup and corrections only see the events
+ * table, so ingest rejects a re-sent or corrected tiered event as
+ * {@code EVENT_TIERED} instead of storing it twice; late first-time events
+ * of a tiered day are stored and moved by the next cycle. The threshold
+ * should be well past the window in which events are still corrected.
+ * Never lazily initialised, since its schedule is only registered once the
+ * bean exists.
+ */
+@Service
+@Lazy(false)
+public class TieringService {
+    
+    private static final Logger log = LoggerFactory.getLogger(TieringService.class);
+    
+    private static final int DELETE_SLICE = 500;
+    
+    private static final String SELECT_SQL = "SELECT id, event_id, event_time, received_time, machine_id, factory_id, "
+            + "duration_ms, defect_count FROM events WHERE event_time < ? ORDER BY event_time, id FOR UPDATE";
+    
+    @Autowired
+    private ColdStorage coldStorage;
+    
+    @Autowired
+    private EventRepository eventRepository;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    
+    @Autowired
+    private RetentionService retentionService;
+    
+    @Autowired
+    private ReplicationStream replicationStream;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${tiering.enabled:false}")
+    private boolean enabled;
+    
+    @Value("${tiering.threshold:P30D}")
+    private Duration threshold;
+    
+    @Value("${tiering.max-days-per-cycle:7}")
+    private int maxDaysPerCycle;
+    
+    @Value("${tiering.replica-wait:PT30S}")
+    private Duration replicaWait;
+    
+    private TransactionTemplate transactionTemplate;
+    private Counter movedRows;
+    private Counter movedSegments;
+    
+    @PostConstruct
+    void init() throws IOException {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        movedRows = Counter.builder("tiering.rows.moved")
+                .description("Raw events moved from the events table to cold segments")
+                .register(meterRegistry);
+        movedSegments = Counter.builder("tiering.segments.written")
+                .register(meterRegistry);
+        recoverPending();
+    }
+    
+    private void recoverPending() throws IOException {
+        for (Path pending : coldStorage.pendingFiles()) {
+            String firstEventId;
+            try {
+                firstEventId = Segment.open(pending).firstEventId();
+            } catch (IOException e) {
+                // written only partly, so its transaction never committed
+                firstEventId = null;
+            }
+            if (firstEventId != null && eventRepository.findByEventId(firstEventId).isEmpty()) {
+                log.info("Publishing segment {} left pending by an interrupted move", pending);
+                coldStorage.publish(pending);
+            } else {
+                log.info("Discarding segment {} of a move that did not commit", pending);
+                Files.deleteIfExists(pending);
+            }
+        }
+    }
+    
+    @Scheduled(fixedDelayString = "${tiering.interval:PT1H}",
+               initialDelayString = "${tiering.initial-delay:PT2M}")
+    public void scheduledRun() {
+        if (enabled) {
+            runCycle();
+        }
+    }
+    
+    /**
+     * Moves up to {@code tiering.max-days-per-cycle} days and returns the
+     * number of events moved.
+     */
+    public int runCycle() {
+        Instant cutoff = Instant.now().minus(threshold).truncatedTo(ChronoUnit.DAYS);
+        Instant horizon = retentionService.isEnabled() ? retentionService.getRawHorizon() : null;
+        if (horizon != null && coldStorage.dropBefore(horizon) > 0) {
+            log.info("Dropped cold segments past the retention horizon {}", horizon);
+        }
+        
+        int moved = 0;
+        for (int day = 0; day < maxDaysPerCycle; day++) {
+            OffsetDateTime oldest = jdbcTemplate.queryForObject("SELECT MIN(event_time) FROM events WHERE event_time < ?",
+                    OffsetDateTime.class, OffsetDateTime.ofInstant(cutoff, ZoneOffset.UTC));
+            if (oldest == null) {
+                break;
+            }
+            Instant dayEnd = oldest.toInstant().truncatedTo(ChronoUnit.DAYS).plus(1, ChronoUnit.DAYS);
+            moved += moveBefore(dayEnd.isBefore(cutoff) ? dayEnd : cutoff);
+        }
+        return moved;
+    }
+    
+    /** Moves every event before {@code end} into one new segment. */
+    private int moveBefore(Instant end) {
+        Path pending = coldStorage.getDirectory().resolve("events-" + LocalDate.ofInstant(end.minusNanos(1), ZoneOffset.UTC)
+                + "-" + System.currentTimeMillis() + ColdStorage.PENDING_SUFFIX);
+        Integer moved;
+        try {
+            Files.createDirectories(pending.getParent());
+            moved = transactionTemplate.execute(status -> moveInTransaction(end, pending));
+        } catch (IOException e) {
+            deleteQuietly(pending);
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            deleteQuietly(pending);
+            throw e;
+        }
+        if (moved == null || moved == 0) {
+            deleteQuietly(pending);
+            return 0;
+        }
+        
+        if (replicationStream.isEnabled()
+                && !replicationStream.awaitApplied(replicationStream.getPublishedSequence(), replicaWait)) {
+            log.warn("Analytics replica has not dropped the events before {} yet; they count twice until it does", end);
+        }
+        try {
+            Segment segment = coldStorage.publish(pending);
+            log.info("Moved {} events before {} to {} ({} bytes)", moved, end, segment.getPath(), segment.getSize());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        movedRows.increment(moved);
+        movedSegments.increment();
+        return moved;
+    }
+    
+    private int moveInTransaction(Instant end, Path pending) {
+        List<Long> ids = new ArrayList<>();
+        List<Event> events = jdbcTemplate.query(SELECT_SQL, (rs, rowNum) -> {
+            ids.add(rs.getLong(1));
+            return new Event(rs.getString(2), rs.getObject(3, OffsetDateTime.class).toInstant(),
+                    rs.getObject(4, OffsetDateTime.class).toInstant(), rs.getString(5), rs.getString(6),
+                    rs.getLong(7), rs.getInt(8));
+        }, OffsetDateTime.ofInstant(end, ZoneOffset.UTC));
+        if (events.isEmpty()) {
+            return 0;
+        }
+        try {
+            SegmentWriter.write(pending, events);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        for (int from = 0; from < ids.size(); from += DELETE_SLICE) {
+            List<Long> slice = ids.subList(from, Math.min(ids.size(), from + DELETE_SLICE));
+            jdbcTemplate.update("DELETE FROM events WHERE id IN ("
+                    + String.join(",", Collections.nCopies(slice.size(), "?")) + ")", slice.toArray());
+        }
+        // Same effect as a retention purge up to `end` for caches and the analytics replica
+        eventPublisher.publishEvent(new RetentionPurgedEvent(end, ids,
+                events.stream().map(Event::getEventId).toList(), false));
+        return events.size();
+    }
+    
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete {}: {}", path, e.getMessage());
+        }
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+}
@@ -21,6 +21,8 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
@@ -30,6 +32,7 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -55,6 +58,23 @@ public class EventAnalyticsApplicationTests {
         eventRepository.deleteAll();
     }
     
+    @Test
+    void testRejectionsAreReportedInRequestOrder() throws Exception {
+        Instant eventTime = Instant.now().minus(1, ChronoUnit.HOURS);
+        List<EventRequest> events = Arrays.asList(
+                new EventRequest("E-Z", eventTime, Instant.now(), "M-001", -1L, 0),
+                new EventRequest("E-M", eventTime, Instant.now(), "M-001", 1000L, 0),
+                new EventRequest("E-A", eventTime, Instant.now(), "M-001", -1L, 0));
+        
+        mockMvc.perform(post("/api/v1/events/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(events)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accepted").value(1))
+                .andExpect(jsonPath("$.rejections[0].eventId").value("E-Z"))
+                .andExpect(jsonPath("$.rejections[1].eventId").value("E-A"));
+    }
+    
     @Test
     void testIdenticalDuplicateEventIdDeduped() throws Exception {
         Instant eventTime = Instant.now().minus(1, ChronoUnit.HOURS);
@@ -234,6 +254,154 @@ public class EventAnalyticsApplicationTests {
         assertEquals(2, stats.getEventsCount());
     }
     
+    @Test
+    void testTopDefectLinesScopedToFactory() throws Exception {
+        Instant eventTime = Instant.now().minus(1, ChronoUnit.HOURS);
+        EventRequest plantOne = new EventRequest("E-1", eventTime, Instant.now(), "M-001", 1000L, 3);
+        plantOne.setFactoryId("F01");
+        EventRequest plantTwo = new EventRequest("E-2", eventTime, Instant.now(), "M-101", 1000L, 7);
+        plantTwo.setFactoryId("F02");
+        
+        mockMvc.perform(post("/api/v1/events/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(Arrays.asList(plantOne, plantTwo))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accepted").value(2));
+        
+        mockMvc.perform(get("/api/v1/stats/top-defect-lines")
+                .param("factoryId", "F01")
+                .param("from", eventTime.minus(1, ChronoUnit.HOURS).toString())
+                .param("to", eventTime.plus(1, ChronoUnit.HOURS).toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].lineId").value("M-001"))
+                .andExpect(jsonPath("$[0].totalDefects").value(3));
+        
+        mockMvc.perform(get("/api/v1/stats/top-defect-lines")
+                .param("from", eventTime.minus(1, ChronoUnit.HOURS).toString())
+                .param("to", eventTime.plus(1, ChronoUnit.HOURS).toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].lineId").value("M-101"));
+    }
+    
+    @Test
+    void testIdempotencyKeyReplaysOriginalResponse() throws Exception {
+        Instant eventTime = Instant.now().minus(1, ChronoUnit.HOURS);
+        List<EventRequest> events = Arrays.asList(
+                new EventRequest("E-1", eventTime, Instant.now(), "M-001", 1000L, 0),
+                new EventRequest("E-2", eventTime, Instant.now(), "M-001", 1000L, 1));
+        String body = objectMapper.writeValueAsString(events);
+        
+        mockMvc.perform(post("/api/v1/events/batch")
+                .header("Idempotency-Key", "batch-42")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Idempotent-Replayed", "false"))
+                .andExpect(jsonPath("$.accepted").value(2));
+        
+        mockMvc.perform(post("/api/v1/events/batch")
+                .header("Idempotency-Key", "batch-42")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Idempotent-Replayed", "true"))
+                .andExpect(jsonPath("$.accepted").value(2))
+                .andExpect(jsonPath("$.deduped").value(0));
+        
+        List<EventRequest> changed = Arrays.asList(
+                new EventRequest("E-3", eventTime, Instant.now(), "M-001", 1000L, 0));
+        mockMvc.perform(post("/api/v1/events/batch")
+                .header("Idempotency-Key", "batch-42")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(changed)))
+                .andExpect(status().isUnprocessableEntity());
+        
+        assertEquals(2, eventRepository.count());
+    }
+    
+    @Test
+    void testTimeSeriesBucketsAlignedToUtcIntervals() throws Exception {
+        List<EventRequest> events = Arrays.asList(
+                new EventRequest("E-1", Instant.parse("2026-01-12T10:00:30Z"), Instant.now(), "M-001", 1000L, 1),
+                new EventRequest("E-2", Instant.parse("2026-01-12T10:04:59Z"), Instant.now(), "M-001", 1000L, 2),
+                new EventRequest("E-3", Instant.parse("2026-01-12T10:05:00Z"), Instant.now(), "M-001", 1000L, -1),
+                new EventRequest("E-4", Instant.parse("2026-01-12T10:06:00Z"), Instant.now(), "M-002", 1000L, 9));
+        mockMvc.perform(post("/api/v1/events/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(events)))
+                .andExpect(status().isOk());
+        
+        mockMvc.perform(get("/api/v1/stats/timeseries")
+                .param("machineId", "M-001")
+                .param("start", "2026-01-12T10:02:00Z")
+                .param("end", "2026-01-12T10:12:00Z")
+                .param("interval", "PT5M"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.start").value("2026-01-12T10:00:00Z"))
+                .andExpect(jsonPath("$.points.length()").value(3))
+                .andExpect(jsonPath("$.points[0].bucketStart").value("2026-01-12T10:00:00Z"))
+                .andExpect(jsonPath("$.points[0].eventsCount").value(2))
+                .andExpect(jsonPath("$.points[0].defectsCount").value(3))
+                .andExpect(jsonPath("$.points[0].avgDefectRate").value(36.0))
+                .andExpect(jsonPath("$.points[1].eventsCount").value(1))
+                .andExpect(jsonPath("$.points[1].defectsCount").value(0))
+                .andExpect(jsonPath("$.points[2].eventsCount").value(0));
+        
+        mockMvc.perform(get("/api/v1/stats/timeseries")
+                .param("machineId", "M-001")
+                .param("start", "2026-01-01T00:00:00Z")
+                .param("end", "2026-01-12T00:00:00Z")
+                .param("interval", "PT1M"))
+                .andExpect(status().isBadRequest());
+    }
+    
+    @Test
+    void testExportStreamsEventsAndAggregates() throws Exception {
+        List<EventRequest> events = Arrays.asList(
+                new EventRequest("E-1", Instant.parse("2026-01-12T10:00:00Z"), Instant.now(), "M-001", 1000L, 1),
+                new EventRequest("E-2", Instant.parse("2026-01-12T10:30:00Z"), Instant.now(), "M-001", 1000L, -1),
+                new EventRequest("E-3", Instant.parse("2026-01-12T10:45:00Z"), Instant.now(), "M-002", 1000L, 4),
+                new EventRequest("E-4", Instant.parse("2026-01-12T11:00:00Z"), Instant.now(), "M-001", 1000L, 7));
+        mockMvc.perform(post("/api/v1/events/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(events)))
+                .andExpect(status().isOk());
+        
+        MvcResult ndjson = mockMvc.perform(get("/api/v1/export/events")
+                .param("start", "2026-01-12T10:00:00Z")
+                .param("end", "2026-01-12T11:00:00Z"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String[] lines = mockMvc.perform(asyncDispatch(ndjson))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", "application/x-ndjson"))
+                .andReturn().getResponse().getContentAsString().split("\n");
+        assertEquals(3, lines.length);
+        assertEquals("E-1", objectMapper.readTree(lines[0]).get("eventId").asText());
+        assertEquals(-1, objectMapper.readTree(lines[1]).get("defectCount").asInt());
+        
+        MvcResult csv = mockMvc.perform(get("/api/v1/export/aggregates")
+                .param("start", "2026-01-12T10:00:00Z")
+                .param("end", "2026-01-12T11:00:00Z")
+                .param("format", "csv")
+                .header("Accept-Encoding", "gzip"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        byte[] compressed = mockMvc.perform(asyncDispatch(csv))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Encoding", "gzip"))
+                .andReturn().getResponse().getContentAsByteArray();
+        String body;
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        assertEquals("machineId,factoryId,eventsCount,defectsCount,avgDefectRate,status\r\n" +
+                "M-001,UNASSIGNED,2,1,1.0,Healthy\r\n" +
+                "M-002,UNASSIGNED,1,4,4.0,Warning\r\n", body);
+    }
+    
     @Test
     void testThreadSafetyConcurrentIngestion() throws Exception {
         int numThreads = 10;
@@ -0,0 +1,10 @@
+package com.industrial.eventanalytics;
+
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * Runs the API tests against the JDBC event store.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "events.store=jdbc")
+public class JdbcStoreApplicationTests extends EventAnalyticsApplicationTests {
+}
@@ -0,0 +1,154 @@
+package com.industrial.eventanalytics;
+
+import com.industrial.eventanalytics.dto.BatchResponse;
+import com.industrial.eventanalytics.dto.EventRequest;
+import com.industrial.eventanalytics.repository.EventRepository;
+import com.industrial.eventanalytics.service.EventService;
+import com.industrial.eventanalytics.service.RecentEventCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Throughput floors and latency ceilings for ingest and the stats
+ * endpoints. Defaults are small and loose enough for a shared CI runner;
+ * larger runs override them, e.g.
+ * {@code mvn test -Dtest=PerformanceRegressionTest -Dperf.events=200000 -Dperf.min-ingest-events-per-second=5000}.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class PerformanceRegressionTest {
+    
+    @Autowired
+    private EventService eventService;
+    
+    @Autowired
+    private EventRepository eventRepository;
+    
+    @Autowired
+    private RecentEventCache recentEventCache;
+    
+    @Autowired
+    private MockMvc mockMvc;
+    
+    @Value("${perf.events:3000}")
+    private int events;
+    
+    @Value("${perf.batch-size:500}")
+    private int batchSize;
+    
+    @Value("${perf.machines:20}")
+    private int machines;
+    
+    @Value("${perf.stats-queries:30}")
+    private int statsQueries;
+    
+    @Value("${perf.min-ingest-events-per-second:50}")
+    private double minIngestEventsPerSecond;
+    
+    @Value("${perf.max-batch-p95:PT10S}")
+    private Duration maxBatchP95;
+    
+    @Value("${perf.max-stats-p95:PT1S}")
+    private Duration maxStatsP95;
+    
+    @BeforeEach
+    void setUp() {
+        eventRepository.deleteAll();
+        recentEventCache.clear();
+    }
+    
+    @Test
+    void testIngestThroughputAndStatsLatency() throws Exception {
+        Instant windowStart = Instant.now().minus(2, ChronoUnit.DAYS).truncatedTo(ChronoUnit.HOURS);
+        
+        // Warm-up batch outside the measurement
+        eventService.processBatchEvents(generateBatch("W", 0, Math.min(batchSize, 100), windowStart));
+        
+        List<Long> batchNanos = new ArrayList<>();
+        long accepted = 0;
+        long start = System.nanoTime();
+        for (int from = 0; from < events; from += batchSize) {
+            List<EventRequest> batch = generateBatch("P", from, Math.min(batchSize, events - from), windowStart);
+            long batchStart = System.nanoTime();
+            BatchResponse response = eventService.processBatchEvents(batch);
+            batchNanos.add(System.nanoTime() - batchStart);
+            accepted += response.getAccepted();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double eventsPerSecond = events / seconds;
+        
+        assertEquals(events, accepted);
+        assertTrue(eventsPerSecond >= minIngestEventsPerSecond,
+                String.format("ingest throughput %.0f events/s is below the floor of %.0f", eventsPerSecond, minIngestEventsPerSecond));
+        assertWithinCeiling("processBatchEvents", batchNanos, maxBatchP95);
+        
+        String from = windowStart.toString();
+        String to = windowStart.plus(2, ChronoUnit.DAYS).toString();
+        assertWithinCeiling("/stats", timeRequests(i -> get("/api/v1/stats")
+                .param("machineId", "M-" + (i % machines))
+                .param("start", from)
+                .param("end", to)), maxStatsP95);
+        assertWithinCeiling("/stats/timeseries", timeRequests(i -> get("/api/v1/stats/timeseries")
+                .param("machineId", "M-" + (i % machines))
+                .param("start", from)
+                .param("end", to)
+                .param("interval", "PT1H")), maxStatsP95);
+        assertWithinCeiling("/stats/top-defect-lines", timeRequests(i -> get("/api/v1/stats/top-defect-lines")
+                .param("from", from)
+                .param("to", to)
+                .param("limit", "10")), maxStatsP95);
+    }
+    
+    private List<EventRequest> generateBatch(String prefix, int offset, int size, Instant windowStart) {
+        List<EventRequest> batch = new ArrayList<>(size);
+        for (int i = offset; i < offset + size; i++) {
+            batch.add(new EventRequest(prefix + "-" + i, windowStart.plusSeconds(i % 172800), Instant.now(),
+                    "M-" + (i % machines), 1000L + i % 500, i % 7 == 0 ? -1 : i % 4));
+        }
+        return batch;
+    }
+    
+    private List<Long> timeRequests(RequestFactory requests) throws Exception {
+        // The first request pays for query plan and class loading
+        mockMvc.perform(requests.create(0)).andExpect(status().isOk());
+        List<Long> nanos = new ArrayList<>();
+        for (int i = 0; i < statsQueries; i++) {
+            RequestBuilder request = requests.create(i);
+            long start = System.nanoTime();
+            mockMvc.perform(request).andExpect(status().isOk());
+            nanos.add(System.nanoTime() - start);
+        }
+        return nanos;
+    }
+    
+    private static void assertWithinCeiling(String name, List<Long> nanos, Duration ceiling) {
+        long[] sorted = nanos.stream().mapToLong(Long::longValue).sorted().toArray();
+        long p95 = sorted[Math.max(0, (int) Math.ceil(sorted.length * 0.95) - 1)];
+        assertTrue(p95 <= ceiling.toNanos(), String.format("%s p95 %.1f ms exceeds the ceiling of %d ms (all: %s)",
+                name, p95 / 1e6, ceiling.toMillis(), Arrays.toString(sorted)));
+    }
+    
+    @FunctionalInterface
+    private interface RequestFactory {
+        RequestBuilder create(int i);
+    }
+}
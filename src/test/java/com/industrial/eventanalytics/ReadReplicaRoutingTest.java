@@ -0,0 +1,157 @@
+package com.industrial.eventanalytics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.industrial.eventanalytics.dto.EventRequest;
+import com.industrial.eventanalytics.service.ReplicationStream;
+import com.industrial.eventanalytics.service.RetentionPurgedEvent;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Stats reads against the local replica with a simulated replication delay:
+ * stale reads within the bound, read-your-writes via the consistency token,
+ * fallback to the primary past the bound, and convergence, including purges.
+ */
+@SpringBootTest(properties = {"analytics.replica.enabled=true", "analytics.replica.apply-delay=PT6S",
+        "analytics.replica.max-staleness=PT3S", "analytics.replica.read-your-writes-wait=PT0.2S"})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class ReadReplicaRoutingTest {
+    
+    @Autowired
+    private MockMvc mockMvc;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Autowired
+    private ReplicationStream replicationStream;
+    
+    @Autowired
+    @Qualifier("analyticsDataSource")
+    private HikariDataSource analyticsDataSource;
+    
+    private static MockHttpServletRequestBuilder stats(String machineId, Instant eventTime, String token) {
+        MockHttpServletRequestBuilder request = get("/api/v1/stats")
+                .param("machineId", machineId)
+                .param("start", eventTime.minus(1, ChronoUnit.HOURS).toString())
+                .param("end", eventTime.plus(1, ChronoUnit.HOURS).toString());
+        return token == null ? request : request.header("X-Consistency-Token", token);
+    }
+    
+    @Test
+    void testStaleReadsAreBoundedAndTokensReadTheirWrites() throws Exception {
+        String machineId = "M-RR-" + UUID.randomUUID().toString().substring(0, 8);
+        Instant eventTime = Instant.now().minus(1, ChronoUnit.HOURS);
+        List<EventRequest> events = List.of(
+                new EventRequest(machineId + "-1", eventTime, Instant.now(), machineId, 1000L, 1),
+                new EventRequest(machineId + "-2", eventTime, Instant.now(), machineId, 1000L, 2),
+                new EventRequest(machineId + "-3", eventTime, Instant.now(), machineId, 1000L, 3));
+        
+        MvcResult ingest = mockMvc.perform(post("/api/v1/events/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(events)))
+                .andExpect(status().isOk())
+                .andReturn();
+        long committedAt = System.nanoTime();
+        String token = ingest.getResponse().getHeader("X-Consistency-Token");
+        assertNotNull(token);
+        
+        // Within the staleness bound the replica answers, without the new events
+        MvcResult stale = mockMvc.perform(stats(machineId, eventTime, null))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Read-Source", "analytics"))
+                .andExpect(jsonPath("$.eventsCount").value(0))
+                .andReturn();
+        assertTrue(Long.parseLong(stale.getResponse().getHeader("X-Data-Staleness-Ms")) > 0);
+        
+        // The token forces a source that has the writes
+        mockMvc.perform(stats(machineId, eventTime, token))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Read-Source", "primary"))
+                .andExpect(header().string("X-Data-Staleness-Ms", "0"))
+                .andExpect(jsonPath("$.eventsCount").value(3))
+                .andExpect(jsonPath("$.defectsCount").value(6));
+        
+        // Past the bound, reads go to the primary even without a token
+        Thread.sleep(Math.max(0, Duration.ofMillis(3500).toNanos() - (System.nanoTime() - committedAt)) / 1_000_000);
+        mockMvc.perform(stats(machineId, eventTime, null))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Read-Source", "primary"))
+                .andExpect(jsonPath("$.eventsCount").value(3));
+        
+        assertTrue(replicationStream.awaitApplied(Long.parseLong(token), Duration.ofSeconds(30)));
+        mockMvc.perform(stats(machineId, eventTime, token))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Read-Source", "analytics"))
+                .andExpect(header().string("X-Data-Staleness-Ms", "0"))
+                .andExpect(jsonPath("$.eventsCount").value(3))
+                .andExpect(jsonPath("$.defectsCount").value(6));
+        
+        mockMvc.perform(stats(machineId, eventTime, "abc"))
+                .andExpect(status().isBadRequest());
+    }
+    
+    @Test
+    void testPurgeRemovesOnlyThePurgedEventIdsFromTheReplica() throws Exception {
+        String machineId = "M-RP-" + UUID.randomUUID().toString().substring(0, 8);
+        Instant eventTime = Instant.now().minus(20, ChronoUnit.DAYS);
+        List<EventRequest> events = List.of(
+                new EventRequest(machineId + "-purged", eventTime, Instant.now(), machineId, 1000L, 1),
+                new EventRequest(machineId + "-late", eventTime, Instant.now(), machineId, 1000L, 2));
+        MvcResult ingest = mockMvc.perform(post("/api/v1/events/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(events)))
+                .andExpect(status().isOk())
+                .andReturn();
+        assertTrue(replicationStream.awaitApplied(
+                Long.parseLong(ingest.getResponse().getHeader("X-Consistency-Token")), Duration.ofSeconds(30)));
+        
+        // A chunk that removed only the first row; the second is older than the cutoff but was written after it
+        replicationStream.onRetentionPurged(new RetentionPurgedEvent(eventTime.plus(1, ChronoUnit.DAYS),
+                List.of(-1L), List.of(machineId + "-purged"), false));
+        assertTrue(replicationStream.awaitApplied(replicationStream.getPublishedSequence(), Duration.ofSeconds(30)));
+        
+        assertEquals(List.of(machineId + "-late"), replicaEventIds(machineId));
+    }
+    
+    private List<String> replicaEventIds(String machineId) throws Exception {
+        try (Connection replica = DriverManager.getConnection(analyticsDataSource.getJdbcUrl(),
+                analyticsDataSource.getUsername(), analyticsDataSource.getPassword());
+             PreparedStatement query = replica.prepareStatement(
+                     "SELECT event_id FROM events WHERE machine_id = ? ORDER BY event_id")) {
+            query.setString(1, machineId);
+            List<String> eventIds = new ArrayList<>();
+            try (ResultSet rows = query.executeQuery()) {
+                while (rows.next()) {
+                    eventIds.add(rows.getString(1));
+                }
+            }
+            return eventIds;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.industrial.eventanalytics.cluster;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.industrial.eventanalytics.dto.BatchResponse;
+import com.industrial.eventanalytics.dto.EventRequest;
+import com.industrial.eventanalytics.repository.EventRepository;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Node "a" of a three-node cluster. Node "b" is a stub that records what it
+ * is sent and accepts everything; node "c" is down.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+public class ClusterRouterTest {
+    
+    private static final List<List<EventRequest>> received = new CopyOnWriteArrayList<>();
+    private static final List<String> forwardedHeaders = new CopyOnWriteArrayList<>();
+    private static final String SECRET = "test-secret";
+    private static HttpServer peer;
+    
+    @Autowired
+    private ClusterRouter clusterRouter;
+    
+    @Autowired
+    private ClusterMembership membership;
+    
+    @Autowired
+    private EventRepository eventRepository;
+    
+    @DynamicPropertySource
+    static void cluster(DynamicPropertyRegistry registry) throws IOException {
+        ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
+        peer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        peer.createContext("/api/v1/events/batch", exchange -> {
+            List<EventRequest> slice = mapper.readValue(exchange.getRequestBody(), new TypeReference<>() {});
+            received.add(slice);
+            forwardedHeaders.add(exchange.getRequestHeaders().getFirst(ClusterRouter.FORWARDED_HEADER));
+            byte[] body = mapper.writeValueAsBytes(new BatchResponse(slice.size(), 0, 0, 0, new ArrayList<>()));
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        peer.start();
+        
+        int deadPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            deadPort = socket.getLocalPort();
+        }
+        registry.add("cluster.enabled", () -> "true");
+        registry.add("cluster.node-id", () -> "a");
+        registry.add("cluster.nodes.a", () -> "http://127.0.0.1:1");
+        registry.add("cluster.nodes.b", () -> "http://127.0.0.1:" + peer.getAddress().getPort());
+        registry.add("cluster.nodes.c", () -> "http://127.0.0.1:" + deadPort);
+        registry.add("cluster.secret", () -> SECRET);
+        registry.add("cluster.forward-timeout", () -> "PT5S");
+    }
+    
+    @AfterAll
+    static void stopPeer() {
+        peer.stop(0);
+    }
+    
+    @BeforeEach
+    void setUp() {
+        eventRepository.deleteAll();
+        received.clear();
+        forwardedHeaders.clear();
+    }
+    
+    private static List<EventRequest> batch(String prefix, int size) {
+        Instant eventTime = Instant.now().minus(1, ChronoUnit.HOURS).truncatedTo(ChronoUnit.MILLIS);
+        List<EventRequest> events = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            events.add(new EventRequest(prefix + i, eventTime, eventTime.plusSeconds(1), "M-001", 1000L, 1));
+        }
+        return events;
+    }
+    
+    @Test
+    void testBatchIsSplitByOwnerForwardedAndMerged() {
+        List<EventRequest> events = batch("E-CL-", 60);
+        List<String> local = new ArrayList<>();
+        List<String> toB = new ArrayList<>();
+        List<String> toC = new ArrayList<>();
+        for (EventRequest event : events) {
+            String owner = membership.ownerOf(event);
+            (owner.equals("a") ? local : owner.equals("b") ? toB : toC).add(event.getEventId());
+        }
+        assertFalse(local.isEmpty() || toB.isEmpty() || toC.isEmpty());
+        
+        BatchResponse response = clusterRouter.process(events, null);
+        
+        assertEquals(local.size() + toB.size(), response.getAccepted());
+        assertEquals(toC.size(), response.getRejected());
+        assertTrue(response.getRejections().stream()
+                .allMatch(r -> toC.contains(r.getEventId()) && ClusterRouter.PEER_UNAVAILABLE.equals(r.getReason())));
+        
+        // The local slice is stored here, b got its slice in one request, marked with the secret
+        assertEquals(local.size(), eventRepository.count());
+        local.forEach(id -> assertTrue(eventRepository.findByEventId(id).isPresent()));
+        assertEquals(1, received.size());
+        assertEquals(toB, received.get(0).stream().map(EventRequest::getEventId).toList());
+        assertEquals(List.of(SECRET), forwardedHeaders);
+    }
+    
+    @Test
+    void testForwardedBatchIsProcessedLocally() {
+        List<EventRequest> events = batch("E-FW-", 20);
+        
+        BatchResponse response = clusterRouter.process(events, SECRET);
+        
+        assertEquals(20, response.getAccepted());
+        assertEquals(20, eventRepository.count());
+        assertTrue(received.isEmpty());
+    }
+    
+    @Test
+    void testForwardedHeaderFromClientIsRejected() {
+        List<EventRequest> events = batch("E-FG-", 20);
+        
+        for (String forged : List.of("true", "", "test-secreT")) {
+            ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                    () -> clusterRouter.process(events, forged));
+            assertEquals(HttpStatus.FORBIDDEN, e.getStatusCode());
+        }
+        assertEquals(0, eventRepository.count());
+        assertTrue(received.isEmpty());
+    }
+    
+    @Test
+    void testMergedRejectionsKeepRequestOrder() {
+        List<EventRequest> events = batch("E-RO-", 60);
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < events.size(); i++) {
+            EventRequest event = events.get(i);
+            String owner = membership.ownerOf(event);
+            if (owner.equals("a") && i % 3 == 0) {
+                event.setDurationMs(-1L);
+            }
+            if (owner.equals("c") || (owner.equals("a") && i % 3 == 0)) {
+                expected.add(event.getEventId());
+            }
+        }
+        
+        BatchResponse response = clusterRouter.process(events, null);
+        
+        assertEquals(expected, response.getRejections().stream().map(BatchResponse.RejectionDetail::getEventId).toList());
+    }
+}
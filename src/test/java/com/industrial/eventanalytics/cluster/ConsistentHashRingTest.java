@@ -0,0 +1,50 @@
+package com.industrial.eventanalytics.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConsistentHashRingTest {
+    
+    private static final int KEYS = 30000;
+    
+    @Test
+    void testKeysSpreadEvenlyAndDeterministically() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("a", "b", "c"), 128);
+        ConsistentHashRing sameConfig = new ConsistentHashRing(List.of("c", "a", "b"), 128);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            String key = "E-" + i;
+            String owner = ring.nodeFor(key);
+            assertEquals(owner, sameConfig.nodeFor(key));
+            counts.merge(owner, 1, Integer::sum);
+        }
+        
+        assertEquals(3, counts.size());
+        for (int count : counts.values()) {
+            assertTrue(Math.abs(count - KEYS / 3) < KEYS / 3 * 0.2, "unbalanced: " + counts);
+        }
+    }
+    
+    @Test
+    void testAddingANodeOnlyMovesKeysToIt() {
+        ConsistentHashRing before = new ConsistentHashRing(List.of("a", "b", "c"), 128);
+        ConsistentHashRing after = new ConsistentHashRing(List.of("a", "b", "c", "d"), 128);
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String key = "E-" + i;
+            String oldOwner = before.nodeFor(key);
+            String newOwner = after.nodeFor(key);
+            if (!oldOwner.equals(newOwner)) {
+                assertEquals("d", newOwner);
+                moved++;
+            }
+        }
+        // About a quarter of the keys move to the new node, none between the old ones
+        assertTrue(moved > KEYS / 4 * 0.8 && moved < KEYS / 4 * 1.2, "moved " + moved);
+    }
+}
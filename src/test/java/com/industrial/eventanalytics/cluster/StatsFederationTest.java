@@ -0,0 +1,208 @@
+package com.industrial.eventanalytics.cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.industrial.eventanalytics.dto.EventRequest;
+import com.industrial.eventanalytics.dto.StatsResponse;
+import com.industrial.eventanalytics.dto.TopDefectLineResponse;
+import com.industrial.eventanalytics.repository.EventRepository;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Node "a" of a three-node cluster. Node "b" is a stub answering stats
+ * queries from fixed per-machine totals; node "c" is down.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class StatsFederationTest {
+    
+    // machineId -> {defects, events} held by node b
+    private static final Map<String, long[]> peerLines = new LinkedHashMap<>();
+    private static final List<String> peerQueries = new CopyOnWriteArrayList<>();
+    private static HttpServer peer;
+    
+    @Autowired
+    private StatsFederation statsFederation;
+    
+    @Autowired
+    private ClusterRouter clusterRouter;
+    
+    @Autowired
+    private EventRepository eventRepository;
+    
+    @Autowired
+    private MockMvc mockMvc;
+    
+    private final Instant eventTime = Instant.now().minus(1, ChronoUnit.HOURS).truncatedTo(ChronoUnit.MILLIS);
+    private final Instant from = eventTime.minus(1, ChronoUnit.HOURS);
+    private final Instant to = eventTime.plus(1, ChronoUnit.HOURS);
+    
+    static {
+        peerLines.put("M-003", new long[]{10, 2});
+        peerLines.put("M-002", new long[]{9, 3});
+        peerLines.put("M-004", new long[]{1, 1});
+    }
+    
+    @DynamicPropertySource
+    static void cluster(DynamicPropertyRegistry registry) throws IOException {
+        ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
+        peer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        peer.createContext("/api/v1/stats/partial/top-defect-lines", exchange -> {
+            peerQueries.add(exchange.getRequestURI().getRawQuery());
+            Map<String, List<String>> params = params(exchange);
+            List<TopDefectLineResponse> lines = new ArrayList<>();
+            peerLines.forEach((machineId, totals) -> {
+                if (params.containsKey("lineId") ? params.get("lineId").contains(machineId)
+                        : params.containsKey("minDefects") ? totals[0] >= Long.parseLong(params.get("minDefects").get(0))
+                        : lines.size() < Integer.parseInt(params.get("limit").get(0))) {
+                    lines.add(new TopDefectLineResponse(machineId, totals[0], totals[1]));
+                }
+            });
+            respond(exchange, mapper.writeValueAsBytes(lines));
+        });
+        peer.createContext("/api/v1/stats", exchange -> {
+            Map<String, List<String>> params = params(exchange);
+            assertEquals(List.of("local"), params.get("scope"));
+            long[] totals = peerLines.getOrDefault(params.get("machineId").get(0), new long[2]);
+            respond(exchange, mapper.writeValueAsBytes(
+                    new StatsResponse(params.get("machineId").get(0), null, null, totals[1], totals[0], 0, "Healthy")));
+        });
+        peer.start();
+        
+        int deadPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            deadPort = socket.getLocalPort();
+        }
+        registry.add("cluster.enabled", () -> "true");
+        registry.add("cluster.node-id", () -> "a");
+        registry.add("cluster.nodes.a", () -> "http://127.0.0.1:1");
+        registry.add("cluster.nodes.b", () -> "http://127.0.0.1:" + peer.getAddress().getPort());
+        registry.add("cluster.nodes.c", () -> "http://127.0.0.1:" + deadPort);
+        registry.add("cluster.secret", () -> "test-secret");
+        registry.add("cluster.federation.timeout", () -> "PT5S");
+    }
+    
+    private static Map<String, List<String>> params(HttpExchange exchange) {
+        Map<String, List<String>> params = new LinkedHashMap<>();
+        for (String pair : exchange.getRequestURI().getRawQuery().split("&")) {
+            String[] parts = pair.split("=", 2);
+            params.computeIfAbsent(parts[0], k -> new ArrayList<>())
+                    .add(URLDecoder.decode(parts[1], StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+    
+    private static void respond(HttpExchange exchange, byte[] body) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+    
+    @AfterAll
+    static void stopPeer() {
+        peer.stop(0);
+    }
+    
+    @BeforeEach
+    void setUp() {
+        eventRepository.deleteAll();
+        peerQueries.clear();
+        // Node a's own events, stored without routing
+        List<EventRequest> events = new ArrayList<>();
+        events.add(new EventRequest("E-FD-1", eventTime, eventTime.plusSeconds(1), "M-001", 1000L, 10));
+        events.add(new EventRequest("E-FD-2", eventTime, eventTime.plusSeconds(1), "M-002", 1000L, 5));
+        events.add(new EventRequest("E-FD-3", eventTime, eventTime.plusSeconds(1), "M-002", 1000L, 4));
+        events.add(new EventRequest("E-FD-4", eventTime, eventTime.plusSeconds(1), "M-005", 1000L, 1));
+        clusterRouter.process(events, "test-secret");
+    }
+    
+    @Test
+    void testTopLinesAreExactWhereLocalTopListsMiss() {
+        // a ranks M-001 first (10), b ranks M-003 first (10); M-002 leads overall with 9 + 9
+        StatsFederation.Result<List<TopDefectLineResponse>> result = statsFederation.getTopDefectLines(null, from, to, 1);
+        
+        assertEquals(1, result.getValue().size());
+        assertEquals("M-002", result.getValue().get(0).getLineId());
+        assertEquals(18, result.getValue().get(0).getTotalDefects());
+        assertEquals(5, result.getValue().get(0).getEventCount());
+        assertTrue(result.isPartial());
+        assertEquals(List.of("c"), List.copyOf(result.getMissingNodes()));
+        
+        // Local top 1, then everything with at least ceil(10 / 3) defects
+        assertEquals(2, peerQueries.size());
+        assertTrue(peerQueries.get(0).endsWith("&limit=1"));
+        assertTrue(peerQueries.get(1).endsWith("&minDefects=4"));
+    }
+    
+    @Test
+    void testCandidateTotalsAreFetchedFromNodesThatDidNotReportThem() {
+        StatsFederation.Result<List<TopDefectLineResponse>> result = statsFederation.getTopDefectLines(null, from, to, 4);
+        
+        assertEquals(List.of("M-002", "M-001", "M-003", "M-004"),
+                result.getValue().stream().map(TopDefectLineResponse::getLineId).toList());
+        assertEquals(List.of(18L, 10L, 10L, 1L),
+                result.getValue().stream().map(TopDefectLineResponse::getTotalDefects).toList());
+        // M-001 and M-005 stay candidates that b never reported, so b is asked for them by id
+        assertEquals(3, peerQueries.size());
+        assertTrue(peerQueries.get(2).endsWith("&lineId=M-001&lineId=M-005"));
+    }
+    
+    @Test
+    void testMachineStatsAddUpAcrossNodesAndFlagMissingNodes() throws Exception {
+        mockMvc.perform(get("/api/v1/stats")
+                        .param("machineId", "M-002")
+                        .param("start", from.toString())
+                        .param("end", to.toString()))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Partial-Result", "true"))
+                .andExpect(header().string("X-Missing-Nodes", "c"))
+                .andExpect(jsonPath("$.eventsCount").value(5))
+                .andExpect(jsonPath("$.defectsCount").value(18))
+                .andExpect(jsonPath("$.complete").value(false));
+    }
+    
+    @Test
+    void testLocalScopeSkipsFederation() throws Exception {
+        mockMvc.perform(get("/api/v1/stats/top-defect-lines")
+                        .param("from", from.toString())
+                        .param("to", to.toString())
+                        .param("limit", "1")
+                        .param("scope", "local"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("X-Partial-Result"))
+                .andExpect(jsonPath("$[0].lineId").value("M-001"))
+                .andExpect(jsonPath("$[0].totalDefects").value(10));
+        assertTrue(peerQueries.isEmpty());
+    }
+}
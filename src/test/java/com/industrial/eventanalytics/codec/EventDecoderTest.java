@@ -0,0 +1,197 @@
+package com.industrial.eventanalytics.codec;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.industrial.eventanalytics.dto.EventRequest;
+import com.industrial.eventanalytics.service.EventValidator;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The decoder must give every payload the same events (or the same failure)
+ * and the same validation outcomes as Jackson data binding, while allocating
+ * less per event.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+public class EventDecoderTest {
+    
+    private static final TypeReference<List<EventRequest>> BATCH = new TypeReference<>() {};
+    private static final DateTimeFormatter ISO = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'")
+            .withZone(ZoneOffset.UTC);
+    
+    @Autowired
+    private EventDecoder eventDecoder;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Autowired
+    private EventValidator eventValidator;
+    
+    private static String event(String fields) {
+        return "{\"eventId\":\"E-1\",\"machineId\":\"M-001\",\"durationMs\":1000,\"defectCount\":2" + fields + "}";
+    }
+    
+    @Test
+    void testDecodedBatchesMatchDataBinding() throws Exception {
+        String now = ISO.format(Instant.now());
+        String future = ISO.format(Instant.now().plus(1, ChronoUnit.DAYS));
+        List<String> payloads = List.of(
+                "[" + event(",\"eventTime\":\"" + now + "\",\"receivedTime\":\"" + now + "\"") + "]",
+                "[" + event(",\"eventTime\":\"2024-02-29T23:59:59.999Z\",\"factoryId\":\"F-01\"") + "]",
+                "[" + event(",\"eventTime\":\"" + future + "\"") + "]",
+                "[" + event("") + "]",
+                "[{\"eventId\":\"E-2\",\"eventTime\":\"2024-01-15T10:00:00.000Z\",\"machineId\":\"M-001\"}]",
+                "[{\"eventId\":\" \",\"eventTime\":\"2024-01-15T10:00:00.000Z\",\"machineId\":\"M-1\",\"durationMs\":1,\"defectCount\":0}]",
+                "[" + event(",\"eventTime\":\"2024-01-15T10:00:00.000Z\",\"durationMs\":-1") + "]",
+                "[" + event(",\"eventTime\":\"2024-01-15T10:00:00.000Z\",\"durationMs\":21600001") + "]",
+                "[" + event(",\"eventTime\":\"2024-01-15T10:00:00.000Z\",\"durationMs\":null") + "]",
+                "[" + event(",\"eventTime\":null,\"machineId\":null") + "]",
+                // unknown, nested and repeated fields
+                "[" + event(",\"eventTime\":\"2024-01-15T10:00:00.000Z\",\"extra\":{\"a\":[1,{\"b\":2}]},\"defectCount\":7") + "]",
+                // handed to data binding: coerced values, other timestamp layouts, out-of-range fields
+                "[" + event(",\"eventTime\":\"2024-01-15T10:00:00.000Z\",\"durationMs\":\"1500\",\"eventId\":42") + "]",
+                "[" + event(",\"eventTime\":\"2024-01-15T10:00:00.000Z\",\"durationMs\":12.7") + "]",
+                "[" + event(",\"eventTime\":\"2023-02-29T10:00:00.000Z\"") + "]",
+                "[" + event(",\"eventTime\":\"2024-01-15T10:00:00Z\"") + "]",
+                "[" + event(",\"eventTime\":\"2024-01-15T24:00:00.000Z\"") + "]",
+                "[" + event(",\"eventTime\":1705312800000") + "]",
+                "[" + event(",\"eventTime\":\"2024-01-15T10:00:00.000Z\",\"defectCount\":3000000000") + "]",
+                "[" + event(",\"eventTime\":\"2024-01-15T10:00:00.000Z\"") + ",null]",
+                "[" + event(",\"eventTime\":\"2024-01-15T10:00:00.000Z\"") + ",[]]",
+                "[" + event(",\"eventTime\":\"2024-01-15T10:00:00.000Z\"") + "",
+                "{\"eventId\":\"E-1\"}",
+                "[]",
+                "");
+        
+        for (String payload : payloads) {
+            byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+            List<EventRequest> expected;
+            try {
+                expected = objectMapper.readValue(bytes, BATCH);
+            } catch (IOException e) {
+                assertThrows(IOException.class, () -> eventDecoder.decodeBatch(bytes, 0, bytes.length), payload);
+                continue;
+            }
+            List<EventRequest> actual = eventDecoder.decodeBatch(bytes, 0, bytes.length);
+            assertEquals(expected.size(), actual.size(), payload);
+            for (int i = 0; i < expected.size(); i++) {
+                assertSameEvent(expected.get(i), actual.get(i), payload);
+            }
+        }
+    }
+    
+    @Test
+    void testDecodedLinesMatchDataBinding() throws Exception {
+        for (String line : List.of(event(",\"eventTime\":\"2024-01-15T10:00:00.000Z\""), "null", "{\"eventId\":", "[1]")) {
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            EventRequest expected;
+            try {
+                expected = objectMapper.readerFor(EventRequest.class).readValue(bytes);
+            } catch (IOException e) {
+                assertThrows(IOException.class, () -> eventDecoder.decodeEvent(bytes, 0, bytes.length), line);
+                continue;
+            }
+            EventRequest actual = eventDecoder.decodeEvent(bytes, 0, bytes.length);
+            if (expected == null) {
+                assertNull(actual, line);
+            } else {
+                assertSameEvent(expected, actual, line);
+            }
+        }
+    }
+    
+    private void assertSameEvent(EventRequest expected, EventRequest actual, String payload) {
+        if (expected == null) {
+            assertNull(actual, payload);
+            return;
+        }
+        assertEquals(expected.getEventId(), actual.getEventId(), payload);
+        assertEquals(expected.getEventTime(), actual.getEventTime(), payload);
+        assertEquals(expected.getReceivedTime(), actual.getReceivedTime(), payload);
+        assertEquals(expected.getMachineId(), actual.getMachineId(), payload);
+        assertEquals(expected.getFactoryId(), actual.getFactoryId(), payload);
+        assertEquals(expected.getDurationMs(), actual.getDurationMs(), payload);
+        assertEquals(expected.getDefectCount(), actual.getDefectCount(), payload);
+        assertEquals(eventValidator.validate(expected), eventValidator.validate(actual), payload);
+    }
+    
+    @Test
+    void testTimestampParserMatchesInstantParse() {
+        Random random = new Random(42);
+        for (int i = 0; i < 20_000; i++) {
+            Instant instant = Instant.ofEpochMilli(random.nextLong(-62_135_596_800_000L, 253_402_300_799_999L));
+            String text = ISO.format(instant);
+            assertEquals(instant.toEpochMilli(),
+                    FixedIsoInstantParser.parseEpochMillis(text.toCharArray(), 0, text.length()), text);
+        }
+    }
+    
+    @Test
+    void testRepeatedMachineIdsShareOneString() throws Exception {
+        String payload = "[" + event(",\"eventTime\":\"2024-01-15T10:00:00.000Z\"") + ","
+                + event(",\"eventTime\":\"2024-01-15T10:00:01.000Z\"") + "]";
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        List<EventRequest> events = eventDecoder.decodeBatch(bytes, 0, bytes.length);
+        assertSame(events.get(0).getMachineId(), events.get(1).getMachineId());
+    }
+    
+    /**
+     * Bytes allocated per event by each decoder on a 1000-event batch,
+     * after warm-up, e.g. {@code mvn test -Dtest=EventDecoderTest}.
+     */
+    @Test
+    void testAllocatesLessPerEventThanDataBinding() throws Exception {
+        StringBuilder json = new StringBuilder("[");
+        int events = 1000;
+        for (int i = 0; i < events; i++) {
+            json.append(i == 0 ? "" : ",").append(String.format(
+                    "{\"eventId\":\"E-%07d\",\"eventTime\":\"2024-01-15T10:%02d:%02d.%03dZ\","
+                            + "\"receivedTime\":\"2024-01-15T11:00:00.000Z\",\"machineId\":\"M-%03d\","
+                            + "\"factoryId\":\"F-01\",\"durationMs\":%d,\"defectCount\":%d}",
+                    i, i / 60 % 60, i % 60, i % 1000, i % 20, 1000 + i, i % 5));
+        }
+        byte[] bytes = json.append("]").toString().getBytes(StandardCharsets.UTF_8);
+        
+        long jackson = bytesPerEvent(() -> objectMapper.readValue(bytes, BATCH), events);
+        long decoder = bytesPerEvent(() -> eventDecoder.decodeBatch(bytes, 0, bytes.length), events);
+        
+        assertTrue(decoder * 2 < jackson, "decoder " + decoder + " B/event vs data binding " + jackson);
+    }
+    
+    private interface Decode {
+        List<EventRequest> run() throws IOException;
+    }
+    
+    private static long bytesPerEvent(Decode decode, int events) throws IOException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        List<List<EventRequest>> keep = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            decode.run();
+        }
+        int rounds = 20;
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < rounds; i++) {
+            keep.add(decode.run());
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        assertEquals(rounds, keep.size());
+        return allocated / ((long) rounds * events);
+    }
+}
@@ -83,4 +83,15 @@ public class EventControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$").isArray());
     }
+    
+    @Test
+    void testApproximateTopDefectLinesAreMarked() throws Exception {
+        mockMvc.perform(get("/api/v1/stats/top-defect-lines")
+                .param("from", "2026-01-15T00:00:00Z")
+                .param("to", "2026-01-15T23:59:59Z")
+                .param("approximate", "true"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Approximate", "true"))
+                .andExpect(jsonPath("$").isArray());
+    }
 }
@@ -0,0 +1,67 @@
+package com.industrial.eventanalytics.diagnostics;
+
+import jdk.jfr.RecordingState;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JfrRecordingServiceTest {
+    
+    private final JfrRecordingService service = new JfrRecordingService();
+    
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(service, "maxDuration", Duration.ofSeconds(5));
+        ReflectionTestUtils.setField(service, "maxSize", DataSize.ofMegabytes(16));
+    }
+    
+    @AfterEach
+    void tearDown() {
+        service.close();
+    }
+    
+    @Test
+    void testRecordingRunsInBackgroundAndIsDownloadedOnce() throws Exception {
+        long id = service.start(Duration.ofMillis(500), "default");
+        
+        assertEquals(RecordingState.RUNNING, service.getState(id));
+        assertStatus(HttpStatus.CONFLICT, () -> service.start(Duration.ofSeconds(1), "default"));
+        assertStatus(HttpStatus.CONFLICT, () -> service.dump(id));
+        
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (service.getState(id) == RecordingState.RUNNING && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        Path file = service.dump(id);
+        try {
+            assertTrue(Files.size(file) > 0);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+        assertStatus(HttpStatus.NOT_FOUND, () -> service.getState(id));
+    }
+    
+    @Test
+    void testRejectsDurationOverLimit() {
+        assertStatus(HttpStatus.BAD_REQUEST, () -> service.start(Duration.ofMinutes(1), "default"));
+    }
+    
+    private interface Call {
+        void run() throws Exception;
+    }
+    
+    private static void assertStatus(HttpStatus status, Call call) {
+        ResponseStatusException e = assertThrows(ResponseStatusException.class, call::run);
+        assertEquals(status, e.getStatusCode());
+    }
+}
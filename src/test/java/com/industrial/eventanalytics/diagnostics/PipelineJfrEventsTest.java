@@ -0,0 +1,82 @@
+package com.industrial.eventanalytics.diagnostics;
+
+import com.industrial.eventanalytics.dto.EventRequest;
+import com.industrial.eventanalytics.repository.EventRepository;
+import com.industrial.eventanalytics.service.EventService;
+import com.industrial.eventanalytics.service.StatsService;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+public class PipelineJfrEventsTest {
+    
+    @Autowired
+    private EventService eventService;
+    
+    @Autowired
+    private StatsService statsService;
+    
+    @Autowired
+    private EventRepository eventRepository;
+    
+    @BeforeEach
+    void setUp() {
+        eventRepository.deleteAll();
+    }
+    
+    @Test
+    void testIngestAndStatsEmitFlightRecorderEvents() throws Exception {
+        Instant eventTime = Instant.now().minus(1, ChronoUnit.HOURS);
+        Path file = Files.createTempFile("pipeline-test-", ".jfr");
+        
+        try (Recording recording = new Recording()) {
+            recording.enable(BatchIngestEvent.class).withThreshold(Duration.ZERO);
+            recording.enable(IngestStageEvent.class).withThreshold(Duration.ZERO);
+            recording.enable(StatsQueryEvent.class).withThreshold(Duration.ZERO);
+            recording.start();
+            
+            eventService.processBatchEvents(List.of(
+                    new EventRequest("E-J1", eventTime, Instant.now(), "M-001", 1000L, 1),
+                    new EventRequest("E-J2", eventTime, Instant.now(), "M-001", -5L, 1)));
+            statsService.getMachineStats("M-001", eventTime.minus(1, ChronoUnit.HOURS), eventTime.plus(1, ChronoUnit.HOURS));
+            
+            recording.stop();
+            recording.dump(file);
+        }
+        
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        Files.deleteIfExists(file);
+        
+        RecordedEvent batch = events.stream()
+                .filter(e -> e.getEventType().getName().equals("com.industrial.eventanalytics.BatchIngest"))
+                .findFirst().orElseThrow();
+        assertEquals(2, batch.getInt("batchSize"));
+        assertEquals(1, batch.getInt("accepted"));
+        assertEquals(1, batch.getInt("rejected"));
+        
+        assertTrue(events.stream().anyMatch(e -> e.getEventType().getName().equals("com.industrial.eventanalytics.IngestStage")
+                && "persist".equals(e.getString("stage"))));
+        
+        RecordedEvent query = events.stream()
+                .filter(e -> e.getEventType().getName().equals("com.industrial.eventanalytics.StatsQuery"))
+                .findFirst().orElseThrow();
+        assertEquals("M-001", query.getString("machineId"));
+        assertEquals(7200, query.getLong("windowSeconds"));
+    }
+}
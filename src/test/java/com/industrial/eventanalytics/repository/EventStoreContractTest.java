@@ -0,0 +1,153 @@
+package com.industrial.eventanalytics.repository;
+
+import com.industrial.eventanalytics.dto.TopDefectLineResponse;
+import com.industrial.eventanalytics.model.Event;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Behaviour every {@link EventStore} implementation must share; subclasses
+ * select the implementation with {@code events.store}.
+ */
+abstract class EventStoreContractTest {
+    
+    private static final Instant T0 = Instant.parse("2026-01-12T10:00:00Z");
+    
+    @Autowired
+    protected EventStore eventStore;
+    
+    @Autowired
+    private EventRepository eventRepository;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    private TransactionTemplate transactionTemplate;
+    
+    @BeforeEach
+    void setUp() {
+        eventRepository.deleteAll();
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+    
+    private static Event event(String eventId, int minute, String machineId, String factoryId, int defects) {
+        return new Event(eventId, T0.plusSeconds(minute * 60L), T0.plusSeconds(3600), machineId, factoryId, 1000L, defects);
+    }
+    
+    private void insert(Event... events) {
+        transactionTemplate.executeWithoutResult(status -> eventStore.insertAll(List.of(events)));
+    }
+    
+    @Test
+    void testInsertedEventsAreFoundByEventId() {
+        insert(event("E-1", 0, "M-001", "F01", 1), event("E-2", 1, "M-002", "F02", -1));
+        
+        Map<String, Event> found = eventStore.findByEventIds(Set.of("E-1", "E-2", "E-missing"));
+        
+        assertEquals(Set.of("E-1", "E-2"), found.keySet());
+        Event stored = found.get("E-2");
+        assertEquals(T0.plusSeconds(60), stored.getEventTime());
+        assertEquals(T0.plusSeconds(3600), stored.getReceivedTime());
+        assertEquals("M-002", stored.getMachineId());
+        assertEquals("F02", stored.getFactoryId());
+        assertEquals(1000L, stored.getDurationMs());
+        assertEquals(-1, stored.getDefectCount());
+        assertTrue(eventStore.findByEventIds(Set.of()).isEmpty());
+    }
+    
+    @Test
+    void testDuplicateInsertViolatesUniqueEventId() {
+        insert(event("E-1", 0, "M-001", "F01", 1));
+        
+        assertThrows(DataIntegrityViolationException.class, () -> insert(event("E-1", 5, "M-001", "F01", 2)));
+        assertEquals(1, eventRepository.count());
+    }
+    
+    @Test
+    void testUpdateOnlyAppliesToOlderRows() {
+        insert(event("E-1", 0, "M-001", "F01", 1), event("E-2", 0, "M-001", "F01", 1));
+        Event newer = new Event("E-1", T0, T0.plusSeconds(7200), "M-001", "F01", 2000L, 5);
+        Event older = new Event("E-2", T0, T0.plusSeconds(60), "M-001", "F01", 2000L, 5);
+        Event missing = new Event("E-3", T0, T0.plusSeconds(7200), "M-001", "F01", 2000L, 5);
+        
+        boolean[] applied = transactionTemplate.execute(status -> eventStore.updateIfNewer(List.of(newer, older, missing)));
+        
+        assertArrayEquals(new boolean[]{true, false, false}, applied);
+        Map<String, Event> found = eventStore.findByEventIds(Set.of("E-1", "E-2", "E-3"));
+        assertEquals(5, found.get("E-1").getDefectCount());
+        assertEquals(T0.plusSeconds(7200), found.get("E-1").getReceivedTime());
+        assertEquals(1, found.get("E-2").getDefectCount());
+        assertFalse(found.containsKey("E-3"));
+    }
+    
+    @Test
+    void testMachineAggregatesUseHalfOpenWindowAndSkipUnknownDefects() {
+        insert(event("E-1", 0, "M-001", "F01", 2),
+                event("E-2", 30, "M-001", "F01", -1),
+                event("E-3", 59, "M-001", "F01", 3),
+                event("E-4", 60, "M-001", "F01", 100),
+                event("E-5", 10, "M-002", "F01", 7));
+        
+        Instant end = T0.plusSeconds(3600);
+        assertEquals(3, eventStore.countEvents("M-001", T0, end));
+        assertEquals(5, eventStore.sumDefects("M-001", T0, end));
+        assertEquals(0, eventStore.countEvents("M-404", T0, end));
+        assertEquals(0, eventStore.sumDefects("M-404", T0, end));
+    }
+    
+    @Test
+    void testTopDefectLinesRankedAndScopedToFactory() {
+        insert(event("E-1", 0, "M-001", "F01", 2),
+                event("E-2", 1, "M-001", "F01", 3),
+                event("E-3", 2, "M-002", "F01", 9),
+                event("E-4", 3, "M-002", "F01", -1),
+                event("E-5", 4, "M-003", "F02", 20),
+                event("E-6", 60, "M-003", "F02", 0));
+        
+        List<TopDefectLineResponse> fleet = eventStore.findTopDefectLines(null, T0, T0.plusSeconds(3600), 10);
+        assertEquals(List.of("M-003", "M-002", "M-001"), fleet.stream().map(TopDefectLineResponse::getLineId).toList());
+        assertEquals(20, fleet.get(0).getTotalDefects());
+        assertEquals(2, fleet.get(0).getEventCount());
+        assertEquals(1, fleet.get(1).getEventCount());
+        assertEquals(250.0, fleet.get(2).getDefectsPercent());
+        
+        List<TopDefectLineResponse> factory = eventStore.findTopDefectLines("F01", T0, T0.plusSeconds(3600), 1);
+        assertEquals(1, factory.size());
+        assertEquals("M-002", factory.get(0).getLineId());
+    }
+    
+    @Test
+    void testDefectLinesByThresholdAndById() {
+        insert(event("E-1", 0, "M-001", "F01", 2),
+                event("E-2", 1, "M-001", "F01", 3),
+                event("E-3", 2, "M-002", "F01", 9),
+                event("E-4", 3, "M-003", "F02", 20),
+                event("E-5", 4, "M-004", "F02", -1));
+        Instant end = T0.plusSeconds(3600);
+        
+        assertEquals(List.of("M-003", "M-002"), eventStore.findDefectLinesAtLeast(null, T0, end, 9).stream()
+                .map(TopDefectLineResponse::getLineId).toList());
+        assertEquals(List.of("M-002", "M-001"), eventStore.findDefectLinesAtLeast("F01", T0, end, 0).stream()
+                .map(TopDefectLineResponse::getLineId).toList());
+        
+        List<TopDefectLineResponse> lines = eventStore.findDefectLines(null, T0, end, Set.of("M-001", "M-003", "M-004", "M-404"));
+        Map<String, Long> defects = new HashMap<>();
+        lines.forEach(line -> defects.put(line.getLineId(), line.getTotalDefects()));
+        assertEquals(Map.of("M-001", 5L, "M-003", 20L), defects);
+        assertEquals(2, lines.stream().filter(line -> line.getLineId().equals("M-001")).findFirst().orElseThrow().getEventCount());
+        assertTrue(eventStore.findDefectLines("F02", T0, end, Set.of("M-001")).isEmpty());
+        assertTrue(eventStore.findDefectLines(null, T0, end, Set.of()).isEmpty());
+    }
+}
@@ -0,0 +1,17 @@
+package com.industrial.eventanalytics.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+@SpringBootTest(properties = "events.store=jpa")
+@ActiveProfiles("test")
+public class JpaEventStoreTest extends EventStoreContractTest {
+    
+    @Test
+    void testConfiguredImplementationIsUsed() {
+        assertInstanceOf(JpaEventStore.class, eventStore);
+    }
+}
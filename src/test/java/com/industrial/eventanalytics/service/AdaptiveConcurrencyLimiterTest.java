@@ -0,0 +1,78 @@
+package com.industrial.eventanalytics.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdaptiveConcurrencyLimiterTest {
+    
+    private static final long TARGET = TimeUnit.MILLISECONDS.toNanos(100);
+    
+    @Test
+    void testRefusesRequestsOverLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 2, 1, 10, TARGET, 0.5);
+        
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        
+        limiter.release(TimeUnit.MILLISECONDS.toNanos(10), false);
+        assertTrue(limiter.tryAcquire());
+    }
+    
+    @Test
+    void testSlowResponsesShrinkLimitDownToMinimum() {
+        AtomicLong clock = new AtomicLong();
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 16, 2, 32, TARGET, 0.5, clock::get);
+        
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.tryAcquire());
+            clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+            limiter.release(TimeUnit.MILLISECONDS.toNanos(500), false);
+        }
+        
+        assertEquals(2, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+    
+    @Test
+    void testBurstOfSlowResponsesBacksOffOnce() {
+        AtomicLong clock = new AtomicLong();
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 16, 2, 32, TARGET, 0.5, clock::get);
+        
+        for (int i = 0; i < 16; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        for (int i = 0; i < 16; i++) {
+            limiter.release(TimeUnit.MILLISECONDS.toNanos(500) - i, i % 2 == 0);
+        }
+        assertEquals(8, limiter.getLimit());
+        
+        // a request started after the back-off is a new congestion signal
+        assertTrue(limiter.tryAcquire());
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(200));
+        limiter.release(TimeUnit.MILLISECONDS.toNanos(200), false);
+        assertEquals(4, limiter.getLimit());
+    }
+    
+    @Test
+    void testFastResponsesUnderLoadGrowLimitUpToMaximum() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 4, 1, 6, TARGET, 0.5);
+        
+        for (int round = 0; round < 200; round++) {
+            int acquired = 0;
+            while (limiter.tryAcquire()) {
+                acquired++;
+            }
+            for (int i = 0; i < acquired; i++) {
+                limiter.release(TimeUnit.MILLISECONDS.toNanos(5), false);
+            }
+        }
+        
+        assertEquals(6, limiter.getLimit());
+    }
+}
@@ -0,0 +1,160 @@
+package com.industrial.eventanalytics.service;
+
+import com.industrial.eventanalytics.dto.EventRequest;
+import com.industrial.eventanalytics.dto.TopDefectLineResponse;
+import com.industrial.eventanalytics.model.Event;
+import com.industrial.eventanalytics.repository.EventRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Approximate rankings must bracket every line's exact total, also after
+ * corrections and a rebuild, with summaries far smaller than the number of
+ * machines so that Space-Saving evicts. Buckets older than six hours are
+ * rolled up into three-hour ones, so windows span both granularities.
+ */
+@SpringBootTest(properties = {
+        "stats.approximate.capacity=8",
+        "stats.approximate.count-min.width=16",
+        "stats.approximate.coarse-bucket=PT3H",
+        "stats.approximate.rollup-after=PT6H"
+})
+@ActiveProfiles("test")
+public class ApproximateTopDefectLinesTest {
+    
+    private static final int MACHINES = 30;
+    
+    @Autowired
+    private StatsService statsService;
+    
+    @Autowired
+    private EventService eventService;
+    
+    @Autowired
+    private DefectSketches defectSketches;
+    
+    @Autowired
+    private EventRepository eventRepository;
+    
+    @Autowired
+    private RecentEventCache recentEventCache;
+    
+    // eight whole hours, with window edges cutting into the first and last
+    private final Instant base = Instant.now().truncatedTo(ChronoUnit.HOURS).minus(10, ChronoUnit.HOURS);
+    private final Instant from = base.plus(17, ChronoUnit.MINUTES);
+    private final Instant to = base.plus(7, ChronoUnit.HOURS).plus(41, ChronoUnit.MINUTES);
+    
+    @BeforeEach
+    void setUp() {
+        eventRepository.deleteAll();
+        recentEventCache.clear();
+        defectSketches.rebuild();
+        
+        List<EventRequest> batch = new ArrayList<>();
+        for (int minute = 0; minute < 8 * 60; minute += 4) {
+            for (int m = 0; m < MACHINES; m += 1 + (minute / 4) % 3) {
+                Instant eventTime = base.plus(minute, ChronoUnit.MINUTES).plusMillis(m);
+                // skewed: low machine numbers carry most defects, every 9th event is unknown
+                int defects = (minute + m) % 9 == 0 ? -1 : (MACHINES - m) * (MACHINES - m) / 60 + (minute + m) % 3;
+                EventRequest request = new EventRequest("E-A-" + minute + "-" + m, eventTime,
+                        Instant.now().truncatedTo(ChronoUnit.MILLIS), String.format("M-%03d", m), 1000L, defects);
+                request.setFactoryId(m % 2 == 0 ? "F-01" : "F-02");
+                batch.add(request);
+            }
+            if (batch.size() >= 200) {
+                eventService.processBatchEvents(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        eventService.processBatchEvents(batch);
+    }
+    
+    @Test
+    void testBoundsBracketExactTotals() {
+        assertBounded(null, 10);
+        assertBounded("F-02", 5);
+        
+        List<TopDefectLineResponse> exact = statsService.getTopDefectLines(null, from, to, 1);
+        assertEquals(exact.get(0).getLineId(), statsService.getApproximateTopDefectLines(null, from, to, 1).get(0).getLineId());
+        assertNull(exact.get(0).getTotalDefectsLowerBound());
+        assertNull(exact.get(0).getTotalDefectsUpperBound());
+    }
+    
+    @Test
+    void testCorrectionsAndRebuildKeepBoundsValid() {
+        // lower the top machine's defects in the middle of the window
+        Instant receivedTime = Instant.now().plusSeconds(60).truncatedTo(ChronoUnit.MILLIS);
+        List<EventRequest> corrections = new ArrayList<>();
+        for (int minute = 120; minute < 240; minute += 4) {
+            EventRequest correction = new EventRequest("E-A-" + minute + "-0",
+                    base.plus(minute, ChronoUnit.MINUTES), receivedTime, "M-000", 1000L, 0);
+            correction.setFactoryId("F-01");
+            corrections.add(correction);
+        }
+        assertEquals(corrections.size(), eventService.processBatchEvents(corrections).getUpdated());
+        assertBounded(null, 10);
+        assertBounded("F-01", 5);
+        
+        defectSketches.rebuild();
+        assertBounded(null, 10);
+    }
+    
+    @Test
+    void testWindowLongerThanRollupAgeReadsOnlyItsEdges() {
+        assertTrue(Duration.between(from, to).compareTo(Duration.ofHours(6)) > 0);
+        // written past the summaries, well inside the window: only a scan of the table would see it
+        Instant middle = base.plus(4, ChronoUnit.HOURS);
+        eventRepository.save(new Event("E-A-hidden", middle, Instant.now(), "M-HIDDEN", 1000L, 1000));
+        
+        assertTrue(statsService.getDefectLinesAtLeast(null, from, to, 0).stream()
+                .anyMatch(line -> line.getLineId().equals("M-HIDDEN")));
+        assertTrue(statsService.getApproximateTopDefectLines(null, from, to, MACHINES + 1).stream()
+                .noneMatch(line -> line.getLineId().equals("M-HIDDEN")));
+    }
+    
+    @Test
+    void testWindowWithinOneBucketIsExact() {
+        Instant shortFrom = base.plus(62, ChronoUnit.MINUTES);
+        Instant shortTo = base.plus(110, ChronoUnit.MINUTES);
+        List<TopDefectLineResponse> exact = statsService.getTopDefectLines(null, shortFrom, shortTo, 5);
+        List<TopDefectLineResponse> approximate = statsService.getApproximateTopDefectLines(null, shortFrom, shortTo, 5);
+        
+        assertEquals(exact.size(), approximate.size());
+        for (int i = 0; i < exact.size(); i++) {
+            assertEquals(exact.get(i).getLineId(), approximate.get(i).getLineId());
+            assertEquals(exact.get(i).getTotalDefects(), approximate.get(i).getTotalDefectsLowerBound());
+            assertEquals(exact.get(i).getTotalDefects(), approximate.get(i).getTotalDefectsUpperBound());
+        }
+    }
+    
+    private void assertBounded(String factoryId, int limit) {
+        List<TopDefectLineResponse> approximate = statsService.getApproximateTopDefectLines(factoryId, from, to, limit);
+        assertEquals(limit, approximate.size());
+        Map<String, TopDefectLineResponse> exact = statsService.getDefectLinesAtLeast(factoryId, from, to, 0).stream()
+                .collect(Collectors.toMap(TopDefectLineResponse::getLineId, Function.identity()));
+        
+        for (TopDefectLineResponse line : approximate) {
+            TopDefectLineResponse truth = exact.get(line.getLineId());
+            assertNotNull(truth, line.getLineId());
+            assertTrue(line.getTotalDefectsLowerBound() <= truth.getTotalDefects(), line.getLineId());
+            assertTrue(line.getTotalDefectsUpperBound() >= truth.getTotalDefects(), line.getLineId());
+            assertTrue(line.getTotalDefectsLowerBound() <= line.getTotalDefects()
+                    && line.getTotalDefects() <= line.getTotalDefectsUpperBound(), line.getLineId());
+            assertTrue(line.getEventCount() >= truth.getEventCount(), line.getLineId());
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.industrial.eventanalytics.service;
+
+import com.industrial.eventanalytics.model.Event;
+import com.industrial.eventanalytics.repository.EventRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {"bulk-import.chunk-bytes=512", "bulk-import.batch-size=3", "bulk-import.parallelism=2"})
+@ActiveProfiles("test")
+public class BulkImportServiceTest {
+    
+    @Autowired
+    private BulkImportService bulkImportService;
+    
+    @Autowired
+    private EventRepository eventRepository;
+    
+    @TempDir
+    Path dir;
+    
+    @BeforeEach
+    void setUp() {
+        eventRepository.deleteAll();
+    }
+    
+    private static String line(String eventId, Instant eventTime, Instant receivedTime, long durationMs, int defects) {
+        return String.format("{\"eventId\":\"%s\",\"eventTime\":\"%s\",\"receivedTime\":\"%s\",\"machineId\":\"M-001\"," +
+                "\"durationMs\":%d,\"defectCount\":%d}", eventId, eventTime, receivedTime, durationMs, defects);
+    }
+    
+    @Test
+    void testNdjsonImportAppliesIngestRulesAndResumesFromCheckpoint() throws Exception {
+        Instant eventTime = Instant.now().minus(1, ChronoUnit.HOURS).truncatedTo(ChronoUnit.MILLIS);
+        Instant received = Instant.now().minus(30, ChronoUnit.MINUTES).truncatedTo(ChronoUnit.MILLIS);
+        
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            lines.add(line("E-BULK-" + i, eventTime, received, 1000, i % 3));
+        }
+        lines.add(line("E-BULK-0", eventTime, received, 1000, 0));
+        lines.add(line("E-BULK-1", eventTime, received.plusSeconds(10), 2000, 5));
+        lines.add(line("E-BULK-BAD", eventTime, received, -5, 0));
+        lines.add("{not json");
+        lines.add("");
+        Path file = dir.resolve("events.ndjson");
+        Files.write(file, lines);
+        Path checkpoint = dir.resolve("events.checkpoint");
+        
+        BulkImportService.Report report = bulkImportService.importFile(file, checkpoint);
+        
+        assertEquals(24, report.getRecords());
+        assertEquals(20, report.getAccepted());
+        assertEquals(1, report.getDeduped());
+        assertEquals(1, report.getUpdated());
+        assertEquals(2, report.getRejected());
+        assertEquals(1L, report.getRejectionReasons().get("INVALID_DURATION"));
+        assertEquals(1L, report.getRejectionReasons().get("MALFORMED_RECORD"));
+        assertEquals(Files.size(file), report.getOffset());
+        
+        assertEquals(20, eventRepository.count());
+        Event updated = eventRepository.findByEventId("E-BULK-1").orElseThrow();
+        assertEquals(5, updated.getDefectCount());
+        assertEquals(2000L, updated.getDurationMs());
+        assertEquals(Event.UNASSIGNED_FACTORY, updated.getFactoryId());
+        
+        // A second run starts at the checkpoint and has nothing left to load
+        BulkImportService.Report resumed = bulkImportService.importFile(file, checkpoint);
+        assertEquals(Files.size(file), resumed.getResumedFrom());
+        assertEquals(0, resumed.getRecordsThisRun());
+        assertEquals(20, resumed.getAccepted());
+    }
+    
+    @Test
+    void testJsonArrayImport() throws Exception {
+        Instant eventTime = Instant.now().minus(1, ChronoUnit.HOURS).truncatedTo(ChronoUnit.MILLIS);
+        Instant received = Instant.now().minus(30, ChronoUnit.MINUTES).truncatedTo(ChronoUnit.MILLIS);
+        Path file = dir.resolve("events.json");
+        Files.writeString(file, "[\n" + line("E-ARR-1", eventTime, received, 1000, 1) + ",\n"
+                + line("E-ARR-2", eventTime, received, 1000, 2) + "\n]");
+        
+        BulkImportService.Report report = bulkImportService.importFile(file, null);
+        
+        assertEquals(2, report.getAccepted());
+        assertEquals(2, report.getOffset());
+        assertTrue(eventRepository.findByEventId("E-ARR-2").isPresent());
+    }
+}
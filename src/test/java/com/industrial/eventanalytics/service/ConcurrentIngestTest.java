@@ -0,0 +1,235 @@
+package com.industrial.eventanalytics.service;
+
+import com.industrial.eventanalytics.dto.BatchResponse;
+import com.industrial.eventanalytics.dto.EventRequest;
+import com.industrial.eventanalytics.model.Event;
+import com.industrial.eventanalytics.repository.EventRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Many writers ingest overlapping eventIds with shuffled receivedTimes,
+ * exact retries, corrections and invalid records at the same time. The
+ * outcome is compared with a sequential model of the ingest rules.
+ *
+ * Every correction of an eventId has its own payload and receivedTime, and
+ * retries repeat both, so the final row per eventId (the newest correction)
+ * and the accepted/rejected counts do not depend on the interleaving. How
+ * the remaining records split between deduped and updated does.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+public class ConcurrentIngestTest {
+    
+    @Autowired
+    private EventService eventService;
+    
+    @Autowired
+    private EventRepository eventRepository;
+    
+    @Autowired
+    private RecentEventCache recentEventCache;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    @Value("${concurrency-test.writers:8}")
+    private int writers;
+    
+    @Value("${concurrency-test.event-ids:200}")
+    private int eventIds;
+    
+    @Value("${concurrency-test.versions-per-id:3}")
+    private int versionsPerId;
+    
+    @Value("${concurrency-test.batch-size:40}")
+    private int batchSize;
+    
+    @BeforeEach
+    void setUp() {
+        eventRepository.deleteAll();
+        recentEventCache.clear();
+    }
+    
+    @Test
+    void testConcurrentWritersMatchSequentialModel() throws Exception {
+        List<EventRequest> records = generateRecords(new Random(42));
+        Map<String, Double> countedBefore = ingestCounts();
+        
+        // Deal the records round-robin to writers; each writer sends its share in batches
+        List<List<EventRequest>> shares = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            shares.add(new ArrayList<>());
+        }
+        for (int i = 0; i < records.size(); i++) {
+            shares.get(i % writers).add(records.get(i));
+        }
+        
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<int[]>> results = new ArrayList<>();
+        for (List<EventRequest> share : shares) {
+            results.add(executor.submit(() -> {
+                start.await();
+                int[] counts = new int[4];
+                for (int from = 0; from < share.size(); from += batchSize) {
+                    BatchResponse response = eventService.processBatchEvents(
+                            share.subList(from, Math.min(share.size(), from + batchSize)));
+                    counts[0] += response.getAccepted();
+                    counts[1] += response.getDeduped();
+                    counts[2] += response.getUpdated();
+                    counts[3] += response.getRejected();
+                }
+                return counts;
+            }));
+        }
+        start.countDown();
+        
+        int[] totals = new int[4];
+        for (Future<int[]> result : results) {
+            int[] counts = result.get(120, TimeUnit.SECONDS);
+            for (int i = 0; i < totals.length; i++) {
+                totals[i] += counts[i];
+            }
+        }
+        executor.shutdown();
+        
+        ReferenceModel model = new ReferenceModel();
+        records.forEach(model::apply);
+        
+        assertEquals(model.accepted, totals[0], "accepted");
+        assertEquals(model.rejected, totals[3], "rejected");
+        assertEquals(model.deduped + model.updated, totals[1] + totals[2], "deduped + updated");
+        assertEquals(records.size(), totals[0] + totals[1] + totals[2] + totals[3]);
+        
+        // Attempts rolled back by a conflict must not be counted
+        Map<String, Double> counted = ingestCounts();
+        countedBefore.forEach((outcome, before) -> counted.merge(outcome, -before, Double::sum));
+        assertEquals(model.accepted, counted.getOrDefault("accepted", 0.0), "accepted counter");
+        assertEquals(model.rejected, counted.getOrDefault("rejected", 0.0), "rejected counter");
+        assertEquals(model.deduped + model.updated,
+                counted.getOrDefault("deduped", 0.0) + counted.getOrDefault("updated", 0.0), "deduped + updated counters");
+        
+        List<Event> stored = eventRepository.findAll();
+        assertEquals(model.rows.size(), stored.size());
+        for (Event event : stored) {
+            Event expected = model.rows.get(event.getEventId());
+            assertNotNull(expected, event.getEventId());
+            assertTrue(event.hasSamePayloadAs(expected), "payload of " + event.getEventId());
+            assertEquals(expected.getReceivedTime(), event.getReceivedTime(), "receivedTime of " + event.getEventId());
+        }
+    }
+    
+    @Test
+    void testRolledBackAttemptIsNotCounted() {
+        Instant eventTime = Instant.now().minus(1, ChronoUnit.HOURS).truncatedTo(ChronoUnit.MILLIS);
+        List<EventRequest> batch = List.of(
+                new EventRequest("E-RB-1", eventTime, eventTime, "M-1", 1000L, 1),
+                new EventRequest("E-RB-2", eventTime, eventTime, "M-1", -1L, 1));
+        Map<String, Double> before = ingestCounts();
+        
+        // the same path a conflict retry or a failed group commit takes
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            eventService.processBatchEvents(batch);
+            status.setRollbackOnly();
+        });
+        assertEquals(before, ingestCounts());
+        
+        eventService.processBatchEvents(batch);
+        Map<String, Double> after = ingestCounts();
+        assertEquals(before.getOrDefault("accepted", 0.0) + 1, after.get("accepted"));
+        assertEquals(before.getOrDefault("rejected", 0.0) + 1, after.get("rejected"));
+    }
+    
+    private Map<String, Double> ingestCounts() {
+        Map<String, Double> counts = new HashMap<>();
+        for (Counter counter : meterRegistry.find("ingest.events").counters()) {
+            counts.merge(counter.getId().getTag("outcome"), counter.count(), Double::sum);
+        }
+        return counts;
+    }
+    
+    private List<EventRequest> generateRecords(Random random) {
+        Instant eventTime = Instant.now().minus(2, ChronoUnit.HOURS).truncatedTo(ChronoUnit.MILLIS);
+        Instant receivedBase = Instant.now().minus(1, ChronoUnit.HOURS).truncatedTo(ChronoUnit.MILLIS);
+        List<EventRequest> records = new ArrayList<>();
+        
+        for (int id = 0; id < eventIds; id++) {
+            String eventId = "E-C-" + id;
+            String machineId = "M-" + (id % 7);
+            for (int v = 0; v < versionsPerId; v++) {
+                Instant receivedTime = receivedBase.plusMillis(id * 100L + v * 10L);
+                EventRequest version = new EventRequest(eventId, eventTime.plusMillis(id), receivedTime,
+                        machineId, 1000L + v, v % 3);
+                records.add(version);
+                if (random.nextInt(3) == 0) {
+                    records.add(version);
+                }
+                if (random.nextInt(10) == 0) {
+                    records.add(new EventRequest(eventId, eventTime, receivedTime.plusMillis(1),
+                            machineId, -1L, 0));
+                }
+            }
+        }
+        // Writers see corrections in arbitrary order, newest often first
+        Collections.shuffle(records, random);
+        return records;
+    }
+    
+    /**
+     * The ingest rules applied one record at a time.
+     */
+    private static final class ReferenceModel {
+        private final Map<String, Event> rows = new HashMap<>();
+        private int accepted;
+        private int deduped;
+        private int updated;
+        private int rejected;
+        
+        void apply(EventRequest request) {
+            if (request.getDurationMs() < 0 || request.getDurationMs() > EventValidator.MAX_DURATION_MS) {
+                rejected++;
+                return;
+            }
+            Event event = new Event(request.getEventId(), request.getEventTime(), request.getReceivedTime(),
+                    request.getMachineId(), Event.UNASSIGNED_FACTORY, request.getDurationMs(), request.getDefectCount());
+            Event current = rows.get(request.getEventId());
+            if (current == null) {
+                rows.put(event.getEventId(), event);
+                accepted++;
+            } else if (event.hasSamePayloadAs(current) || !event.isNewerThan(current)) {
+                deduped++;
+            } else {
+                rows.put(event.getEventId(), event);
+                updated++;
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.industrial.eventanalytics.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FactoryRegistryTest {
+    
+    @Test
+    void testOnlyConfiguredFactoriesAreKnown() {
+        FactoryRegistry registry = new FactoryRegistry();
+        registry.setMachines(Map.of("M-001", "F01"));
+        registry.setIds(List.of("F02"));
+        
+        assertTrue(registry.isKnown("F01"));
+        assertTrue(registry.isKnown("F02"));
+        assertTrue(registry.isKnown(registry.getDefaultId()));
+        assertFalse(registry.isKnown("F-" + System.nanoTime()));
+        assertFalse(registry.isKnown(null));
+    }
+}
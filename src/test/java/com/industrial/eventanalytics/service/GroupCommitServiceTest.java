@@ -0,0 +1,140 @@
+package com.industrial.eventanalytics.service;
+
+import com.industrial.eventanalytics.dto.BatchResponse;
+import com.industrial.eventanalytics.dto.EventRequest;
+import com.industrial.eventanalytics.repository.EventRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "ingest.group-commit.enabled=true",
+        "ingest.group-commit.window=PT0.2S",
+        "ingest.group-commit.committers=1"
+})
+@ActiveProfiles("test")
+public class GroupCommitServiceTest {
+    
+    @Autowired
+    private GroupCommitService groupCommitService;
+    
+    @Autowired
+    private EventRepository eventRepository;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @BeforeEach
+    void setUp() {
+        eventRepository.deleteAll();
+    }
+    
+    @Test
+    void testConcurrentSmallBatchesShareCommitAndKeepOwnResponses() throws Exception {
+        int callers = 8;
+        Instant eventTime = Instant.now().minus(1, ChronoUnit.HOURS);
+        Instant receivedTime = Instant.now();
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        CountDownLatch start = new CountDownLatch(1);
+        
+        List<CompletableFuture<BatchResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            final int caller = i;
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                List<EventRequest> events = new ArrayList<>();
+                for (int j = 0; j < 5; j++) {
+                    events.add(new EventRequest("E-" + caller + "-" + j, eventTime, receivedTime, "M-001", 1000L, 1));
+                }
+                // Every caller also sends the same shared event
+                events.add(new EventRequest("E-SHARED", eventTime, receivedTime, "M-001", 1000L, 1));
+                awaitQuietly(start);
+                return groupCommitService.process(events);
+            }, executor));
+        }
+        start.countDown();
+        
+        int accepted = 0;
+        int deduped = 0;
+        for (CompletableFuture<BatchResponse> future : futures) {
+            BatchResponse response = future.get(30, TimeUnit.SECONDS);
+            assertEquals(6, response.getAccepted() + response.getDeduped());
+            accepted += response.getAccepted();
+            deduped += response.getDeduped();
+        }
+        executor.shutdown();
+        
+        assertEquals(callers * 5 + 1, accepted);
+        assertEquals(callers - 1, deduped);
+        assertEquals(callers * 5 + 1, eventRepository.count());
+        
+        DistributionSummary groupSize = meterRegistry.get("ingest.group.size").summary();
+        assertTrue(groupSize.max() > 1, "expected at least one group with several batches");
+    }
+    
+    @Test
+    void testFailedGroupCountsEachBatchOnce() throws Exception {
+        int callers = 4;
+        Instant eventTime = Instant.now().minus(1, ChronoUnit.HOURS);
+        double acceptedBefore = accepted();
+        double fallbacksBefore = meterRegistry.get("ingest.group.fallbacks").counter().count();
+        ExecutorService executor = Executors.newFixedThreadPool(callers + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        
+        List<CompletableFuture<BatchResponse>> futures = new ArrayList<>();
+        for (int i = 0; i <= callers; i++) {
+            // the last caller's machineId does not fit the column, which fails the whole group
+            String machineId = i < callers ? "M-001" : "M-" + "9".repeat(300);
+            String prefix = "E-FG-" + i + "-";
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                List<EventRequest> events = new ArrayList<>();
+                for (int j = 0; j < 3; j++) {
+                    events.add(new EventRequest(prefix + j, eventTime, eventTime, machineId, 1000L, 1));
+                }
+                awaitQuietly(start);
+                return groupCommitService.process(events);
+            }, executor));
+        }
+        start.countDown();
+        
+        for (int i = 0; i < callers; i++) {
+            assertEquals(3, futures.get(i).get(30, TimeUnit.SECONDS).getAccepted());
+        }
+        assertThrows(ExecutionException.class, () -> futures.get(callers).get(30, TimeUnit.SECONDS));
+        executor.shutdown();
+        
+        assertTrue(meterRegistry.get("ingest.group.fallbacks").counter().count() > fallbacksBefore);
+        assertEquals(callers * 3, eventRepository.count());
+        assertEquals(acceptedBefore + callers * 3, accepted());
+    }
+    
+    private double accepted() {
+        return meterRegistry.find("ingest.events").tag("outcome", "accepted").counters().stream()
+                .mapToDouble(Counter::count).sum();
+    }
+    
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.industrial.eventanalytics.service;
+
+import com.industrial.eventanalytics.dto.EventRequest;
+import com.industrial.eventanalytics.repository.EventRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * With no committer draining the queue, a caller must give up after the
+ * timeout instead of blocking forever.
+ */
+@SpringBootTest(properties = {
+        "ingest.group-commit.enabled=true",
+        "ingest.group-commit.committers=0",
+        "ingest.group-commit.timeout=PT0.2S"
+})
+@ActiveProfiles("test")
+public class GroupCommitTimeoutTest {
+    
+    @Autowired
+    private GroupCommitService groupCommitService;
+    
+    @Autowired
+    private EventRepository eventRepository;
+    
+    @Test
+    void testStalledCommitterFailsBatchAfterTimeout() {
+        eventRepository.deleteAll();
+        Instant eventTime = Instant.now().minus(1, ChronoUnit.HOURS);
+        List<EventRequest> events = List.of(new EventRequest("E-GT-1", eventTime, Instant.now(), "M-001", 1000L, 1));
+        
+        ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> groupCommitService.process(events));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getStatusCode());
+        assertTrue(e.getReason().contains("not stored"), e.getReason());
+        assertEquals(0, eventRepository.count());
+    }
+}
@@ -0,0 +1,70 @@
+package com.industrial.eventanalytics.service;
+
+import com.industrial.eventanalytics.dto.BatchResponse;
+import com.industrial.eventanalytics.dto.EventRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IdempotencyServiceTest {
+    
+    @Test
+    void testRunningEntryIsNotEvictedByNewerKeys() throws Exception {
+        IdempotencyService service = new IdempotencyService();
+        ReflectionTestUtils.setField(service, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "maxEntries", 1);
+        ReflectionTestUtils.setField(service, "ttl", Duration.ofMinutes(10));
+        ReflectionTestUtils.setField(service, "inFlightWait", Duration.ofSeconds(10));
+        service.init();
+        
+        List<EventRequest> batch = List.of(new EventRequest("E-I1", Instant.now(), Instant.now(), "M-001", 1000L, 1));
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<IdempotencyService.Outcome> first = CompletableFuture.supplyAsync(() ->
+                service.execute("key-a", batch, () -> {
+                    runs.incrementAndGet();
+                    started.countDown();
+                    awaitQuietly(release);
+                    return new BatchResponse(1, 0, 0, 0, new ArrayList<>());
+                }));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        
+        // more completed keys than the limit while key-a is still running
+        for (String key : List.of("key-b", "key-c", "key-d")) {
+            service.execute(key, batch, () -> new BatchResponse(0, 1, 0, 0, new ArrayList<>()));
+        }
+        CompletableFuture<IdempotencyService.Outcome> retry = CompletableFuture.supplyAsync(() ->
+                service.execute("key-a", batch, () -> {
+                    runs.incrementAndGet();
+                    return new BatchResponse(0, 1, 0, 0, new ArrayList<>());
+                }));
+        release.countDown();
+        
+        assertEquals(1, first.get(10, TimeUnit.SECONDS).getResponse().getAccepted());
+        IdempotencyService.Outcome replayed = retry.get(10, TimeUnit.SECONDS);
+        assertTrue(replayed.isReplayed());
+        assertEquals(1, replayed.getResponse().getAccepted());
+        assertEquals(1, runs.get());
+        assertEquals(1, service.size());
+    }
+    
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
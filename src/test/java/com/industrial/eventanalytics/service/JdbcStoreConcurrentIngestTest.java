@@ -0,0 +1,10 @@
+package com.industrial.eventanalytics.service;
+
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * Runs the concurrent ingest model test against the JDBC event store.
+ */
+@SpringBootTest(properties = "events.store=jdbc")
+public class JdbcStoreConcurrentIngestTest extends ConcurrentIngestTest {
+}
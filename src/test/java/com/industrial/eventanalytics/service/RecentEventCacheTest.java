@@ -0,0 +1,101 @@
+package com.industrial.eventanalytics.service;
+
+import com.industrial.eventanalytics.dto.BatchResponse;
+import com.industrial.eventanalytics.dto.EventRequest;
+import com.industrial.eventanalytics.model.Event;
+import com.industrial.eventanalytics.repository.EventRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "ingest.recent-cache.max-bytes=65536")
+@ActiveProfiles("test")
+public class RecentEventCacheTest {
+    
+    @Autowired
+    private RecentEventCache recentEventCache;
+    
+    @Autowired
+    private EventService eventService;
+    
+    @Autowired
+    private EventRepository eventRepository;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    @BeforeEach
+    void setUp() {
+        eventRepository.deleteAll();
+        recentEventCache.clear();
+    }
+    
+    @Test
+    void testCommittedEventsAnswerRetriesFromCache() {
+        // Millisecond timestamps survive the round trip through the database unchanged
+        Instant eventTime = Instant.now().minus(1, ChronoUnit.HOURS).truncatedTo(ChronoUnit.MILLIS);
+        EventRequest original = new EventRequest("E-C1", eventTime, Instant.now().truncatedTo(ChronoUnit.MILLIS),
+                "M-001", 1000L, 2);
+        eventService.processBatchEvents(List.of(original));
+        
+        assertNotNull(recentEventCache.get("E-C1"));
+        
+        // An exact retry and a correction older than the stored one are both settled from the cache
+        EventRequest stale = new EventRequest("E-C1", eventTime, original.getReceivedTime().minusSeconds(60),
+                "M-001", 1500L, 3);
+        BatchResponse response = eventService.processBatchEvents(List.of(original, stale));
+        assertEquals(2, response.getDeduped());
+        assertTrue(recentEventCache.hitRatio() > 0);
+    }
+    
+    @Test
+    void testRolledBackWritesAreNotCached() {
+        Instant eventTime = Instant.now().minus(1, ChronoUnit.HOURS);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.executeWithoutResult(status -> {
+            eventService.processBatchEvents(List.of(
+                    new EventRequest("E-R1", eventTime, Instant.now(), "M-001", 1000L, 0)));
+            status.setRollbackOnly();
+        });
+        
+        assertNull(recentEventCache.get("E-R1"));
+        assertEquals(0, eventRepository.count());
+    }
+    
+    @Test
+    void testEveryPurgeChunkInvalidatesOldEntries() {
+        Instant cutoff = Instant.now().minus(10, ChronoUnit.DAYS);
+        Instant old = cutoff.minus(1, ChronoUnit.DAYS);
+        recentEventCache.record(new Event("E-P1", old, old, "M-001", 1000L, 0));
+        recentEventCache.onRetentionPurged(new RetentionPurgedEvent(cutoff, List.of(1L), List.of("E-P1"), false));
+        assertNull(recentEventCache.get("E-P1"));
+        
+        // cached between two chunks of the same purge, whose second chunk deletes its row
+        recentEventCache.record(new Event("E-P2", old, old, "M-001", 1000L, 0));
+        recentEventCache.onRetentionPurged(new RetentionPurgedEvent(cutoff, List.of(2L), List.of("E-P2"), false));
+        assertNull(recentEventCache.get("E-P2"));
+    }
+    
+    @Test
+    void testMemoryBoundEvictsOneOffEntries() {
+        Instant now = Instant.now();
+        for (int i = 0; i < 2000; i++) {
+            Event event = new Event("E-B" + i, now, now, "M-001", 1000L, 0);
+            recentEventCache.record(event);
+        }
+        
+        assertTrue(recentEventCache.estimatedBytes() <= 65536);
+        assertTrue(recentEventCache.size() < 2000);
+        assertNotNull(recentEventCache.get("E-B1999"));
+    }
+}
@@ -0,0 +1,83 @@
+package com.industrial.eventanalytics.service;
+
+import com.industrial.eventanalytics.dto.StatsResponse;
+import com.industrial.eventanalytics.model.Event;
+import com.industrial.eventanalytics.repository.ArchivedEventRepository;
+import com.industrial.eventanalytics.repository.EventRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "retention.enabled=true",
+        "retention.raw-retention=P1D",
+        "retention.mode=archive",
+        "retention.chunk-size=3",
+        "retention.max-rows-per-cycle=5",
+        "retention.chunk-pause=PT0S",
+        "retention.initial-delay=PT1H"
+})
+@ActiveProfiles("test")
+public class RetentionServiceTest {
+    
+    @Autowired
+    private RetentionService retentionService;
+    
+    @Autowired
+    private StatsService statsService;
+    
+    @Autowired
+    private EventRepository eventRepository;
+    
+    @Autowired
+    private ArchivedEventRepository archivedEventRepository;
+    
+    @BeforeEach
+    void setUp() {
+        eventRepository.deleteAll();
+        archivedEventRepository.deleteAll();
+    }
+    
+    @Test
+    void testPurgeRespectsRowBudgetAndArchivesExpiredEvents() {
+        Instant now = Instant.now();
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            events.add(new Event("OLD-" + i, now.minus(3, ChronoUnit.DAYS).plusSeconds(i), now, "M-001", 1000L, 1));
+        }
+        events.add(new Event("NEW-1", now.minus(1, ChronoUnit.HOURS), now, "M-001", 1000L, 1));
+        eventRepository.saveAll(events);
+        
+        assertEquals(5, retentionService.runCycle());
+        assertEquals(3, retentionService.getBacklogRows());
+        assertEquals(4, eventRepository.count());
+        
+        assertEquals(3, retentionService.runCycle());
+        assertEquals(0, retentionService.getBacklogRows());
+        assertEquals(1, eventRepository.count());
+        assertTrue(eventRepository.findByEventId("NEW-1").isPresent());
+        assertEquals(8, archivedEventRepository.count());
+    }
+    
+    @Test
+    void testStatsFlagWindowsReachingPastRetention() {
+        Instant now = Instant.now();
+        
+        StatsResponse recent = statsService.getMachineStats("M-001", now.minus(2, ChronoUnit.HOURS), now);
+        assertTrue(recent.isComplete());
+        assertNull(recent.getRetentionHorizon());
+        
+        StatsResponse old = statsService.getMachineStats("M-001", now.minus(7, ChronoUnit.DAYS), now);
+        assertFalse(old.isComplete());
+        assertNotNull(old.getRetentionHorizon());
+    }
+}
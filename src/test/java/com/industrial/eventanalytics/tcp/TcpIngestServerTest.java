@@ -0,0 +1,127 @@
+package com.industrial.eventanalytics.tcp;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.industrial.eventanalytics.dto.BatchResponse;
+import com.industrial.eventanalytics.model.Event;
+import com.industrial.eventanalytics.repository.EventRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {"ingest.tcp.enabled=true", "ingest.tcp.port=0", "ingest.tcp.host=127.0.0.1",
+        "ingest.tcp.buffer-size=512", "ingest.tcp.max-chunk-events=3",
+        "ingest.tcp.max-pending-chunks=1", "ingest.tcp.max-inflight-chunks-per-connection=1"})
+@ActiveProfiles("test")
+public class TcpIngestServerTest {
+    
+    @Autowired
+    private TcpIngestServer server;
+    
+    @Autowired
+    private EventRepository eventRepository;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @BeforeEach
+    void setUp() {
+        eventRepository.deleteAll();
+    }
+    
+    private final Instant eventTime = Instant.now().minus(1, ChronoUnit.HOURS).truncatedTo(ChronoUnit.MILLIS);
+    
+    private String line(String eventId, long durationMs, int defects) {
+        return String.format("{\"eventId\":\"%s\",\"eventTime\":\"%s\",\"machineId\":\"M-001\"," +
+                "\"durationMs\":%d,\"defectCount\":%d}\n", eventId, eventTime, durationMs, defects);
+    }
+    
+    private BatchResponse ack(String response) throws Exception {
+        assertTrue(response.startsWith("ACK "), response);
+        return objectMapper.readValue(response.substring(4), BatchResponse.class);
+    }
+    
+    @Test
+    void testChunksAreAnsweredInOrderWithAckOrNack() throws Exception {
+        StringBuilder input = new StringBuilder()
+                .append(line("E-TCP-1", 1000, 1))
+                .append(line("E-TCP-2", 1000, 2))
+                .append(line("E-TCP-BAD", -1, 0))
+                .append("\n")
+                .append(line("E-TCP-1", 1000, 1))
+                .append("\r\n")
+                .append(line("E-TCP-3", 1000, 0))
+                .append("{not json\n")
+                .append("\n")
+                .append(line("E-TCP-4", 1000, 0).repeat(4))
+                .append("\n")
+                .append("{\"eventId\":\"" + "X".repeat(600) + "\"}\n")
+                .append("\n")
+                .append(line("E-TCP-5", 1000, 3));
+        
+        try (Socket socket = new Socket("127.0.0.1", server.getLocalPort())) {
+            OutputStream out = socket.getOutputStream();
+            out.write(input.toString().getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            // the last chunk is ended by closing our side instead of a blank line
+            socket.shutdownOutput();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            
+            BatchResponse first = ack(in.readLine());
+            assertEquals(2, first.getAccepted());
+            assertEquals(1, first.getRejected());
+            assertEquals("INVALID_DURATION", first.getRejections().get(0).getReason());
+            
+            BatchResponse second = ack(in.readLine());
+            assertEquals(1, second.getDeduped());
+            
+            assertTrue(in.readLine().startsWith("NACK MALFORMED_RECORD record 2 "));
+            assertTrue(in.readLine().startsWith("NACK CHUNK_TOO_LARGE "));
+            assertTrue(in.readLine().startsWith("NACK LINE_TOO_LONG "));
+            assertEquals(1, ack(in.readLine()).getAccepted());
+            assertNull(in.readLine());
+        }
+        
+        assertEquals(3, eventRepository.count());
+        assertTrue(eventRepository.findByEventId("E-TCP-3").isEmpty());
+        Event last = eventRepository.findByEventId("E-TCP-5").orElseThrow();
+        assertEquals(3, last.getDefectCount());
+    }
+    
+    @Test
+    void testPipelinedChunksPauseReadsAndAreAllAcked() throws Exception {
+        double pausesBefore = meterRegistry.counter("ingest.tcp.read.pauses").count();
+        StringBuilder input = new StringBuilder();
+        int chunks = 20;
+        for (int i = 0; i < chunks; i++) {
+            input.append(line("E-TCP-P" + i, 1000, i % 2)).append("\n");
+        }
+        
+        try (Socket socket = new Socket("127.0.0.1", server.getLocalPort())) {
+            socket.getOutputStream().write(input.toString().getBytes(StandardCharsets.UTF_8));
+            socket.getOutputStream().flush();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            for (int i = 0; i < chunks; i++) {
+                assertEquals(1, ack(in.readLine()).getAccepted());
+            }
+        }
+        
+        assertEquals(chunks, eventRepository.count());
+        assertTrue(meterRegistry.counter("ingest.tcp.read.pauses").count() > pausesBefore);
+    }
+}
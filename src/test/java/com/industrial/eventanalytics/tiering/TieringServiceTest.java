@@ -0,0 +1,236 @@
+package com.industrial.eventanalytics.tiering;
+
+import com.industrial.eventanalytics.dto.BatchResponse;
+import com.industrial.eventanalytics.dto.EventRequest;
+import com.industrial.eventanalytics.dto.StatsResponse;
+import com.industrial.eventanalytics.dto.TimeSeriesResponse;
+import com.industrial.eventanalytics.dto.TopDefectLineResponse;
+import com.industrial.eventanalytics.model.Event;
+import com.industrial.eventanalytics.repository.EventRepository;
+import com.industrial.eventanalytics.service.EventService;
+import com.industrial.eventanalytics.service.ExportService;
+import com.industrial.eventanalytics.service.RecentEventCache;
+import com.industrial.eventanalytics.service.StatsService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Stats must not change when old days move from the events table into cold
+ * segments, whether a window covers whole segments (answered from the
+ * footer) or cuts through them (answered by scanning rows).
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+public class TieringServiceTest {
+    
+    private static Path directory;
+    
+    @Autowired
+    private TieringService tieringService;
+    
+    @Autowired
+    private ColdStorage coldStorage;
+    
+    @Autowired
+    private StatsService statsService;
+    
+    @Autowired
+    private EventRepository eventRepository;
+    
+    @Autowired
+    private RecentEventCache recentEventCache;
+    
+    @Autowired
+    private EventService eventService;
+    
+    @Autowired
+    private ExportService exportService;
+    
+    // 10:00 UTC, 40 days ago: four old days of events, then a few recent ones
+    private final Instant base = Instant.now().truncatedTo(ChronoUnit.DAYS).minus(40, ChronoUnit.DAYS).plus(10, ChronoUnit.HOURS);
+    
+    @DynamicPropertySource
+    static void tiering(DynamicPropertyRegistry registry) throws IOException {
+        directory = Files.createTempDirectory("segments");
+        registry.add("tiering.directory", directory::toString);
+    }
+    
+    @BeforeEach
+    void setUp() {
+        eventRepository.deleteAll();
+        recentEventCache.clear();
+        coldStorage.dropBefore(Instant.now().plus(1, ChronoUnit.DAYS));
+        
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            // microsecond offsets check that window edges are kept exactly
+            Instant eventTime = base.plus(i * 37L, ChronoUnit.MINUTES).plusNanos(i * 1_001_000L);
+            events.add(new Event("E-T-" + i, eventTime, eventTime.plusSeconds(5), "M-00" + (i % 3),
+                    i % 7 == 0 ? "F-02" : "F-01", 1000L + i, i % 4 == 0 ? -1 : i % 5));
+        }
+        Instant recent = Instant.now().minus(1, ChronoUnit.HOURS).truncatedTo(ChronoUnit.MILLIS);
+        for (int i = 0; i < 5; i++) {
+            events.add(new Event("E-R-" + i, recent, recent, "M-00" + (i % 3), "F-01", 500L, 2));
+        }
+        eventRepository.saveAll(events);
+    }
+    
+    private record Snapshot(List<Long> machineStats, List<String> topLines, List<Long> timeSeries) {}
+    
+    private Snapshot snapshot() {
+        List<Long> machineStats = new ArrayList<>();
+        Instant[][] windows = {
+                {base.minus(1, ChronoUnit.DAYS), Instant.now()},
+                {base.plus(5, ChronoUnit.HOURS), base.plus(30, ChronoUnit.HOURS)},
+                // edges exactly on stored event times (i = 10 and i = 40)
+                {base.plus(370, ChronoUnit.MINUTES).plusNanos(10_010_000L), base.plus(1480, ChronoUnit.MINUTES).plusNanos(40_040_000L)},
+                {base.plus(370, ChronoUnit.MINUTES).plusNanos(10_010_001L), base.plus(1480, ChronoUnit.MINUTES).plusNanos(40_040_001L)}};
+        for (Instant[] window : windows) {
+            for (String machine : List.of("M-000", "M-001", "M-002")) {
+                StatsResponse stats = statsService.getMachineStats(machine, window[0], window[1]);
+                machineStats.add(stats.getEventsCount());
+                machineStats.add(stats.getDefectsCount());
+            }
+        }
+        
+        List<String> topLines = new ArrayList<>();
+        for (Instant[] window : windows) {
+            for (String factory : new String[]{null, "F-02"}) {
+                for (TopDefectLineResponse line : statsService.getTopDefectLines(factory, window[0], window[1], 10)) {
+                    topLines.add(line.getLineId() + "=" + line.getTotalDefects() + "/" + line.getEventCount());
+                }
+                for (TopDefectLineResponse line : statsService.getDefectLinesAtLeast(factory, window[0], window[1], 20)) {
+                    topLines.add(">" + line.getLineId() + "=" + line.getTotalDefects());
+                }
+                for (TopDefectLineResponse line : statsService.getDefectLines(factory, window[0], window[1], List.of("M-001"))) {
+                    topLines.add("#" + line.getLineId() + "=" + line.getTotalDefects());
+                }
+            }
+        }
+        
+        List<Long> timeSeries = new ArrayList<>();
+        TimeSeriesResponse series = statsService.getMachineTimeSeries("M-001", base.minus(1, ChronoUnit.DAYS),
+                base.plus(3, ChronoUnit.DAYS), Duration.ofHours(5));
+        for (TimeSeriesResponse.Point point : series.getPoints()) {
+            timeSeries.add(point.getEventsCount());
+            timeSeries.add(point.getDefectsCount());
+        }
+        return new Snapshot(machineStats, topLines, timeSeries);
+    }
+    
+    @Test
+    void testStatsAreUnchangedAfterOldDaysMoveToSegments() {
+        Snapshot before = snapshot();
+        
+        int moved = tieringService.runCycle();
+        
+        assertEquals(120, moved);
+        assertEquals(5, eventRepository.count());
+        assertEquals(4, coldStorage.getSegments().size());
+        assertEquals(120, coldStorage.getSegments().stream().mapToInt(Segment::getRows).sum());
+        
+        Snapshot after = snapshot();
+        assertEquals(before.machineStats(), after.machineStats());
+        // ties may come back in another order from the database
+        assertEquals(before.topLines().stream().sorted().toList(), after.topLines().stream().sorted().toList());
+        assertEquals(before.timeSeries(), after.timeSeries());
+        assertEquals(0, tieringService.runCycle());
+    }
+    
+    @Test
+    void testLateEventsForTieredDayGoToNewSegment() {
+        tieringService.runCycle();
+        long before = statsService.getMachineStats("M-001", base, base.plus(1, ChronoUnit.DAYS)).getEventsCount();
+        
+        eventRepository.save(new Event("E-LATE", base.plusSeconds(1), Instant.now(), "M-001", "F-01", 10L, 3));
+        assertEquals(before + 1, statsService.getMachineStats("M-001", base, base.plus(1, ChronoUnit.DAYS)).getEventsCount());
+        
+        assertEquals(1, tieringService.runCycle());
+        assertEquals(5, coldStorage.getSegments().size());
+        assertTrue(eventRepository.findByEventId("E-LATE").isEmpty());
+        assertEquals(before + 1, statsService.getMachineStats("M-001", base, base.plus(1, ChronoUnit.DAYS)).getEventsCount());
+    }
+    
+    @Test
+    void testResentAndCorrectedTieredEventsAreRejected() {
+        tieringService.runCycle();
+        Instant dayStart = base.truncatedTo(ChronoUnit.DAYS);
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        long before = statsService.getMachineStats("M-001", dayStart.minus(1, ChronoUnit.DAYS), now).getEventsCount();
+        
+        Instant resentTime = base.plus(37, ChronoUnit.MINUTES).plusNanos(1_001_000L);
+        EventRequest resent = new EventRequest("E-T-1", resentTime, resentTime.plusSeconds(5), "M-001", 1001L, 1);
+        resent.setFactoryId("F-01");
+        // a correction that also moves the event out of the tiered day
+        EventRequest corrected = new EventRequest("E-T-4", now.minusSeconds(60), now, "M-001", 1004L, 9);
+        corrected.setFactoryId("F-01");
+        EventRequest late = new EventRequest("E-LATE-2", base.plusSeconds(2), now, "M-001", 10L, 3);
+        late.setFactoryId("F-01");
+        
+        BatchResponse response = eventService.processBatchEvents(List.of(resent, corrected, late));
+        
+        assertEquals(1, response.getAccepted());
+        assertEquals(2, response.getRejected());
+        assertEquals(List.of("E-T-1", "E-T-4"), response.getRejections().stream()
+                .map(BatchResponse.RejectionDetail::getEventId).toList());
+        assertTrue(response.getRejections().stream().allMatch(r -> "EVENT_TIERED".equals(r.getReason())));
+        assertEquals(before + 1, statsService.getMachineStats("M-001", dayStart.minus(1, ChronoUnit.DAYS), now).getEventsCount());
+    }
+    
+    @Test
+    void testExportsMergeTieredEvents() throws IOException {
+        Instant[][] windows = {
+                {base.minus(1, ChronoUnit.DAYS), Instant.now().plus(1, ChronoUnit.HOURS)},
+                {base.plus(370, ChronoUnit.MINUTES).plusNanos(10_010_000L), base.plus(1480, ChronoUnit.MINUTES).plusNanos(40_040_001L)}};
+        List<String> before = new ArrayList<>();
+        for (Instant[] window : windows) {
+            before.addAll(exports(window));
+        }
+        
+        tieringService.runCycle();
+        
+        List<String> after = new ArrayList<>();
+        for (Instant[] window : windows) {
+            after.addAll(exports(window));
+        }
+        // segments do not keep receivedTime
+        assertEquals(before.stream().map(line -> line.replaceAll("\"receivedTime\":\"[^\"]*\"", "")).toList(),
+                after.stream().map(line -> line.replaceAll("\"receivedTime\":(null|\"[^\"]*\")", "")).toList());
+        assertTrue(after.stream().anyMatch(line -> line.contains("\"receivedTime\":null")));
+    }
+    
+    private List<String> exports(Instant[] window) throws IOException {
+        ByteArrayOutputStream events = new ByteArrayOutputStream();
+        long rows = exportService.exportEvents(events, ExportService.Format.NDJSON, null, null, window[0], window[1]);
+        ByteArrayOutputStream machine = new ByteArrayOutputStream();
+        exportService.exportEvents(machine, ExportService.Format.NDJSON, "M-001", "F-01", window[0], window[1]);
+        ByteArrayOutputStream aggregates = new ByteArrayOutputStream();
+        exportService.exportAggregates(aggregates, ExportService.Format.CSV, null, window[0], window[1]);
+        
+        List<String> lines = new ArrayList<>();
+        lines.add("rows=" + rows);
+        lines.addAll(List.of(events.toString(StandardCharsets.UTF_8).split("\n")));
+        lines.addAll(List.of(machine.toString(StandardCharsets.UTF_8).split("\n")));
+        // machines found only in segments come last
+        lines.addAll(List.of(aggregates.toString(StandardCharsets.UTF_8).split("\r\n")).stream().sorted().toList());
+        return lines;
+    }
+}
@@ -0,0 +1,121 @@
+import argparse
+import json
+import os
+import socket
+import statistics
+import subprocess
+import sys
+import time
+import urllib.request
+from datetime import datetime, timedelta, timezone
+
+# Measures time-to-ready and first-request latency for the default startup
+# and for the fast-startup profile with the AppCDS archive.
+# Build first with: mvn -Pfast-startup -DskipTests package
+
+MAIN_CLASS = 'com.industrial.eventanalytics.EventAnalyticsApplication'
+TARGET = os.path.join(os.path.dirname(os.path.abspath(__file__)), 'target')
+
+
+def free_port():
+    with socket.socket() as s:
+        s.bind(('127.0.0.1', 0))
+        return s.getsockname()[1]
+
+
+def classpath():
+    cds_jar = [f for f in os.listdir(TARGET) if f.endswith('-cds.jar')][0]
+    with open(os.path.join(TARGET, 'classpath.txt')) as f:
+        deps = f.read().strip()
+    return os.path.join(TARGET, cds_jar) + os.pathsep + deps
+
+
+def command(mode, port):
+    cmd = ['java']
+    if mode == 'fast':
+        cmd += ['-XX:SharedArchiveFile=' + os.path.join(TARGET, 'app-cds.jsa'), '-Xlog:cds=off',
+                '-Dspring.profiles.active=fast-startup']
+    cmd += ['-Dserver.port=%d' % port, '-cp', classpath(), MAIN_CLASS]
+    return cmd
+
+
+def wait_until_listening(port, proc, timeout):
+    deadline = time.time() + timeout
+    while time.time() < deadline:
+        if proc.poll() is not None:
+            raise RuntimeError('application exited with code %d' % proc.returncode)
+        try:
+            with socket.create_connection(('127.0.0.1', port), timeout=0.05):
+                return
+        except OSError:
+            time.sleep(0.02)
+    raise RuntimeError('application did not start within %ds' % timeout)
+
+
+def first_requests(port):
+    event_time = datetime.now(timezone.utc) - timedelta(hours=1)
+    batch = [{
+        'eventId': 'E-STARTUP-1',
+        'eventTime': event_time.strftime('%Y-%m-%dT%H:%M:%S.000Z'),
+        'receivedTime': datetime.now(timezone.utc).strftime('%Y-%m-%dT%H:%M:%S.000Z'),
+        'machineId': 'M-001',
+        'durationMs': 1000,
+        'defectCount': 0
+    }]
+    base = 'http://127.0.0.1:%d/api/v1' % port
+
+    start = time.time()
+    req = urllib.request.Request(base + '/events/batch', data=json.dumps(batch).encode(),
+                                 headers={'Content-Type': 'application/json'})
+    urllib.request.urlopen(req).read()
+    ingest_ms = (time.time() - start) * 1000
+
+    start = time.time()
+    window = 'machineId=M-001&start=%s&end=%s' % (
+        (event_time - timedelta(hours=1)).strftime('%Y-%m-%dT%H:%M:%SZ'),
+        (event_time + timedelta(hours=1)).strftime('%Y-%m-%dT%H:%M:%SZ'))
+    urllib.request.urlopen(base + '/stats?' + window).read()
+    stats_ms = (time.time() - start) * 1000
+    return ingest_ms, stats_ms
+
+
+def run_once(mode, timeout):
+    port = free_port()
+    start = time.time()
+    proc = subprocess.Popen(command(mode, port), stdout=subprocess.DEVNULL, stderr=subprocess.DEVNULL)
+    try:
+        wait_until_listening(port, proc, timeout)
+        ready_ms = (time.time() - start) * 1000
+        ingest_ms, stats_ms = first_requests(port)
+        return ready_ms, ingest_ms, stats_ms
+    finally:
+        proc.terminate()
+        proc.wait()
+
+
+def main():
+    parser = argparse.ArgumentParser(description='Startup time regression check')
+    parser.add_argument('--runs', type=int, default=5)
+    parser.add_argument('--timeout', type=int, default=120)
+    parser.add_argument('--max-fast-ready-ms', type=float, default=None,
+                        help='fail if the fast-startup median time-to-ready exceeds this')
+    args = parser.parse_args()
+
+    results = {}
+    for mode in ('default', 'fast'):
+        runs = [run_once(mode, args.timeout) for _ in range(args.runs)]
+        results[mode] = [statistics.median(r[i] for r in runs) for i in range(3)]
+
+    print(f"{'mode':<10}{'ready ms':>12}{'first ingest ms':>18}{'first stats ms':>17}")
+    for mode, (ready, ingest, stats) in results.items():
+        print(f"{mode:<10}{ready:>12.0f}{ingest:>18.0f}{stats:>17.0f}")
+    speedup = results['default'][0] / results['fast'][0]
+    print(f"Time-to-ready speedup: {speedup:.2f}x (median of {args.runs} runs)")
+
+    if args.max_fast_ready_ms is not None and results['fast'][0] > args.max_fast_ready_ms:
+        print(f"REGRESSION: fast-startup ready time {results['fast'][0]:.0f}ms > {args.max_fast_ready_ms:.0f}ms")
+        sys.exit(1)
+
+
+if __name__ == '__main__':
+    main()